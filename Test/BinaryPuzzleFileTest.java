@@ -0,0 +1,71 @@
+package Test;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import src.BinaryPuzzleFile;
+import src.Board;
+import src.InvalidMoveException;
+import src.PuzzleArchive;
+import src.Solver;
+import src.SolverOptions;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that boards survive a round trip through the binary puzzle format, both as bare puzzles and as solutions.
+ */
+
+public class BinaryPuzzleFileTest {
+    private static final String ARCHIVE_PATH = "boards/imported.txt";
+
+    @Test
+    public void puzzlesRoundTrip() throws IOException {
+        PuzzleArchive archive = new PuzzleArchive(ARCHIVE_PATH);
+        File file = File.createTempFile("puzzles", ".bin");
+        try {
+            BinaryPuzzleFile.write(file.getPath(), archive, false);
+            ArrayList<Board> boards = BinaryPuzzleFile.read(file.getPath());
+
+            assertEquals(archive.size(), boards.size());
+            for (int index = 0; index < archive.size(); index++) {
+                Board expected = archive.getBoard(index);
+                assertEquals(expected.getWidth(), boards.get(index).getWidth());
+                assertEquals(expected.getHeight(), boards.get(index).getHeight());
+                assertEquals(expected.getHash(), boards.get(index).getHash());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void solutionsRoundTrip() throws IOException, InvalidMoveException {
+        ArrayList<Board> solutions = new ArrayList<>();
+        for (int index : new int[] {0, 7, 14}) {
+            Board board = new Board(ARCHIVE_PATH, index);
+            board.updateAll();
+            ArrayList<Board> history = Solver.solveBoard(board, new ArrayList<>(), new SolverOptions().setVerbose(false));
+            solutions.add(history.get(history.size() - 1));
+        }
+
+        File file = File.createTempFile("solutions", ".bin");
+        try {
+            BinaryPuzzleFile.write(file.getPath(), solutions, true);
+            ArrayList<Board> boards = BinaryPuzzleFile.read(file.getPath());
+
+            assertEquals(solutions.size(), boards.size());
+            for (int i = 0; i < solutions.size(); i++) {
+                // The colors aren't stored, so matching hashes means they were all recovered from the connections
+                assertTrue(boards.get(i).isSolved());
+                assertEquals(solutions.get(i).getHash(), boards.get(i).getHash());
+                boards.get(i).updateAll();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
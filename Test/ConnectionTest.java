@@ -6,11 +6,17 @@ import src.Location;
 import src.Coordinate;
 import src.GUI;
 import src.InvalidMoveException;
+import src.Move;
+
+import java.util.Arrays;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests for connection logic in the Location class.
@@ -287,6 +293,156 @@ public class ConnectionTest {
             assertTrue(false);
         }
     }
-}
 
+    // The open cells and solved state are tracked incrementally, so check them against a full scan of the board after moves and backtracking
+    @Test
+    public void openCellTrackingTest() {
+        try {
+            Board board = new Board("boards/board2.json");
+            board.setTrailing(true);
+            int mark = board.mark();
+            assertOpenCellsMatch(board);
+
+            board.updateAll();
+            assertOpenCellsMatch(board);
+            assertTrue(board.isSolved());
+
+            board.undoTo(mark);
+            assertOpenCellsMatch(board);
+            assertFalse(board.isSolved());
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    // Every part of the board state that a move touches has to come back exactly on undo, including blocked directions cached after the moves
+    @Test
+    public void trailingUndoTest() {
+        try {
+            Board board = new Board("boards/imported.txt", 0);
+            board.updateAll();
+            board.setTrailing(true);
+            for (Location loc : board.getOpenLocations()) {
+                loc.getValidMoves(board);
+            }
+            Board marked = new Board(board);
+            int mark = board.mark();
+
+            int applied = 0;
+            for (Location loc : marked.getOpenLocations()) {
+                if (board.getLocation(loc.getCoordinate()).getRemainingConnections() == 0) {
+                    // Closed off by an earlier move
+                    continue;
+                }
+                for (Move[] combo : loc.getValidMoveCombinations(board)) {
+                    int before = board.mark();
+                    if (board.tryApplyMoves(combo)) {
+                        applied++;
+                        break;
+                    }
+                    board.undoTo(before);
+                }
+                if (applied == 3) {
+                    break;
+                }
+            }
+            assertEquals(3, applied);
+            assertFalse(board.getHash() == marked.getHash());
+            for (Location loc : board.getOpenLocations()) {
+                loc.getValidMoves(board);
+            }
+
+            board.undoTo(mark);
+            assertBoardsMatch(marked, board);
+            assertOpenCellsMatch(board);
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    // A scratch board throws one shared, bare exception for every contradiction, while a board with diagnostics reports what went wrong and where
+    @Test
+    public void contradictionReportTest() {
+        InvalidMoveException first = findContradiction(false);
+        InvalidMoveException second = findContradiction(false);
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(0, first.getStackTrace().length);
+        assertNull(first.getLocation());
+
+        InvalidMoveException detailed = findContradiction(true);
+        assertNotNull(detailed);
+        assertNotSame(first, detailed);
+        assertTrue(detailed.getStackTrace().length > 0);
+        assertNotNull(detailed.getMessage());
+        assertNotNull(detailed.getLocation());
+    }
+
+    // Connecting B straight across the middle leaves the two A ends unable to meet
+    @Test
+    public void reachabilityTest() {
+        Board board = new Board(new String[]{"A..", "B.B", "A.."});
+        try {
+            board.checkReachability();
+            board.getLocation(1, 0).connectTo(Coordinate.RIGHT, board.getLocation(1, 1), board);
+            board.checkReachability();
+            board.getLocation(1, 1).connectTo(Coordinate.RIGHT, board.getLocation(1, 2), board);
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
 
+        boolean cutOff = false;
+        try {
+            board.checkReachability();
+        } catch (InvalidMoveException e) {
+            cutOff = true;
+        }
+        assertTrue(cutOff);
+    }
+
+    private static InvalidMoveException findContradiction(boolean diagnostics) {
+        // A's ends are cut off from each other by B's
+        Board board = new Board(new String[]{"AB.", "B..", "..A"});
+        board.setDiagnostics(diagnostics);
+        try {
+            board.updateAll();
+        } catch (InvalidMoveException e) {
+            return e;
+        }
+        return null;
+    }
+
+    private static void assertBoardsMatch(Board expected, Board actual) {
+        assertEquals(expected.getHash(), actual.getHash());
+        assertEquals(expected.countOpenCells(), actual.countOpenCells());
+        assertEquals(expected.countUnresolvedCells(), actual.countUnresolvedCells());
+        for (int row = 0; row < expected.getHeight(); row++) {
+            for (int col = 0; col < expected.getWidth(); col++) {
+                Location want = expected.getLocation(row, col);
+                Location got = actual.getLocation(row, col);
+                assertTrue(Arrays.equals(want.getConnections(), got.getConnections()));
+                assertEquals(want.getColorIndex(), got.getColorIndex());
+                assertEquals(want.isStart(), got.isStart());
+                assertEquals(want.getRemainingConnections(), got.getRemainingConnections());
+                assertEquals(want.getValidMoves(expected).toString(), got.getValidMoves(actual).toString());
+            }
+        }
+        assertEquals(expected.getOpenLocations().toString(), actual.getOpenLocations().toString());
+    }
+
+    private static void assertOpenCellsMatch(Board board) {
+        int open = 0;
+        for (Location loc : board.getOpenLocations()) {
+            assertTrue(loc.getRemainingConnections() > 0);
+        }
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < board.getWidth(); col++) {
+                if (board.getLocation(row, col).getRemainingConnections() > 0) {
+                    open++;
+                }
+            }
+        }
+        assertEquals(open, board.getOpenLocations().size());
+        assertEquals(open, board.countOpenCells());
+    }
+}
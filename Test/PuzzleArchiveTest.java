@@ -0,0 +1,69 @@
+package Test;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import src.Board;
+import src.PuzzleArchive;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for reading puzzles out of an archive file by index, both with and without a sidecar index.
+ */
+
+public class PuzzleArchiveTest {
+    private static final String ARCHIVE_PATH = "boards/imported.txt";
+
+    @Test
+    public void readsBoardsByIndex() throws IOException {
+        PuzzleArchive archive = new PuzzleArchive(ARCHIVE_PATH);
+
+        assertEquals(270, archive.size());
+        assertEquals(8, archive.getWidth(0));
+        assertEquals(8, archive.getHeight(0));
+        assertArrayEquals(new String[] {"........", ".E....F.", "...DF...", "........", "..B.....", "C....B..", "...C....", "ED......"}, archive.getRows(0));
+
+        // Reading out of order gives the same boards as the shared archive behind Board(String, int)
+        for (int index : new int[] {269, 144, 77, 0}) {
+            Board board = archive.getBoard(index);
+            assertEquals(archive.getWidth(index), board.getWidth());
+            assertEquals(archive.getHeight(index), board.getHeight());
+            assertEquals(new Board(ARCHIVE_PATH, index).getHash(), board.getHash());
+        }
+    }
+
+    @Test
+    public void streamsEveryBoard() throws IOException {
+        PuzzleArchive archive = new PuzzleArchive(ARCHIVE_PATH);
+
+        int[] count = {0};
+        archive.stream().forEach(board -> {
+            assertEquals(archive.getWidth(count[0]), board.getWidth());
+            assertEquals(archive.getHeight(count[0]), board.getHeight());
+            count[0]++;
+        });
+        assertEquals(archive.size(), count[0]);
+    }
+
+    @Test
+    public void sidecarIndexMatchesScan() throws IOException {
+        File indexFile = File.createTempFile("imported", ".idx");
+        indexFile.delete();
+        try {
+            PuzzleArchive scanned = new PuzzleArchive(ARCHIVE_PATH, indexFile.getPath());
+            assertTrue(indexFile.exists());
+
+            PuzzleArchive indexed = new PuzzleArchive(ARCHIVE_PATH, indexFile.getPath());
+            assertEquals(scanned.size(), indexed.size());
+            for (int index = 0; index < scanned.size(); index++) {
+                assertArrayEquals(scanned.getRows(index), indexed.getRows(index));
+            }
+        } finally {
+            indexFile.delete();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package Test;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import src.Board;
+import src.InvalidMoveException;
+import src.Move;
+import src.PuzzleArchive;
+import src.SolutionCache;
+import src.Solver;
+import src.SolverMetrics;
+import src.SolverOptions;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for looking up solved puzzles by their canonical form, in other orientations and colorings and across runs.
+ */
+
+public class SolutionCacheTest {
+    private static final String ARCHIVE_PATH = "boards/imported.txt";
+
+    @Test
+    public void findsRotatedAndRecoloredPuzzles() throws IOException, InvalidMoveException {
+        PuzzleArchive archive = new PuzzleArchive(ARCHIVE_PATH);
+        SolutionCache cache = new SolutionCache(16, null);
+
+        for (int index : new int[] {0, 14, 69}) {
+            String[] rows = archive.getRows(index);
+            assertNull(cache.lookup(new Board(rows), new ArrayList<>()));
+            Solver.solveBoard(new Board(rows), new ArrayList<>(), new SolverOptions().setSolutionCache(cache).setVerbose(false));
+
+            // Each quarter turn, with the colors swapped round each time, is the same puzzle
+            String[] turned = rows;
+            for (int turn = 0; turn < 4; turn++) {
+                turned = recolor(rotate(turned));
+                Board board = new Board(turned);
+                assertEquals(SolutionCache.getFingerprint(new Board(rows)), SolutionCache.getFingerprint(board));
+
+                SolverMetrics metrics = new SolverMetrics();
+                ArrayList<Move[]> moveHistory = new ArrayList<>();
+                ArrayList<Board> solution = Solver.solveBoard(board, moveHistory, new SolverOptions().setSolutionCache(cache).setMetrics(metrics).setVerbose(false));
+                assertEquals(1, metrics.getCacheHits());
+                assertEquals(0, metrics.getNodesExpanded());
+                assertTrue(solution.get(solution.size() - 1).isSolved());
+                assertEquals(solution.size(), moveHistory.size());
+            }
+        }
+        assertNotEquals(SolutionCache.getFingerprint(archive.getBoard(0)), SolutionCache.getFingerprint(archive.getBoard(1)));
+    }
+
+    @Test
+    public void keepsEntriesOnDisk() throws IOException {
+        Path directory = Files.createTempDirectory("solution-cache");
+        try {
+            String[] rows = new PuzzleArchive(ARCHIVE_PATH).getRows(7);
+            Solver.solveBoard(new Board(rows), new ArrayList<>(), new SolverOptions().setSolutionCache(new SolutionCache(16, directory)).setVerbose(false));
+
+            // A new cache over the same directory starts empty in memory, but still finds the puzzle
+            SolutionCache reopened = new SolutionCache(16, directory);
+            assertEquals(0, reopened.size());
+            ArrayList<Board> solution = reopened.lookup(new Board(rotate(rows)), new ArrayList<>());
+            assertNotNull(solution);
+            assertTrue(solution.get(solution.size() - 1).isSolved());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    // A file cut short or edited by hand is a miss, and the solve goes ahead as if it had never been there
+    @Test
+    public void ignoresCorruptFiles() throws IOException {
+        Path directory = Files.createTempDirectory("solution-cache");
+        try {
+            String[] rows = new PuzzleArchive(ARCHIVE_PATH).getRows(7);
+            Solver.solveBoard(new Board(rows), new ArrayList<>(), new SolverOptions().setSolutionCache(new SolutionCache(16, directory)).setVerbose(false));
+            Path file;
+            try (var files = Files.list(directory)) {
+                file = files.findFirst().get();
+            }
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+            List<List<String>> corruptions = List.of(
+                    lines.subList(0, 1),                                                    // Only the key
+                    List.of(lines.get(0), lines.get(1).substring(1)),                       // Solved board one cell short
+                    List.of(lines.get(0), lines.get(1), "3 4"),                             // Move without a comma
+                    List.of(lines.get(0), lines.get(1), "x,1"),                             // Cell that isn't a number
+                    List.of(lines.get(0), lines.get(1), "100000,1"));                       // Cell off the board
+            for (List<String> corrupt : corruptions) {
+                Files.write(file, corrupt, StandardCharsets.UTF_8);
+                SolutionCache cache = new SolutionCache(16, directory);
+                assertNull(cache.lookup(new Board(rows), new ArrayList<>()));
+                assertFalse(Files.exists(file));
+
+                ArrayList<Board> solution = Solver.solveBoard(new Board(rows), new ArrayList<>(), new SolverOptions().setSolutionCache(cache).setVerbose(false));
+                assertTrue(solution.get(solution.size() - 1).isSolved());
+                assertTrue(Files.exists(file));
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Turn a puzzle a quarter turn clockwise
+     */
+    private static String[] rotate(String[] rows) {
+        String[] turned = new String[rows[0].length()];
+        for (int col = 0; col < rows[0].length(); col++) {
+            StringBuilder sb = new StringBuilder();
+            for (int row = rows.length - 1; row >= 0; row--) {
+                sb.append(rows[row].charAt(col));
+            }
+            turned[col] = sb.toString();
+        }
+        return turned;
+    }
+
+    /**
+     * Swap the first two colors of a puzzle
+     */
+    private static String[] recolor(String[] rows) {
+        String[] recolored = new String[rows.length];
+        for (int row = 0; row < rows.length; row++) {
+            recolored[row] = rows[row].replace('A', '#').replace('B', 'A').replace('#', 'B');
+        }
+        return recolored;
+    }
+}
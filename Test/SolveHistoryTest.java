@@ -0,0 +1,81 @@
+package Test;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import src.Board;
+import src.Move;
+import src.PuzzleArchive;
+import src.SolveHistory;
+import src.Solver;
+import src.SolverOptions;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for rebuilding the boards of a solve from its moves and keyframes.
+ */
+
+public class SolveHistoryTest {
+    private static final String ARCHIVE_PATH = "boards/imported.txt";
+
+    @Test
+    public void rebuildsEveryStep() throws IOException {
+        PuzzleArchive archive = new PuzzleArchive(ARCHIVE_PATH);
+        for (SolverOptions.Backend backend : new SolverOptions.Backend[] {SolverOptions.Backend.NATIVE, SolverOptions.Backend.SAT}) {
+            for (int index : new int[] {0, 14, 69}) {
+                ArrayList<Move[]> moveHistory = new ArrayList<>();
+                ArrayList<Board> solution = Solver.solveBoard(archive.getBoard(index), moveHistory, new SolverOptions().setBackend(backend).setVerbose(false));
+                SolveHistory history = new SolveHistory(solution, moveHistory);
+                assertEquals(solution.size(), history.size());
+                assertTrue(history.isSolved());
+
+                // Backwards first, so every step is rebuilt from a keyframe rather than the step before
+                for (int step = solution.size() - 1; step >= 0; step--) {
+                    checkStep(history, solution, step);
+                }
+                for (int step = 0; step < solution.size(); step++) {
+                    checkStep(history, solution, step);
+                    assertTrue(Arrays.deepEquals(step == 0 ? new boolean[history.getHeight()][history.getWidth()] : solution.get(step).getDiff(solution.get(step - 1)), history.getDiff(step)));
+                }
+                if (backend == SolverOptions.Backend.NATIVE) {
+                    assertTrue(history.getKeyframeCount() <= 1 + (solution.size() - 1) / 32);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stepsForwardsWithoutRestoring() throws IOException {
+        PuzzleArchive archive = new PuzzleArchive(ARCHIVE_PATH);
+        ArrayList<Move[]> moveHistory = new ArrayList<>();
+        // Board 112 takes a few dozen steps, so the history has several keyframes
+        ArrayList<Board> solution = Solver.solveBoard(archive.getBoard(112), moveHistory, new SolverOptions().setVerbose(false));
+        SolveHistory history = new SolveHistory(solution, moveHistory);
+        assertTrue(history.getKeyframeCount() > 2);
+
+        // The viewer asks for each step's board and then its diff; only reaching a keyframe should rebuild from one
+        for (int step = 0; step < history.size(); step++) {
+            checkStep(history, solution, step);
+            assertTrue(Arrays.deepEquals(step == 0 ? new boolean[history.getHeight()][history.getWidth()] : solution.get(step).getDiff(solution.get(step - 1)), history.getDiff(step)));
+        }
+        assertEquals(history.getKeyframeCount(), history.getRestoreCount());
+
+        // Jumping back and diffing restores from the keyframe once, then stepping on from there doesn't
+        int jump = history.size() / 2;
+        int restores = history.getRestoreCount();
+        history.getDiff(jump);
+        history.getBoard(jump + 1);
+        history.getDiff(jump + 1);
+        assertTrue(history.getRestoreCount() - restores <= 2);
+    }
+
+    private static void checkStep(SolveHistory history, ArrayList<Board> solution, int step) {
+        Board board = history.getBoard(step);
+        assertEquals(solution.get(step).getHash(), board.getHash());
+        assertTrue(Arrays.equals(solution.get(step).toRows(), board.toRows()));
+    }
+}
@@ -0,0 +1,163 @@
+package Test;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import src.Board;
+import src.Move;
+import src.PuzzleArchive;
+import src.SolutionCache;
+import src.SolverServer;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for solving puzzles over HTTP, against a server started on a free local port.
+ */
+
+public class SolverServerTest {
+
+    @Test
+    public void solvesPuzzlesInEveryFormat() throws IOException {
+        SolverServer server = new SolverServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 2, 10_000);
+        server.start();
+        try {
+            // Text rows, as they appear in the archive
+            String[] rows = new PuzzleArchive("boards/imported.txt").getRows(0);
+            JSONObject response = post(server, "/solve", String.join("\n", rows), 200);
+            assertTrue(response.getBoolean("solved"));
+            assertFalse(response.getBoolean("timedOut"));
+            JSONArray grid = response.getJSONArray("grid");
+            assertEquals(rows.length, grid.length());
+            for (int row = 0; row < rows.length; row++) {
+                assertFalse(grid.getString(row).contains("."));
+                for (int col = 0; col < rows[row].length(); col++) {
+                    // The ends of each color stay where they were
+                    if (rows[row].charAt(col) != '.') {
+                        assertEquals(rows[row].charAt(col), grid.getString(row).charAt(col));
+                    }
+                }
+            }
+            assertTrue(response.getJSONArray("moves").length() > 0);
+
+            // Another puzzle wrapped in JSON, on the SAT backend; it has to be one the server hasn't seen, or the cache would answer it
+            JSONObject wrapped = new JSONObject().put("rows", new JSONArray(Arrays.asList(new PuzzleArchive("boards/imported.txt").getRows(14))));
+            JSONObject satResponse = post(server, "/solve?backend=sat", wrapped.toString(), 200);
+            assertTrue(satResponse.getBoolean("solved"));
+            assertEquals(0, satResponse.getJSONObject("metrics").getLong("cacheHits"));
+
+            // The JSON files in boards/
+            String flows = Files.readString(Path.of("boards/board.json"));
+            JSONObject flowsResponse = post(server, "/solve", flows, 200);
+            assertTrue(flowsResponse.getBoolean("solved"));
+            assertEquals(new Board("boards/board.json").getWidth(), flowsResponse.getInt("width"));
+
+            // Bad puzzles and options are turned away before they reach a worker
+            post(server, "/solve", "A.B\nA..", 400);
+            post(server, "/solve", "A.\nA..", 400);
+            post(server, "/solve", "AB.\nB..\n..A", 400);    // Well formed, but A is walled in as soon as the board propagates
+            post(server, "/solve?backend=quantum", String.join("\n", rows), 400);
+
+            JSONObject health = get(server, "/health");
+            assertEquals("ok", health.getString("status"));
+            assertEquals(1, health.getInt("workers"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void turnsAwayRequestsOnceTheQueueIsFull() throws Exception {
+        // Holds the worker in its cache lookup until the test lets it go, so the worker stays busy for exactly as long as needed
+        CountDownLatch release = new CountDownLatch(1);
+        SolutionCache blockingCache = new SolutionCache(16, null) {
+            @Override
+            public ArrayList<Board> lookup(Board board, ArrayList<Move[]> moveHistory) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.lookup(board, moveHistory);
+            }
+        };
+
+        SolverServer server = new SolverServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 1, 10_000, blockingCache);
+        server.start();
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            String puzzle = String.join("\n", new PuzzleArchive("boards/imported.txt").getRows(0));
+
+            // One request on the worker, one waiting behind it with a short timeout, and a third with nowhere to go
+            Future<JSONObject> running = clients.submit(() -> post(server, "/solve", puzzle, 200));
+            waitFor(server, "active", 1);
+            Future<JSONObject> queued = clients.submit(() -> post(server, "/solve?timeout=200", puzzle, 200));
+            waitFor(server, "queued", 1);
+            post(server, "/solve", puzzle, 503);
+
+            // The queued request's time runs out while it waits, so it's answered as timed out without being solved
+            Thread.sleep(400);
+            release.countDown();
+            assertTrue(running.get().getBoolean("solved"));
+            JSONObject timedOut = queued.get();
+            assertFalse(timedOut.getBoolean("solved"));
+            assertTrue(timedOut.getBoolean("timedOut"));
+            assertEquals(0, timedOut.getJSONArray("moves").length());
+        } finally {
+            release.countDown();
+            clients.shutdown();
+            server.stop();
+        }
+    }
+
+    private static void waitFor(SolverServer server, String field, int value) throws IOException, InterruptedException {
+        for (int attempt = 0; attempt < 500 && get(server, "/health").getInt(field) != value; attempt++) {
+            Thread.sleep(10);
+        }
+        assertEquals(value, get(server, "/health").getInt(field));
+    }
+
+    private static JSONObject post(SolverServer server, String path, String body, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(expectedStatus, connection.getResponseCode());
+        return read(connection);
+    }
+
+    private static JSONObject get(SolverServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        return read(connection);
+    }
+
+    private static JSONObject read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        try (in) {
+            return new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
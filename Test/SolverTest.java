@@ -0,0 +1,243 @@
+package Test;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import src.Board;
+import src.CombinationCountHeuristic;
+import src.InvalidMoveException;
+import src.Location;
+import src.Move;
+import src.Solver;
+import src.SolverMetrics;
+import src.SolverOptions;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the solver itself, run against a handful of the smaller archive puzzles.
+ * These mostly check that the different ways of running the search agree with the original sequential one, since the search is deterministic and any difference means something has gone wrong.
+ */
+
+public class SolverTest {
+    // Small archive puzzles that are quick to solve but still need some searching
+    private static final int[] ARCHIVE_INDICES = {0, 7, 14, 69};
+
+    private static Board loadArchiveBoard(int index) throws InvalidMoveException {
+        Board board = new Board("boards/imported.txt", index);
+        board.updateAll();
+        return board;
+    }
+
+    private static String describe(ArrayList<Move[]> moveHistory) {
+        StringBuilder sb = new StringBuilder();
+        for (Move[] moves : moveHistory) {
+            for (Move move : moves) {
+                sb.append(move.getStart()).append(move.getDirection()).append(' ');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void solvesArchiveBoards() {
+        try {
+            for (int index : ARCHIVE_INDICES) {
+                ArrayList<Board> solution = Solver.solveBoard(loadArchiveBoard(index), new ArrayList<>(), new SolverOptions().setVerbose(false));
+                assertTrue("Board " + index + " should be solved", solution.get(solution.size() - 1).isSolved());
+            }
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        try {
+            ForkJoinPool pool = new ForkJoinPool(4);
+            for (int index : ARCHIVE_INDICES) {
+                ArrayList<Move[]> sequential = new ArrayList<>();
+                Solver.solveBoard(loadArchiveBoard(index), sequential, new SolverOptions().setVerbose(false));
+
+                ArrayList<Move[]> parallel = new ArrayList<>();
+                Solver.solveBoard(loadArchiveBoard(index), parallel, new SolverOptions().setPool(pool).setVerbose(false));
+
+                assertEquals("Board " + index, describe(sequential), describe(parallel));
+            }
+            pool.shutdown();
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void parallelRefutationMatchesSequential() {
+        try {
+            ForkJoinPool pool = new ForkJoinPool(4);
+            SolverOptions sequential = new SolverOptions().setTranspositionTableSize(0).setVerbose(false);
+            SolverOptions parallel = new SolverOptions().setTranspositionTableSize(0).setPool(pool).setVerbose(false);
+            int depthLimit = parallel.getParallelRefutationDepth();
+            assertTrue(depthLimit > 0);
+
+            // Every combination from the open locations of a board partway through a solve, each checked at a depth the parallel search splits at; from the starting board, the searches take minutes
+            ArrayList<Board> solution = Solver.solveBoard(loadArchiveBoard(0), new ArrayList<>(), sequential);
+            Board start = solution.get(solution.size() * 3 / 4);
+            int deadly = 0;
+            int safe = 0;
+            for (Location loc : start.getOpenLocations()) {
+                for (Move[] combo : loc.getValidMoveCombinations(start)) {
+                    Board board = new Board(start);
+                    board.setTrailing(true);
+                    if (!board.tryApplyMoves(combo)) {
+                        continue;
+                    }
+                    long hash = board.getHash();
+                    boolean expected = Solver.isDeadly(board, depthLimit, loc.getCoordinate(), sequential);
+                    boolean actual = Solver.isDeadly(board, depthLimit, loc.getCoordinate(), parallel);
+                    assertEquals(Arrays.toString(combo), expected, actual);
+                    assertEquals(hash, board.getHash());
+                    if (expected) {
+                        deadly++;
+                    } else {
+                        safe++;
+                    }
+                }
+            }
+            assertTrue(deadly > 0 && safe > 0);
+            pool.shutdown();
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void combinationCountHeuristicSolves() {
+        try {
+            for (int index : ARCHIVE_INDICES) {
+                SolverOptions options = new SolverOptions().setHeuristic(new CombinationCountHeuristic()).setVerbose(false);
+                ArrayList<Board> solution = Solver.solveBoard(loadArchiveBoard(index), new ArrayList<>(), options);
+                assertTrue("Board " + index + " should be solved", solution.get(solution.size() - 1).isSolved());
+            }
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void branchesWhenForcedMovesRunOut() {
+        try {
+            // Board 155 has two solutions, so the forced moves alone can't finish it
+            SolverOptions noBranching = new SolverOptions().setBranching(false).setVerbose(false);
+            ArrayList<Board> partial = Solver.solveBoard(loadArchiveBoard(155), new ArrayList<>(), noBranching);
+            assertTrue(!partial.get(partial.size() - 1).isSolved());
+
+            SolverMetrics metrics = new SolverMetrics();
+            ArrayList<Move[]> moveHistory = new ArrayList<>();
+            ArrayList<Board> solution = Solver.solveBoard(loadArchiveBoard(155), moveHistory, new SolverOptions().setMetrics(metrics).setVerbose(false));
+            assertTrue(solution.get(solution.size() - 1).isSolved());
+            assertEquals(solution.size(), moveHistory.size());
+            assertTrue(metrics.getBranches() > 0);
+
+            assertEquals(2, Solver.countSolutions(loadArchiveBoard(155), 5, new SolverOptions().setVerbose(false)));
+            assertEquals(1, Solver.countSolutions(loadArchiveBoard(14), 5, new SolverOptions().setVerbose(false)));
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void batchedMatchesSingle() {
+        try {
+            ForkJoinPool pool = new ForkJoinPool(4);
+            for (int index : ARCHIVE_INDICES) {
+                ArrayList<Board> single = Solver.solveBoard(loadArchiveBoard(index), new ArrayList<>(), new SolverOptions().setVerbose(false));
+
+                ArrayList<Move[]> moveHistory = new ArrayList<>();
+                SolverOptions options = new SolverOptions().setBatchForcedMoves(true).setVerbose(false);
+                ArrayList<Board> batched = Solver.solveBoard(loadArchiveBoard(index), moveHistory, options);
+                assertTrue("Board " + index + " should be solved", batched.get(batched.size() - 1).isSolved());
+                assertEquals(single.get(single.size() - 1).getHash(), batched.get(batched.size() - 1).getHash());
+                assertTrue(batched.size() <= single.size());
+
+                ArrayList<Move[]> parallel = new ArrayList<>();
+                Solver.solveBoard(loadArchiveBoard(index), parallel, new SolverOptions().setBatchForcedMoves(true).setPool(pool).setVerbose(false));
+                assertEquals("Board " + index, describe(moveHistory), describe(parallel));
+            }
+            pool.shutdown();
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void satBackendMatchesNative() {
+        try {
+            for (int index : ARCHIVE_INDICES) {
+                ArrayList<Board> nativeSolution = Solver.solveBoard(loadArchiveBoard(index), new ArrayList<>(), new SolverOptions().setVerbose(false));
+
+                ArrayList<Move[]> moveHistory = new ArrayList<>();
+                SolverOptions satOptions = new SolverOptions().setBackend(SolverOptions.Backend.SAT).setVerbose(false);
+                ArrayList<Board> satSolution = Solver.solveBoard(loadArchiveBoard(index), moveHistory, satOptions);
+                assertTrue("Board " + index + " should be solved", satSolution.get(satSolution.size() - 1).isSolved());
+                assertEquals(satSolution.size(), moveHistory.size());
+
+                // These boards have unique solutions, so both backends have to end up in the same place
+                assertEquals("Board " + index, nativeSolution.get(nativeSolution.size() - 1).getHash(), satSolution.get(satSolution.size() - 1).getHash());
+            }
+
+            SolverOptions portfolioOptions = new SolverOptions().setBackend(SolverOptions.Backend.PORTFOLIO).setVerbose(false);
+            ArrayList<Board> solution = Solver.solveBoard(loadArchiveBoard(155), new ArrayList<>(), portfolioOptions);
+            assertTrue(solution.get(solution.size() - 1).isSolved());
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void respectsBudgets() {
+        try {
+            // Deeper than the default, but each round is cut short long before it gets expensive
+            for (int index : ARCHIVE_INDICES) {
+                SolverOptions options = new SolverOptions().setMaxDepth(6).setIterationNodeBudget(200).setVerbose(false);
+                ArrayList<Board> solution = Solver.solveBoard(loadArchiveBoard(index), new ArrayList<>(), options);
+                assertTrue("Board " + index + " should be solved", solution.get(solution.size() - 1).isSolved());
+            }
+
+            // The clock moves on a millisecond every time it's read, so the time limit runs out after a fixed amount of work however fast the solver is, long before any board needing a search could be solved
+            AtomicLong now = new AtomicLong();
+            SolverOptions limited = new SolverOptions().setTimeLimit(20).setClock(() -> now.addAndGet(1_000_000)).setVerbose(false);
+            ArrayList<Move[]> moveHistory = new ArrayList<>();
+            ArrayList<Board> partial = Solver.solveBoard(loadArchiveBoard(159), moveHistory, limited);
+            assertTrue(!partial.get(partial.size() - 1).isSolved());
+            assertEquals(partial.size(), moveHistory.size());
+            assertTrue(now.get() >= 20 * 1_000_000);
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void recordsMetrics() {
+        try {
+            SolverMetrics metrics = new SolverMetrics();
+            ArrayList<Move[]> moveHistory = new ArrayList<>();
+            Solver.solveBoard(loadArchiveBoard(14), moveHistory, new SolverOptions().setMetrics(metrics).setVerbose(false));
+
+            long forcedMoves = 0;
+            for (int depth = 0; depth <= SolverMetrics.MAX_TRACKED_DEPTH; depth++) {
+                forcedMoves += metrics.getDepth(depth).getForcedMovesFound();
+            }
+            assertEquals(moveHistory.size() - 1, forcedMoves);
+            assertTrue(metrics.getDepth(0).getIterations() >= forcedMoves);
+            assertTrue(metrics.getPropagationSteps() > 0);
+            assertEquals(metrics.getNodesExpanded(), metrics.toJSON().getLong("nodesExpanded"));
+        } catch (InvalidMoveException e) {
+            assertTrue(false);
+        }
+    }
+}
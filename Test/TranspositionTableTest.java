@@ -0,0 +1,78 @@
+package Test;
+import org.junit.Test;
+
+import src.TranspositionTable;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for storing and looking up isDeadly verdicts by board hash.
+ */
+
+public class TranspositionTableTest {
+
+    @Test
+    public void startsEmpty() {
+        TranspositionTable table = new TranspositionTable(1000);
+        assertEquals(1024, table.getCapacity());
+
+        // An empty slot is all zeroes, which mustn't read as an entry for a board whose hash is zero
+        for (int depth = 0; depth <= 5; depth++) {
+            assertNull(table.lookup(0, depth));
+            assertNull(table.lookup(0x1234_5678_9ABCL, depth));
+        }
+    }
+
+    @Test
+    public void answersForDominatedDepths() {
+        TranspositionTable table = new TranspositionTable(64);
+        long hash = 0x5EED_0000_0042L;
+
+        // Deadly within 3 moves means deadly within any more, but says nothing about fewer
+        table.store(hash, 3, true);
+        assertTrue(table.lookup(hash, 3));
+        assertTrue(table.lookup(hash, 6));
+        assertNull(table.lookup(hash, 2));
+
+        // Safe within 1 move means safe within any fewer; both verdicts are kept for the same board
+        table.store(hash, 1, false);
+        assertFalse(table.lookup(hash, 1));
+        assertFalse(table.lookup(hash, 0));
+        assertNull(table.lookup(hash, 2));
+        assertTrue(table.lookup(hash, 3));
+
+        // A deeper verdict of each kind tightens the range that isn't known
+        table.store(hash, 2, true);
+        table.store(hash, 1, false);
+        assertTrue(table.lookup(hash, 2));
+        assertFalse(table.lookup(hash, 1));
+
+        // A board with a zero hash is stored like any other
+        table.store(0, 2, false);
+        assertFalse(table.lookup(0, 2));
+        assertNull(table.lookup(0, 3));
+    }
+
+    @Test
+    public void checksKeysAndClears() {
+        TranspositionTable table = new TranspositionTable(64);
+        long hash = 0x0ABC_DEF0_0007L;
+        long sameSlot = hash + table.getCapacity();
+
+        // A different board in the same slot fails the key check rather than taking the other board's verdict
+        table.store(hash, 2, true);
+        assertNull(table.lookup(sameSlot, 2));
+
+        // And replaces it when stored, since there's no chaining
+        table.store(sameSlot, 4, false);
+        assertFalse(table.lookup(sameSlot, 4));
+        assertNull(table.lookup(hash, 2));
+
+        table.clear();
+        assertNull(table.lookup(sameSlot, 4));
+        assertNull(table.lookup(0, 0));
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import src.Board;
+import src.InvalidMoveException;
+import src.Location;
+import src.Move;
+
+/**
+ * Benchmarks for the basic board operations the search is built out of: copying a board, applying moves, propagating updates, and enumerating move combinations.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"0", "144", "77", "219"})
+    public int archiveIndex;
+
+    // The starting board of the puzzle, after the initial propagation
+    private Board board;
+
+    // The same board with its undo log turned on, for backtracking benchmarks
+    private Board trailingBoard;
+
+    // A move combination that applies cleanly to the starting board
+    private Move[] combo;
+
+    private ArrayList<Location> openLocations;
+
+    @Setup
+    public void setup() {
+        board = Puzzles.load(archiveIndex);
+        trailingBoard = new Board(board);
+        trailingBoard.setTrailing(true);
+        combo = Puzzles.firstValidCombo(board);
+        openLocations = board.getOpenLocations();
+    }
+
+    @Benchmark
+    public Board copyBoard() {
+        return new Board(board);
+    }
+
+    @Benchmark
+    public Board applyMovesToCopy() throws InvalidMoveException {
+        Board copy = new Board(board);
+        copy.applyMoves(combo);
+        return copy;
+    }
+
+    @Benchmark
+    public Board applyMovesAndUndo() throws InvalidMoveException {
+        int mark = trailingBoard.mark();
+        trailingBoard.applyMoves(combo);
+        trailingBoard.undoTo(mark);
+        return trailingBoard;
+    }
+
+    @Benchmark
+    public Board updateAllFromScratch() throws InvalidMoveException {
+        // Propagate every cell of the puzzle, as happens once when a puzzle is loaded
+        Board copy = new Board(board);
+        copy.scheduleAll();
+        copy.updateAll();
+        return copy;
+    }
+
+    @Benchmark
+    public void getValidMoveCombinations(Blackhole blackhole) {
+        for (Location loc : openLocations) {
+            blackhole.consume(loc.getValidMoveCombinations(board));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import src.Board;
+import src.Solver;
+
+/**
+ * Benchmarks for the depth-limited dead-end search at each depth the solver uses, run from the starting state of a small puzzle.
+ * This goes through the public isDeadly, which doesn't use a transposition table, so it measures the raw search.
+ *
+ * With no target the search has to refute every combination on the board, so the cost grows very quickly with depth; depth 4 takes the better part of a minute even on an 8x8, which is why each call is timed on its own.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DeadlyBenchmark {
+
+    @Param({"1", "2", "3", "4"})
+    public int depthLimit;
+
+    @Param({"0"})
+    public int archiveIndex;
+
+    private Board board;
+
+    @Setup
+    public void setup() {
+        board = new Board(Puzzles.load(archiveIndex));
+        board.setTrailing(true);
+    }
+
+    @Benchmark
+    public boolean isDeadly() {
+        return Solver.isDeadly(board, depthLimit, null);
+    }
+}
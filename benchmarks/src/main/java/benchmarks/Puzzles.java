@@ -0,0 +1,51 @@
+package benchmarks;
+
+import src.Board;
+import src.InvalidMoveException;
+import src.Location;
+import src.Move;
+
+/**
+ * Helpers for setting up benchmark states from the puzzle archive.
+ * The archive indices used by the benchmarks are picked to cover each of the common board sizes: 0 is 8x8, 144 is 14x14, 77 is 25x25 and 219 is 36x20.
+ */
+
+final class Puzzles {
+    static final String ARCHIVE_PATH = "boards/imported.txt";
+
+    private Puzzles() {}
+
+    /**
+     * Load a puzzle from the archive and run the initial propagation on it, the way the GUI and batch solver do before solving
+     * @param index The index of the puzzle in the archive
+     * @return The starting board
+     */
+    static Board load(int index) {
+        Board board = new Board(ARCHIVE_PATH, index);
+        try {
+            board.updateAll();
+        } catch (InvalidMoveException e) {
+            throw new IllegalStateException("Archive board " + index + " is invalid", e);
+        }
+        return board;
+    }
+
+    /**
+     * Find the first move combination, in the order the board lists its open locations, that can be applied without producing an invalid state
+     * @param board The board to search
+     * @return A valid move combination
+     */
+    static Move[] firstValidCombo(Board board) {
+        for (Location loc : board.getOpenLocations()) {
+            for (Move[] combo : loc.getValidMoveCombinations(board)) {
+                try {
+                    new Board(board).applyMoves(combo);
+                    return combo;
+                } catch (InvalidMoveException e) {
+                    // Try the next one
+                }
+            }
+        }
+        throw new IllegalStateException("Board has no valid moves");
+    }
+}
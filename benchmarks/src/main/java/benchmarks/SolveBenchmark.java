@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import src.BatchSolver;
+import src.Board;
+import src.Solver;
+import src.SolverOptions;
+
+/**
+ * End-to-end benchmarks of solving whole archive puzzles, one of each common size.
+ * The bigger puzzles take seconds each, so every solve is timed on its own rather than in a loop.
+ * Each puzzle is solved with each heuristic and each backend, so they can be compared directly; the heuristic makes no difference to the SAT backend.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SolveBenchmark {
+
+    @Param({"0", "144", "77", "219"})
+    public int archiveIndex;
+
+    // Search ordering to solve with; see BatchSolver.getHeuristic
+    @Param({"combinations", "constraint"})
+    public String heuristic;
+
+    // How to solve; see BatchSolver.getBackend
+    @Param({"native", "sat"})
+    public String backend;
+
+    private Board board;
+
+    @Setup
+    public void setup() {
+        board = Puzzles.load(archiveIndex);
+    }
+
+    @Benchmark
+    public ArrayList<Board> solveBoard() {
+        SolverOptions options = new SolverOptions().setHeuristic(BatchSolver.getHeuristic(heuristic)).setBackend(BatchSolver.getBackend(backend)).setVerbose(false);
+        ArrayList<Board> solution = Solver.solveBoard(new Board(board), new ArrayList<>(), options);
+        if (!solution.get(solution.size() - 1).isSolved()) {
+            throw new IllegalStateException("Archive board " + archiveIndex + " wasn't solved");
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,335 @@
+package src;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Headless entry point that solves a range of puzzles from an archive and writes a report of how each one went.
+ * This is what regression passes over the archive are run with; unlike the GUI, it doesn't skip any boards or stop at the first failure.
+ *
+ * Puzzles are solved several at a time, each on its own worker thread, and the biggest ones are started first, so the whole run takes about as long as its slowest puzzle rather than the sum of all of them.
+ *
+ * Usage: BatchSolver [--archive path] [--index path] [--from index] [--to index] [--threads count] [--heuristic name] [--backend name] [--report path]
+ * The range is from inclusive to exclusive, and defaults to every board in the archive. The report is written as JSON if its path ends in .json, and as CSV otherwise; the JSON report includes the full SolverMetrics of each solve.
+ * The heuristic is one of "constraint" (the default) or "combinations" (see Heuristic), which is how the two orderings are compared over the whole archive.
+ * The backend is one of "native" (the default), "sat" or "portfolio" (see SolverOptions.Backend).
+ * Forced moves are applied in batches (see SolverOptions.setBatchForcedMoves), since nobody is watching the steps go by, so the steps in the report count batches rather than single moves.
+ * If an index path is given, the archive's index is kept there between runs (see PuzzleArchive), which saves scanning very large archives every time.
+ */
+
+public class BatchSolver {
+
+    /**
+     * The outcome of solving a single puzzle from the archive
+     */
+    public static class Result {
+        private final int index;
+        private int width;
+        private int height;
+        private boolean solved = false;
+        private int steps = 0;
+        private long boardsCreated = 0;
+        private long wallMillis = 0;
+        private SolverMetrics metrics = null;
+        private String error = null;
+
+        private Result(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public boolean isSolved() {
+            return solved;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+
+        public long getBoardsCreated() {
+            return boardsCreated;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public SolverMetrics getMetrics() {
+            return metrics;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public static void main(String[] args) {
+        String archivePath = "boards/imported.txt";
+        String indexPath = null;
+        int from = 0;
+        int to = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String heuristicName = "constraint";
+        String backendName = "native";
+        String reportPath = "batch_report.csv";
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--archive" -> archivePath = args[i + 1];
+                case "--index" -> indexPath = args[i + 1];
+                case "--from" -> from = Integer.parseInt(args[i + 1]);
+                case "--to" -> to = Integer.parseInt(args[i + 1]);
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--heuristic" -> heuristicName = args[i + 1];
+                case "--backend" -> backendName = args[i + 1];
+                case "--report" -> reportPath = args[i + 1];
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: BatchSolver [--archive path] [--index path] [--from index] [--to index] [--threads count] [--heuristic name] [--backend name] [--report path]");
+                    return;
+                }
+            }
+        }
+
+        Heuristic heuristic = getHeuristic(heuristicName);
+        if (heuristic == null) {
+            System.err.println("Unknown heuristic: " + heuristicName);
+            return;
+        }
+        SolverOptions.Backend backend = getBackend(backendName);
+        if (backend == null) {
+            System.err.println("Unknown backend: " + backendName);
+            return;
+        }
+
+        PuzzleArchive archive;
+        try {
+            archive = new PuzzleArchive(archivePath, indexPath);
+        } catch (IOException e) {
+            System.err.println("Could not open archive " + archivePath + ": " + e);
+            return;
+        }
+        if (to < 0) {
+            to = archive.size();
+        }
+
+        long start = System.nanoTime();
+        ArrayList<Result> results = solveRange(archive, from, to, threads, heuristic, backend);
+        long totalMillis = (System.nanoTime() - start) / 1_000_000;
+
+        try {
+            writeReport(results, reportPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        int solved = 0;
+        long slowest = 0;
+        for (Result result : results) {
+            solved += result.isSolved() ? 1 : 0;
+            slowest = Math.max(slowest, result.getWallMillis());
+        }
+        System.out.println("Solved " + solved + "/" + results.size() + " boards in " + totalMillis + "ms on " + threads + " threads (slowest board took " + slowest + "ms); report written to " + reportPath);
+    }
+
+    /**
+     * Look up a heuristic by the name it's given on the command line
+     * @param name The name of the heuristic
+     * @return The heuristic, or null if there isn't one by that name
+     */
+    public static Heuristic getHeuristic(String name) {
+        return switch (name) {
+            case "combinations" -> new CombinationCountHeuristic();
+            case "constraint" -> new ConstraintHeuristic();
+            default -> null;
+        };
+    }
+
+    /**
+     * Look up a backend by the name it's given on the command line
+     * @param name The name of the backend
+     * @return The backend, or null if there isn't one by that name
+     */
+    public static SolverOptions.Backend getBackend(String name) {
+        return switch (name) {
+            case "native" -> SolverOptions.Backend.NATIVE;
+            case "sat" -> SolverOptions.Backend.SAT;
+            case "portfolio" -> SolverOptions.Backend.PORTFOLIO;
+            default -> null;
+        };
+    }
+
+    /**
+     * Solve every board in a range of an archive, several at a time, with the default heuristic
+     * @param archive The archive to read the boards from
+     * @param from The index of the first board to solve
+     * @param to The index one past the last board to solve
+     * @param threads The number of boards to solve at once
+     * @return The outcome for each board, in index order
+     */
+    public static ArrayList<Result> solveRange(PuzzleArchive archive, int from, int to, int threads) {
+        return solveRange(archive, from, to, threads, new ConstraintHeuristic());
+    }
+
+    /**
+     * Solve every board in a range of an archive, several at a time
+     * @param archive The archive to read the boards from
+     * @param from The index of the first board to solve
+     * @param to The index one past the last board to solve
+     * @param threads The number of boards to solve at once
+     * @param heuristic How to order each search
+     * @return The outcome for each board, in index order
+     */
+    public static ArrayList<Result> solveRange(PuzzleArchive archive, int from, int to, int threads, Heuristic heuristic) {
+        return solveRange(archive, from, to, threads, heuristic, SolverOptions.Backend.NATIVE);
+    }
+
+    /**
+     * Solve every board in a range of an archive, several at a time, with the given backend
+     * @param archive The archive to read the boards from
+     * @param from The index of the first board to solve
+     * @param to The index one past the last board to solve
+     * @param threads The number of boards to solve at once
+     * @param heuristic How to order each search
+     * @param backend How to solve each board
+     * @return The outcome for each board, in index order
+     */
+    public static ArrayList<Result> solveRange(PuzzleArchive archive, int from, int to, int threads, Heuristic heuristic, SolverOptions.Backend backend) {
+        // Load everything up front, so the biggest boards can be started first
+        ArrayList<Result> results = new ArrayList<>();
+        ArrayList<Board> boards = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Result result = new Result(i);
+            Board board = null;
+            try {
+                board = archive.getBoard(i);
+                result.width = board.getWidth();
+                result.height = board.getHeight();
+            } catch (RuntimeException e) {
+                result.error = "Could not load board: " + e;
+            }
+            results.add(result);
+            boards.add(board);
+        }
+
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (boards.get(i) != null) {
+                order.add(i);
+            }
+        }
+        order.sort(Comparator.comparingInt((Integer i) -> results.get(i).width * results.get(i).height).reversed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i : order) {
+            Result result = results.get(i);
+            Board board = boards.get(i);
+            futures.add(executor.submit(() -> solve(board, result, heuristic, backend)));
+        }
+        boards.clear();
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // solve() records its own failures, so this can only be something unexpected
+                e.printStackTrace();
+            }
+        }
+        executor.shutdownNow();
+
+        return results;
+    }
+
+    /**
+     * Solve a single board on the calling thread, recording the outcome
+     * @param board The board to solve
+     * @param result Where to record the outcome
+     * @param heuristic How to order the search
+     * @param backend How to solve the board
+     */
+    private static void solve(Board board, Result result, Heuristic heuristic, SolverOptions.Backend backend) {
+        SolverMetrics metrics = new SolverMetrics();
+        SolverOptions options = new SolverOptions().setMetrics(metrics).setHeuristic(heuristic).setBackend(backend).setBatchForcedMoves(true).setVerbose(false);
+
+        long start = System.nanoTime();
+        try {
+            board.updateAll();
+            ArrayList<Board> solution = Solver.solveBoard(board, new ArrayList<>(), options);
+            result.solved = solution.get(solution.size() - 1).isSolved();
+            result.steps = solution.size() - 1;
+        } catch (InvalidMoveException e) {
+            result.error = "Invalid board: " + e.getMessage();
+        } catch (RuntimeException e) {
+            result.error = e.toString();
+        }
+        result.wallMillis = (System.nanoTime() - start) / 1_000_000;
+        result.boardsCreated = metrics.getBoardsCreated();
+        result.metrics = metrics;
+    }
+
+    /**
+     * Write the outcome of a batch to a report file
+     * @param results The outcome for each board
+     * @param reportPath Where to write the report; JSON if it ends in .json, CSV otherwise
+     * @throws IOException If the report can't be written
+     */
+    public static void writeReport(ArrayList<Result> results, String reportPath) throws IOException {
+        try (PrintWriter writer = new PrintWriter(reportPath)) {
+            if (reportPath.endsWith(".json")) {
+                JSONArray array = new JSONArray();
+                for (Result result : results) {
+                    JSONObject obj = new JSONObject();
+                    obj.put("index", result.getIndex());
+                    obj.put("width", result.getWidth());
+                    obj.put("height", result.getHeight());
+                    obj.put("solved", result.isSolved());
+                    obj.put("steps", result.getSteps());
+                    obj.put("boardsCreated", result.getBoardsCreated());
+                    obj.put("wallMillis", result.getWallMillis());
+                    if (result.getMetrics() != null) {
+                        obj.put("metrics", result.getMetrics().toJSON());
+                    }
+                    if (result.getError() != null) {
+                        obj.put("error", result.getError());
+                    }
+                    array.put(obj);
+                }
+                writer.println(array.toString(2));
+            } else {
+                writer.println("index,width,height,solved,steps,boards_created,nodes_expanded,propagation_steps,wall_ms,error");
+                for (Result result : results) {
+                    String error = result.getError() == null ? "" : "\"" + result.getError().replace("\"", "\"\"") + "\"";
+                    long nodesExpanded = result.getMetrics() == null ? 0 : result.getMetrics().getNodesExpanded();
+                    long propagationSteps = result.getMetrics() == null ? 0 : result.getMetrics().getPropagationSteps();
+                    writer.println(result.getIndex() + "," + result.getWidth() + "," + result.getHeight() + "," + result.isSolved() + ","
+                        + result.getSteps() + "," + result.getBoardsCreated() + "," + nodesExpanded + "," + propagationSteps + "," + result.getWallMillis() + "," + error);
+                }
+            }
+        }
+    }
+}
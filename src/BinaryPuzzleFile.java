@@ -0,0 +1,370 @@
+package src;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact binary format for puzzles and, optionally, their solutions, for workloads that load far too many puzzles to go through the text archive or JSON parsing.
+ *
+ * A file is a short header followed by any number of boards, one after another:
+ * - Header: the magic number 0x4E4C4246 ("NLBF") and a format version byte
+ * - Per board: width and height (unsigned shorts), a flags byte, the number of endpoints (unsigned short), then each endpoint as its color index (unsigned byte) and cell index (unsigned short, or int on boards of more than 65536 cells)
+ * - If the connections flag is set, a bitmap of the board's connections follows, two bits per cell in row-major order (down, then right); the up and left connections are the same bits seen from the other side
+ *
+ * Only the endpoints' colors are stored; the colors of everything else are recovered by following connections out from the endpoints, which is all the solver itself does to work them out.
+ * That makes the connections of a solved board enough to store the whole solution, at a quarter of a byte per cell.
+ *
+ * Usage as a converter: BinaryPuzzleFile [--archive path] [--out path] [--solve]
+ * With --solve, each puzzle is solved as it's converted and its solution is stored with it.
+ */
+
+public class BinaryPuzzleFile {
+
+    private static final int MAGIC = 0x4E4C4246;
+    private static final int VERSION = 1;
+
+    // Flags for each board
+    private static final int FLAG_CONNECTIONS = 0x01;
+    private static final int FLAG_WIDE_INDICES = 0x02;
+
+    /**
+     * Writes boards to a binary puzzle file, one after another
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        /**
+         * @param path The path of the file to write; any existing file is replaced
+         * @throws IOException If the file can't be created
+         */
+        public Writer(String path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        /**
+         * Append a board to the file
+         * @param board The board to write
+         * @param includeConnections Whether to store the board's connections (e.g. for a solution), or only its endpoints
+         * @throws IOException If the board can't be written
+         */
+        public void write(Board board, boolean includeConnections) throws IOException {
+            writeBoard(out, board, includeConnections);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the boards from a binary puzzle file in order, as new boards with every cell scheduled for an update
+     */
+    public static class Reader implements Iterator<Board>, Closeable {
+        private final BufferedInputStream buffered;
+        private final DataInputStream in;
+
+        /**
+         * @param path The path of the file to read
+         * @throws IOException If the file can't be opened or isn't a binary puzzle file
+         */
+        public Reader(String path) throws IOException {
+            buffered = new BufferedInputStream(new FileInputStream(path), 1 << 16);
+            in = new DataInputStream(buffered);
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a binary puzzle file: " + path);
+                }
+                int version = in.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary puzzle file version " + version + ": " + path);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                buffered.mark(1);
+                int next = buffered.read();
+                buffered.reset();
+                return next != -1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @throws UncheckedIOException If the file is truncated or corrupt
+         */
+        @Override
+        public Board next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return readBoard(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Write every board to a new file
+     * @param path The path of the file to write
+     * @param boards The boards to write
+     * @param includeConnections Whether to store each board's connections, or only its endpoints
+     * @throws IOException If the file can't be written
+     */
+    public static void write(String path, Iterable<Board> boards, boolean includeConnections) throws IOException {
+        try (Writer writer = new Writer(path)) {
+            for (Board board : boards) {
+                writer.write(board, includeConnections);
+            }
+        }
+    }
+
+    /**
+     * Read every board in a file
+     * @param path The path of the file to read
+     * @return The boards, in the order they were written
+     * @throws IOException If the file can't be read, or is truncated or corrupt
+     */
+    public static ArrayList<Board> read(String path) throws IOException {
+        ArrayList<Board> boards = new ArrayList<>();
+        try (Reader reader = new Reader(path)) {
+            while (reader.hasNext()) {
+                boards.add(reader.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return boards;
+    }
+
+    /**
+     * Write a single board
+     * @param out The stream to write to
+     * @param board The board to write
+     * @param includeConnections Whether to store the board's connections, or only its endpoints
+     * @throws IOException If the board can't be written
+     */
+    static void writeBoard(DataOutputStream out, Board board, boolean includeConnections) throws IOException {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        int size = width * height;
+        if (width > 0xFFFF || height > 0xFFFF) {
+            throw new IOException("Board too large for the binary format: " + width + "x" + height);
+        }
+        boolean wide = size > 0x10000;
+
+        int endpoints = 0;
+        for (int i = 0; i < size; i++) {
+            if (board.isStart(i)) {
+                endpoints++;
+            }
+        }
+
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeByte((includeConnections ? FLAG_CONNECTIONS : 0) | (wide ? FLAG_WIDE_INDICES : 0));
+        out.writeShort(endpoints);
+        for (int i = 0; i < size; i++) {
+            if (board.isStart(i)) {
+                out.writeByte(board.getColor(i));
+                if (wide) {
+                    out.writeInt(i);
+                } else {
+                    out.writeShort(i);
+                }
+            }
+        }
+
+        if (includeConnections) {
+            // Four cells to a byte, down in the low bit of each pair and right in the high bit
+            int packed = 0;
+            for (int i = 0; i < size; i++) {
+                int bits = (board.hasConnection(i, 1) ? 1 : 0) | (board.hasConnection(i, 3) ? 2 : 0);
+                packed |= bits << ((i & 3) * 2);
+                if ((i & 3) == 3 || i == size - 1) {
+                    out.writeByte(packed);
+                    packed = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a single board
+     * @param in The stream to read from, positioned at the start of a board
+     * @return The board, with every cell scheduled for an update
+     * @throws IOException If the board is truncated or corrupt
+     */
+    static Board readBoard(DataInputStream in) throws IOException {
+        int width = in.readUnsignedShort();
+        int height = in.readUnsignedShort();
+        int flags = in.readUnsignedByte();
+        int endpoints = in.readUnsignedShort();
+        int size = width * height;
+        if (size == 0) {
+            throw new IOException("Corrupt board: size " + width + "x" + height);
+        }
+
+        short[] cells = new short[size];
+        int[] starts = new int[endpoints];
+        for (int i = 0; i < endpoints; i++) {
+            int color = in.readUnsignedByte();
+            int index = (flags & FLAG_WIDE_INDICES) != 0 ? in.readInt() : in.readUnsignedShort();
+            if (index < 0 || index >= size || color > Board.MAX_COLOR_INDEX) {
+                throw new IOException("Corrupt board: endpoint " + index + " of color " + color);
+            }
+            cells[index] = Board.packCell(color, true);
+            starts[i] = index;
+        }
+
+        if ((flags & FLAG_CONNECTIONS) != 0) {
+            byte[] bitmap = new byte[(size + 3) / 4];
+            in.readFully(bitmap);
+            readConnections(cells, width, height, bitmap);
+            fillColors(cells, width, starts);
+        }
+
+        return Board.fromCells(width, height, cells);
+    }
+
+    /**
+     * Set the connection bits of every cell from a connection bitmap, on both sides of each connection
+     * @throws IOException If a connection leads off the board
+     */
+    private static void readConnections(short[] cells, int width, int height, byte[] bitmap) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            int bits = (bitmap[i >> 2] >> ((i & 3) * 2)) & 3;
+            if ((bits & 1) != 0) {
+                if (i / width == height - 1) {
+                    throw new IOException("Corrupt board: connection off the bottom edge at cell " + i);
+                }
+                cells[i] |= 1 << 1;
+                cells[i + width] |= 1 << 0;
+            }
+            if ((bits & 2) != 0) {
+                if (i % width == width - 1) {
+                    throw new IOException("Corrupt board: connection off the right edge at cell " + i);
+                }
+                cells[i] |= 1 << 3;
+                cells[i + 1] |= 1 << 2;
+            }
+        }
+    }
+
+    /**
+     * Give every cell connected to an endpoint that endpoint's color, by following the connections out from each one
+     * @throws IOException If two different colors are connected
+     */
+    private static void fillColors(short[] cells, int width, int[] starts) throws IOException {
+        int[] stack = new int[cells.length];
+        for (int start : starts) {
+            int color = cells[start] & Board.COLOR_MASK;
+            int top = 0;
+            stack[top++] = start;
+            while (top > 0) {
+                int index = stack[--top];
+                for (int dir = 0; dir < 4; dir++) {
+                    if ((cells[index] & (1 << dir)) == 0) {
+                        continue;
+                    }
+                    int other = switch (dir) {
+                        case 0 -> index - width;
+                        case 1 -> index + width;
+                        case 2 -> index - 1;
+                        default -> index + 1;
+                    };
+                    int otherColor = cells[other] & Board.COLOR_MASK;
+                    if (otherColor == 0) {
+                        cells[other] |= color;
+                        stack[top++] = other;
+                    } else if (otherColor != color) {
+                        throw new IOException("Corrupt board: different colors connected at cell " + other);
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String archivePath = "boards/imported.txt";
+        String outPath = "boards/imported.bin";
+        boolean solve = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--archive" -> archivePath = args[++i];
+                case "--out" -> outPath = args[++i];
+                case "--solve" -> solve = true;
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: BinaryPuzzleFile [--archive path] [--out path] [--solve]");
+                    return;
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        int converted = 0;
+        int solved = 0;
+        try (Writer writer = new Writer(outPath)) {
+            PuzzleArchive archive = new PuzzleArchive(archivePath);
+            for (Board board : archive) {
+                Board solution = solve ? solve(board) : null;
+                if (solution != null) {
+                    writer.write(solution, true);
+                    solved++;
+                } else {
+                    writer.write(board, false);
+                }
+                converted++;
+            }
+        } catch (IOException e) {
+            System.err.println("Conversion failed after " + converted + " boards: " + e);
+            return;
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Converted " + converted + " boards" + (solve ? " (" + solved + " with solutions)" : "") + " from " + archivePath + " to " + outPath + " in " + millis + "ms");
+    }
+
+    /**
+     * Solve a puzzle for conversion
+     * @param board The puzzle's starting board, with every cell scheduled for an update; its endpoints are left as they were
+     * @return The solved board, or null if it couldn't be solved
+     */
+    private static Board solve(Board board) {
+        try {
+            board.updateAll();
+            ArrayList<Board> history = Solver.solveBoard(board, new ArrayList<>(), new SolverOptions().setVerbose(false));
+            Board last = history.get(history.size() - 1);
+            return last.isSolved() ? last : null;
+        } catch (InvalidMoveException e) {
+            return null;
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package src;
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
+import java.util.Arrays;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -11,7 +10,22 @@ import org.json.JSONTokener;
 
 /**
  * Represents the state of a Numberlink board.
- * Contains the grid of locations and methods for manipulating the board state.
+ * Contains the grid of cells and methods for manipulating the board state.
+ * 
+ * Each cell is packed into a single short (connections, start flag, edited flag and color) and the whole grid lives in one flat array, so copying a board for the search is a single array clone. Location objects are only views onto those cells, for the GUI and tests.
+ * 
+ * Neighbors are looked up in a table of cell indices precomputed for the board's size (see NeighborTable), so the connection logic runs entirely on ints and never has to build a Coordinate.
+ * 
+ * The board also keeps a Zobrist hash of its connections and colors, updated incrementally on every cell write, so that the solver can recognize board states it has already searched.
+ * 
+ * The directions each cell is blocked from connecting in are cached per cell, since working them out means several U-turn checks and the search asks for them constantly; a write to a cell invalidates the cached masks of that cell and the eight around it, which are the only ones that can depend on it.
+ * Since reading a mask can fill in the cache, a board must not be read from several threads at once, except to copy it.
+ * 
+ * Alongside the hash, every cell write also keeps a bitset of the open cells (those with connections still to make) and a count of the cells that aren't finished yet, so that the search can enumerate open cells without scanning the whole grid and isSolved is a single comparison.
+ * 
+ * With trailing enabled, every cell write is also recorded in an undo log, so a search can take a mark(), apply moves, and then undoTo() the mark to backtrack without copying the board at all.
+ * 
+ * checkReachability is a global check that every unfinished color can still join up and that every open cell can still be reached by some color, which the solver uses to throw out branches that cut a color off without searching them.
  * 
  * There are a large number of special cases and rules that need to be handled when applying moves and updating the board state, done in order to make the largest possible number of inferences from a given move and prune the search space as much as possible.
  * 
@@ -19,54 +33,157 @@ import org.json.JSONTokener;
  * 
  * Potential improvements:
  * - Reduce the size of the Board class by having the width and height be provided by the grid array dimensions instead of storing them separately
- * - Reduce the size of the Board class by not keeping the updatesScheduled queue beyond the point in which it is needed
- * - Similarly, the moves queue
- * - Don't automatically duplicate the Location objects in the copy constructor; instead, create new ones on an as-needed basis
  * - Improve applyMoves to be more efficient when applying multiple moves at once
  * - Reduce the number of separate constructors and unify all the different representations of a board into a single one
  */
 
 public class Board {
+    // Layout of each packed cell:
+    // Bits 0-3: whether there is a connection in each direction; Up, Down, Left, Right, matching the indices of Coordinate.DIRECTIONS
+    // Bit 4: whether the cell is a start or end point
+    // Bit 5: whether the cell has been edited since its connections were last checked
+    // Bits 8-15: the color index plus one, so that zero means the color is unresolved
+    static final int CONNECTIONS_MASK = 0x000F;
+    static final int START_BIT = 0x0010;
+    static final int EDITED_BIT = 0x0020;
+    static final int COLOR_SHIFT = 8;
+    static final int COLOR_MASK = 0xFF00;
+
+    // Color index used for cells whose color hasn't been resolved yet
+    public static final int NO_COLOR = -1;
+    // Largest color index that fits in the packed representation
+    public static final int MAX_COLOR_INDEX = 254;
+
+    // Thrown for every contradiction on a board with diagnostics turned off; it's never filled in, so throwing it costs no more than a jump
+    private static final InvalidMoveException CONTRADICTION = new InvalidMoveException("Contradiction", null, false);
+
     // Dimensions of the board
     private final int width;
     private final int height;
-    private final Location[][] grid;
-    private final PriorityQueue<Move> moves = new PriorityQueue<>((a, b) -> {
-        // Higher score goes first
-        return Integer.compare(b.getScore(), a.getScore());
-    });
 
-    // Scheduled updates and whether each location has been edited
-    public PriorityQueue<Location> updatesScheduled;
+    // The state of every cell, packed into a single primitive and stored in row-major order
+    private final short[] cells;
+
+    // Precomputed neighbor and corner indices for every cell, shared with every other board of the same size
+    private final NeighborTable neighbors;
+
+    // Location views onto the cells, created lazily as the GUI, tests, and solver ask for them
+    private Location[] views;
+
+    // Zobrist hash of the connections and colors of every cell, kept up to date on every cell write
+    private long hash;
+
+    // Bit per cell, set while that cell has connections left to make, and the number of cells that either have connections left to make or have no color; both kept up to date on every cell write
+    private long[] openCells;
+    private int unresolvedCount;
+
+    // Cached mask of the blocked directions of each cell, using the direction indices as bit positions, or BLOCKED_UNKNOWN if it needs working out again
+    private static final byte BLOCKED_UNKNOWN = -1;
+    private final byte[] blockedCache;
+
+    // Scratch space for checkReachability; not copied with the board
+    private int[] regions;
+    private int[] regionMarks;
+    private int regionStamp = 0;
+
+    // Pairs of start cells of the same color, as consecutive entries; the starts never change, so this is worked out once and shared with every copy
+    private int[] startPairs;
+
+    // Undo log of cell writes as (index, previous value) pairs, so the solver can backtrack instead of copying; only recorded while trailing is enabled
+    private boolean trailing = false;
+    private int[] trail;
+    private int trailSize;
+
+    // Whether contradictions are reported with a full InvalidMoveException, rather than the shared CONTRADICTION; not copied with the board
+    private boolean diagnostics = true;
+
+    // Number of cells checked by updateAll over the life of this board, for the solver's metrics; not copied with the board
+    private long propagationSteps = 0;
+
+    // Cells waiting to have their connections checked, in the order they were scheduled
+    public final UpdateQueue updatesScheduled;
 
     /**
-     * @param grid The grid of locations making up this board
+     * @param width The width of the board
+     * @param height The height of the board
+     * @param cells The packed cells making up this board, in row-major order
      */
-    public Board(Location[][] grid) {
-        this.grid = grid;
-        this.width = grid[0].length;
-        this.height = grid.length;
+    private Board(int width, int height, short[] cells) {
+        this.width = width;
+        this.height = height;
+        this.cells = cells;
+        this.neighbors = NeighborTable.forSize(width, height);
+        this.updatesScheduled = new UpdateQueue(width * height);
+        this.blockedCache = new byte[width * height];
+        Arrays.fill(blockedCache, BLOCKED_UNKNOWN);
+    }
 
-        this.updatesScheduled = new PriorityQueue<>(width * height, (a, b) -> {
-            // For now, just say that all locations are equal; the update order doesn't affect the correctness of the result
-            return 0;
-        });
+    /**
+     * @param grid The grid of packed cells making up this board
+     */
+    private Board(short[][] grid) {
+        this(grid[0].length, grid.length, flatten(grid));
+        computeHash();
+        computeOpenCells();
     }
 
     /**
-     * Copy constructor; creates a deep copy of another board
-     * @param other The board to copy
+     * Create a board directly from its packed cells, with every cell scheduled for an update; used by BinaryPuzzleFile, which stores cells rather than text
+     * @param width The width of the board
+     * @param height The height of the board
+     * @param cells The packed cells making up the board, in row-major order; the board takes ownership of the array
+     * @return The new board
      */
-    public Board(Board other) {
-        this(new Location[other.grid.length][other.grid[0].length]);
+    static Board fromCells(int width, int height, short[] cells) {
+        if (width <= 0 || height <= 0 || cells.length != width * height) {
+            throw new IllegalArgumentException("Cells don't match board size " + width + "x" + height);
+        }
+        Board board = new Board(width, height, cells);
+        board.computeHash();
+        board.computeOpenCells();
+        board.scheduleAll();
+        return board;
+    }
 
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                this.grid[i][j] = new Location(other.grid[i][j]);
+    /**
+     * Compute the hash of the whole board from scratch
+     */
+    private void computeHash() {
+        hash = 0;
+        for (int i = 0; i < cells.length; i++) {
+            hash ^= getHashDelta(i, 0, cells[i]);
+        }
+    }
+
+    /**
+     * Compute the open cell bitset and unresolved cell count from scratch
+     */
+    private void computeOpenCells() {
+        openCells = new long[(cells.length + 63) >>> 6];
+        unresolvedCount = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (getCellRemainingConnections(cells[i]) > 0) {
+                openCells[i >>> 6] |= 1L << i;
+            }
+            if (!isCellResolved(cells[i])) {
+                unresolvedCount++;
             }
         }
     }
 
+    /**
+     * Copy constructor; since the whole state lives in one primitive array, this is a single array clone
+     * @param other The board to copy
+     */
+    public Board(Board other) {
+        this(other.width, other.height, other.cells.clone());
+        this.hash = other.hash;
+        this.openCells = other.openCells.clone();
+        this.unresolvedCount = other.unresolvedCount;
+        this.startPairs = other.startPairs;
+        System.arraycopy(other.blockedCache, 0, this.blockedCache, 0, blockedCache.length);
+    }
+
     /**
      * Create a board from an array of strings, where each string represents a row of the board
      * @param contents The array of strings representing the board
@@ -77,21 +194,21 @@ public class Board {
     }
 
     /**
-     * Convert an array of strings into a grid of Location objects
+     * Convert an array of strings into a grid of packed cells
      * @param contents The array of strings representing the board
-     * @return A 2D array of Location objects
+     * @return A 2D array of packed cells
      */
-    private static Location[][] getGridFromString(String[] contents) {
-        Location[][] grid = new Location[contents.length][contents[0].length()];
+    private static short[][] getGridFromString(String[] contents) {
+        short[][] grid = new short[contents.length][contents[0].length()];
 
         for (int row = 0; row < contents.length; row++) {
             for (int col = 0; col < contents[0].length(); col++) {
                 if (contents[row].charAt(col) == '.') {
-                    grid[row][col] = new Location(new Coordinate(row, col), null, false);
+                    grid[row][col] = packCell(NO_COLOR, false);
                 } else {
                     // Convert hex character to integer; index is char value - 'A'
                     int colorIndex = contents[row].charAt(col) - 'A';
-                    grid[row][col] = new Location(new Coordinate(row, col), colorIndex, true);
+                    grid[row][col] = packCell(colorIndex, true);
                 }
             }
         }
@@ -99,57 +216,39 @@ public class Board {
     }
 
     /**
-     * Create a board by reading it from an archive file
-     * @param archivePath The path to the archive file
-     * @param index The index of the board within the archive
+     * Flatten a grid of packed cells into a single row-major array
+     * @param grid The grid of packed cells
+     * @return The same cells in a single array
      */
-    public Board(String archivePath, int index) {
-        this(getStringFromArchive(archivePath, index));
+    private static short[] flatten(short[][] grid) {
+        int width = grid[0].length;
+        short[] cells = new short[grid.length * width];
+        for (int row = 0; row < grid.length; row++) {
+            System.arraycopy(grid[row], 0, cells, row * width, width);
+        }
+        return cells;
     }
 
     /**
-     * Read a board from an archive file
+     * Pack the initial state of a cell into a single value
+     * @param colorIndex The color index of the cell, or NO_COLOR if unresolved
+     * @param isStart Whether the cell is a start or end point
+     * @return The packed cell
+     */
+    static short packCell(int colorIndex, boolean isStart) {
+        if (colorIndex < NO_COLOR || colorIndex > MAX_COLOR_INDEX) {
+            throw new IllegalArgumentException("Color index out of range: " + colorIndex);
+        }
+        return (short) (((colorIndex + 1) << COLOR_SHIFT) | (isStart ? START_BIT : 0));
+    }
+
+    /**
+     * Create a board by reading it from an archive file
      * @param archivePath The path to the archive file
      * @param index The index of the board within the archive
-     * @return An array of strings representing the board, or null if there was an error
-     */
-    private static String[] getStringFromArchive(String archivePath, int index) {
-        // Open a file
-        try (BufferedReader reader = new BufferedReader(new FileReader(archivePath))) {
-            // Read and discard lines until we the start of the right board
-            String line;
-            int currentIndex = 0;
-            while ((line = reader.readLine()) != null) {
-                if (line.length() > 0 && Character.isDigit(line.charAt(0))) {
-                    if (currentIndex == index) {
-                        break; // Found the start of the right board
-                    }
-                    currentIndex++;
-                }
-            }
-
-            // Split line and take the first part as the board size
-            String[] parts = line.split(" ");
-            // int width = Integer.parseInt(parts[0]);
-            int height = Integer.parseInt(parts[1]);
-            String[] contents = new String[height];
-
-            // Read the next 'height' lines as the board contents
-            for (int i = 0; i < height; i++) {
-                if ((line = reader.readLine()) != null) {
-                    contents[i] = line;
-                } else {
-                    System.err.println("Not enough lines in file for board height " + height);
-                    return null;
-                }
-            }
-
-            return contents;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+     */
+    public Board(String archivePath, int index) {
+        this(PuzzleArchive.getShared(archivePath).getRows(index));
     }
 
     /**
@@ -161,74 +260,75 @@ public class Board {
         scheduleAll();
     }
 
+    /**
+     * Create a board from a JSON object in the same format as the JSON files
+     * @param obj The JSON object describing the board
+     */
+    public Board(JSONObject obj) {
+        this(getGridFromJSON(obj));
+        scheduleAll();
+    }
+
     /**
      * Read a board from a JSON file
      * @param filePath The path to the JSON file
-     * @return A 2D array of Location objects representing the board, or null if there was an error
+     * @return A 2D array of packed cells representing the board, or null if there was an error
      */
-    private static Location[][] getGridFromFile(String filePath) {
+    private static short[][] getGridFromFile(String filePath) {
         try (FileReader reader = new FileReader(filePath)) {
-            JSONObject obj = new JSONObject(new JSONTokener(reader));
-            int board_size = obj.getInt("size");    // These are all square
-            Location[][] grid = new Location[board_size][board_size];
-
-            // Initialize the grid with blank locations
-            // It's easiest to do it this way because of how we read the board file
-            for (int i = 0; i < board_size; i++) {
-                for (int j = 0; j < board_size; j++) {
-                    grid[i][j] = null;
-                }
-            }
+            return getGridFromJSON(new JSONObject(new JSONTokener(reader)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            // Populate the grid with Location objects for each of the starting positions
-            JSONObject flows = obj.getJSONObject("flows");
-            for (String key : flows.keySet()) {
-                // Fetch the data for a given color
-                // A "color" consists of an array of four ints, representing the start and end coordinates
-                JSONArray colorObj = flows.getJSONArray(key);
-                int startCol = colorObj.getInt(0);
-                int startRow = colorObj.getInt(1);
-                int endCol = colorObj.getInt(2);
-                int endRow = colorObj.getInt(3);
-
-                if (GUI.colors.getColorIndexByName(key) == null) {
-                    System.err.println("Unknown color: " + key);
-                    continue;
-                }
+    /**
+     * Read a board from a JSON object, which gives the size of the (square) board and the start and end of each color by name
+     * @param obj The JSON object describing the board
+     * @return A 2D array of packed cells representing the board
+     */
+    private static short[][] getGridFromJSON(JSONObject obj) {
+        int board_size = obj.getInt("size");    // These are all square
+        short[][] grid = new short[board_size][board_size];
 
-                // Create Location objects for the start and end points
-                grid[startRow][startCol] = new Location(new Coordinate(startRow, startCol), GUI.colors.getColorIndexByName(key), true);
-                grid[endRow][endCol] = new Location(new Coordinate(endRow, endCol), GUI.colors.getColorIndexByName(key), true);
+        // Initialize the grid with blank locations
+        for (int i = 0; i < board_size; i++) {
+            for (int j = 0; j < board_size; j++) {
+                grid[i][j] = packCell(NO_COLOR, false);
             }
+        }
 
-            // Initialize everything else to be blank
-            for (int i = 0; i < board_size; i++) {
-                for (int j = 0; j < board_size; j++) {
-                    if (grid[i][j] != null) {
-                        // Already did this one
-                    } else {
-                        grid[i][j] = new Location(new Coordinate(i, j), null, false);
-                    }
-                }
+        // Populate the grid with each of the starting positions
+        JSONObject flows = obj.getJSONObject("flows");
+        for (String key : flows.keySet()) {
+            // Fetch the data for a given color
+            // A "color" consists of an array of four ints, representing the start and end coordinates
+            JSONArray colorObj = flows.getJSONArray(key);
+            int startCol = colorObj.getInt(0);
+            int startRow = colorObj.getInt(1);
+            int endCol = colorObj.getInt(2);
+            int endRow = colorObj.getInt(3);
+
+            if (GUI.colors.getColorIndexByName(key) == null) {
+                System.err.println("Unknown color: " + key);
+                continue;
             }
 
-            return grid;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            // Mark the start and end points
+            grid[startRow][startCol] = packCell(GUI.colors.getColorIndexByName(key), true);
+            grid[endRow][endCol] = packCell(GUI.colors.getColorIndexByName(key), true);
         }
+
+        return grid;
     }
 
     /**
      * Schedule all locations for an update
      */
     public void scheduleAll() {
-        for (Location[] row : grid) {
-            for (Location loc : row) {
-                if (loc != null) {
-                    updatesScheduled.add(loc);
-                }
-            }
+        for (int i = 0; i < cells.length; i++) {
+            updatesScheduled.add(i);
         }
     }
 
@@ -239,21 +339,14 @@ public class Board {
     public ArrayList<Move> getMoves() {
         ArrayList<Move> moves = new ArrayList<>();
 
-        for (int i = 0; i < this.height; i++) {
-            for (int j = 0; j < this.width; j++) {
-                Location loc = grid[i][j];
-                if (loc.getRemainingConnections() <= 0) {
+        for (int i = nextOpenCell(0); i != -1; i = nextOpenCell(i + 1)) {
+            int blocked = getBlockedDirections(i);
+            for (int dir = 0; dir < Coordinate.DIRECTIONS.length; dir++) {
+                if ((blocked & (1 << dir)) != 0) {
                     continue;
                 }
 
-                for (Coordinate direction : Coordinate.DIRECTIONS) {
-                    if (loc.isBlockingConnection(direction, this)) {
-                        continue;
-                    }
-
-                    Move move = new Move(loc.getCoordinate(), direction, this);
-                    moves.add(move);
-                }
+                moves.add(new Move(getCoordinate(i), Coordinate.DIRECTIONS[dir], 0));
             }
         }
 
@@ -265,30 +358,67 @@ public class Board {
      * @return A list of all open locations
      */
     public ArrayList<Location> getOpenLocations() {
-        ArrayList<Location> openLocations = new ArrayList<>();
+        ArrayList<Location> openLocations = new ArrayList<>(countOpenCells());
 
-        for (Location[] row : grid) {
-            for (Location loc : row) {
-                if (loc.getRemainingConnections() > 0) {
-                    openLocations.add(loc);
-                }
-            }
+        for (int i = nextOpenCell(0); i != -1; i = nextOpenCell(i + 1)) {
+            openLocations.add(getLocation(i));
         }
         return openLocations;
     }
 
+    /**
+     * Find the next open cell (one with at least one remaining connection), in row-major order
+     * @param from Index of the first cell to consider
+     * @return Index of the first open cell at or after from, or -1 if there are none
+     */
+    int nextOpenCell(int from) {
+        int word = from >>> 6;
+        if (word >= openCells.length) {
+            return -1;
+        }
+
+        long bits = openCells[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == openCells.length) {
+                return -1;
+            }
+            bits = openCells[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Count the open cells (ones with at least one remaining connection)
+     * @return The number of open cells
+     */
+    public int countOpenCells() {
+        int count = 0;
+        for (long bits : openCells) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Count the unresolved cells (ones with connections left to make or no color yet); the board is solved once there are none
+     * @return The number of unresolved cells
+     */
+    public int countUnresolvedCells() {
+        return unresolvedCount;
+    }
+
     /**
      * Apply a move to the board, updating the relevant locations and scheduling updates as necessary
      * @param move The move to apply
      * @throws InvalidMoveException If the move produces an invalid board state
      */
     public void applyMove(Move move) throws InvalidMoveException {
-        Location start = getLocation(move.getStart());
-        Coordinate direction = move.getDirection();
-        Location other = getLocation(move.getStart().add(direction));
+        int start = getIndex(move.getStart());
+        int direction = Coordinate.toIndex(move.getDirection());
+        int other = getNeighbor(start, direction);
 
-        start.connectTo(direction, other, this);
-        start.setEdited(true);      // Necessary because it hasn't been through checkConnections yet
+        connect(start, direction, other);
+        setEdited(start, true);     // Necessary because it hasn't been through checkConnections yet
         updatesScheduled.add(start);
         updatesScheduled.add(other);
         updateAll();
@@ -306,11 +436,18 @@ public class Board {
     }
 
     /**
-     * Update the moves queue with all possible moves from the current board state
+     * Apply a series of moves to the board, reporting a contradiction as a return value rather than an exception
+     * On a board with diagnostics turned off, a contradiction allocates nothing, so this is what the search uses to try out moves
+     * @param moves The moves to apply
+     * @return True if every move was applied, false if one of them produced an invalid board state
      */
-    public void updateMoves() {
-        moves.clear();
-        moves.addAll(getMoves());
+    public boolean tryApplyMoves(Move[] moves) {
+        try {
+            applyMoves(moves);
+            return true;
+        } catch (InvalidMoveException e) {
+            return false;
+        }
     }
 
     /**
@@ -318,10 +455,758 @@ public class Board {
      * @throws InvalidMoveException If any of the updates produce an invalid board state
      */
     public void updateAll() throws InvalidMoveException {
-        Location loc;
-        while ((loc = updatesScheduled.poll()) != null) {
-            loc.checkConnections(this);
+        // The update order doesn't affect the result, so this just works through the queue first-in first-out
+        int index;
+        while ((index = updatesScheduled.poll()) != -1) {
+            propagationSteps++;
+            checkConnections(index);
+        }
+    }
+
+    /**
+     * Check that the board can still be completed as far as connectivity goes: both ends of every color are still in the same region, and every open cell is in a region with a colored cell that still has connections to make.
+     * Regions are found with a union-find over the cells, joining neighbors that are already connected or that could still connect. Nothing that can't connect now ever can later, since connections, colors and full cells only ever accumulate, so a failure here means there's no way to finish the board.
+     * This looks at every cell, so it costs a few times as much as applying a move; it's meant to be run once per search node rather than after every update.
+     * @throws InvalidMoveException If a color is cut off from its other end, or a region of open cells can't be reached by any color
+     */
+    public void checkReachability() throws InvalidMoveException {
+        if (regions == null) {
+            regions = new int[cells.length];
+            regionMarks = new int[cells.length];
+        }
+        for (int i = 0; i < cells.length; i++) {
+            regions[i] = i;
+        }
+
+        // Join each cell with the cells below and to the right of it, if they're connected or could be
+        for (int i = 0; i < cells.length; i++) {
+            boolean open = getRemainingConnections(i) > 0;
+            for (int dir = 1; dir < 4; dir += 2) {
+                int other = getNeighbor(i, dir);
+                if (other == -1) {
+                    continue;
+                }
+                if (hasConnection(i, dir) || (open && getRemainingConnections(other) > 0 && canShareColor(i, other))) {
+                    joinRegions(i, other);
+                }
+            }
+        }
+
+        // Both ends of each color have to be able to meet
+        int[] pairs = getStartPairs();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (findRegion(pairs[i]) != findRegion(pairs[i + 1])) {
+                throw contradiction("Color cut off", pairs[i]);
+            }
+        }
+
+        // Every open cell has to be in a region some color can still extend into
+        if (++regionStamp == 0) {
+            Arrays.fill(regionMarks, 0);
+            regionStamp = 1;
+        }
+        for (int i = nextOpenCell(0); i != -1; i = nextOpenCell(i + 1)) {
+            if (getColor(i) != NO_COLOR) {
+                regionMarks[findRegion(i)] = regionStamp;
+            }
+        }
+        for (int i = nextOpenCell(0); i != -1; i = nextOpenCell(i + 1)) {
+            if (regionMarks[findRegion(i)] != regionStamp) {
+                throw contradiction("Unreachable region", i);
+            }
+        }
+    }
+
+    /**
+     * Check that the board can still be completed as far as connectivity goes, reporting a failure as a return value rather than an exception; see checkReachability
+     * @return True if the board can still be completed, false if a color is cut off or a region can't be reached
+     */
+    public boolean tryCheckReachability() {
+        try {
+            checkReachability();
+            return true;
+        } catch (InvalidMoveException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the exception to throw for a contradiction found at a cell
+     * @param message What was wrong
+     * @param index Index of the cell it was found at
+     * @return A new exception describing it, or the shared CONTRADICTION if diagnostics are turned off
+     */
+    private InvalidMoveException contradiction(String message, int index) {
+        return diagnostics ? new InvalidMoveException(message, getLocation(index)) : CONTRADICTION;
+    }
+
+    /**
+     * Check whether two cells could end up the same color
+     * @param a Index of one cell
+     * @param b Index of the other cell
+     * @return True unless both cells have a color and they're different
+     */
+    private boolean canShareColor(int a, int b) {
+        int colorA = getColor(a);
+        int colorB = getColor(b);
+        return colorA == NO_COLOR || colorB == NO_COLOR || colorA == colorB;
+    }
+
+    /**
+     * Find the representative cell of a cell's region for checkReachability, halving the path as it goes
+     * @param index Index of the cell
+     * @return Index of the representative cell
+     */
+    private int findRegion(int index) {
+        while (regions[index] != index) {
+            regions[index] = regions[regions[index]];
+            index = regions[index];
+        }
+        return index;
+    }
+
+    /**
+     * Merge the regions of two cells for checkReachability
+     * @param a Index of one cell
+     * @param b Index of the other cell
+     */
+    private void joinRegions(int a, int b) {
+        int rootA = findRegion(a);
+        int rootB = findRegion(b);
+        if (rootA != rootB) {
+            regions[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * Get the start cells of each color, paired up, working them out the first time they're asked for
+     * @return Pairs of start cells of the same color, as consecutive entries; colors without exactly two starts are left out
+     */
+    private int[] getStartPairs() {
+        if (startPairs == null) {
+            int[] firstStart = new int[MAX_COLOR_INDEX + 1];
+            int[] startCounts = new int[MAX_COLOR_INDEX + 1];
+            int[] pairs = new int[cells.length];
+            int pairCount = 0;
+            for (int i = 0; i < cells.length; i++) {
+                int color = getColor(i);
+                if (!isStart(i) || color == NO_COLOR) {
+                    continue;
+                }
+                if (startCounts[color]++ == 0) {
+                    firstStart[color] = i;
+                } else if (startCounts[color] == 2) {
+                    pairs[pairCount++] = firstStart[color];
+                    pairs[pairCount++] = i;
+                }
+            }
+            // A color with more than two starts can't be checked this way; drop its pair again
+            int kept = 0;
+            for (int i = 0; i < pairCount; i += 2) {
+                if (startCounts[getColor(pairs[i])] == 2) {
+                    pairs[kept++] = pairs[i];
+                    pairs[kept++] = pairs[i + 1];
+                }
+            }
+            startPairs = Arrays.copyOf(pairs, kept);
+        }
+        return startPairs;
+    }
+
+    /**
+     * Get the number of cells updateAll has checked on this board since it was created; copies of the board start again from zero
+     * @return The number of propagation steps
+     */
+    public long getPropagationSteps() {
+        return propagationSteps;
+    }
+
+    // The connection logic below is how the board fills itself in between moves. Every start cell needs one connection and every other cell needs two, and connections and colors only ever get added.
+    // - connect makes a connection in both cells and runs updateColor, which floods a color along the connected path into any uncolored cells and throws if two colors meet.
+    // - Anything that changes a cell in a way that could force a neighbor registers it with registerUpdate, and updateAll then runs checkConnections on each scheduled cell until nothing is left.
+    // - checkConnections compares a cell's remaining connections with its open directions, meaning the ones getBlockedDirections doesn't rule out. Equal means every open direction is forced, and fewer means the board is contradictory. Otherwise the only forced connection is to an open neighbor of the same color.
+    // - After a change, checkConnections schedules all four neighbors, since what this cell now blocks may leave them with fewer choices.
+    // The blocked directions of each cell are cached, and invalidateBlocked clears the cached entries around each cell that's written.
+
+    /**
+     * Connect a cell to its neighbor in the given direction; mark the "edited" flag as appropriate and resolve the color propagation
+     * @param index Index of the cell to connect from
+     * @param direction Index of the direction to connect in
+     * @param other Index of the cell to connect to; must be adjacent in the given direction
+     * @throws InvalidMoveException if the connection would cause a conflict (e.g. color mismatch)
+     */
+    void connect(int index, int direction, int other) throws InvalidMoveException {
+        setCell(index, cells[index] | (1 << direction));
+        setCell(other, cells[other] | (1 << Coordinate.getOppositeIndex(direction)) | EDITED_BIT);
+        if (getColor(index) != getColor(other)) {
+            updateColor(other);
+        }
+    }
+
+    /**
+     * Propagate color information through connected cells; if this cell is uncolored, it will take the color of a connected cell
+     * @param index Index of the cell to propagate from
+     * @throws InvalidMoveException if a color conflict is detected (e.g. two connected cells have different colors)
+     */
+    void updateColor(int index) throws InvalidMoveException {
+
+        // Check each connected direction
+        for (int dir = 0; dir < 4; dir++) {
+            if (!hasConnection(index, dir)) {
+                continue;
+            }
+
+            int other = getNeighbor(index, dir);
+            int color = getColor(index);
+            int otherColor = getColor(other);
+
+            if (color == NO_COLOR && otherColor != NO_COLOR) {
+                // Take the color of the connected cell
+                setColor(index, otherColor);
+
+                // Check again in case there's another cell that can propagate the color further but that was already checked
+                updateColor(index);
+
+                // There's an edge case where this forces a new connection, if there's only one possible candidate to connect to with a matching color
+                if (getRemainingConnections(index) > 0) {
+                    setEdited(index, true);
+                    registerUpdate(index);
+                }
+            } else if (color != NO_COLOR && otherColor == NO_COLOR) {
+                // Propagate this cell's color to the connected cell
+                setColor(other, color);
+
+                // Propagate the color updates through the neighbor to its neighbors, etc
+                updateColor(other);
+
+                // Similarly, this might force a new connection as well
+                if (getRemainingConnections(other) > 0) {
+                    setEdited(other, true);
+                    registerUpdate(other);
+                }
+            } else if (color != NO_COLOR && otherColor != NO_COLOR && color != otherColor) {
+                // It's an error if two connected cells have different colors
+                throw contradiction("Color conflict", index);
+            }
+        }
+    }
+
+    /**
+     * Check the connections for a cell, making any that are known to be correct, and flagging connection checks as necessary
+     * @param index Index of the cell to check
+     * @throws InvalidMoveException If an invalid move is detected
+     */
+    void checkConnections(int index) throws InvalidMoveException {
+
+        int remainingConnections = getRemainingConnections(index);
+        if (remainingConnections == 0) {
+            // Can't connect to anything else; exit early
+            return;
+        }
+
+        // Get a mask of directions that cannot be connected to
+        int blockedDirections = getBlockedDirections(index);
+        int openDirections = 4 - Integer.bitCount(blockedDirections);
+
+        // Flag for whether another cell was edited as a result of this check
+        boolean editedOther = false;
+
+        if (openDirections == remainingConnections) {
+            // If this cell has to make exactly as many connections as there are open options, we know it has to connect to all of them
+
+            for (int dir = 0; dir < 4; dir++) {
+                if ((blockedDirections & (1 << dir)) == 0) {
+                    connect(index, dir, getNeighbor(index, dir));
+                    editedOther = true;
+                }
+            }
+        } else if (openDirections > remainingConnections) {
+            // Even if this cell has more options than connections to make, it can still be proved that it has to connect to another of the same color, which can only be the "loose end" of a path coming from the other start location of that color
+
+            for (int dir = 0; dir < 4; dir++) {
+                if ((blockedDirections & (1 << dir)) == 0 && !hasConnection(index, dir)) {
+                    int other = getNeighbor(index, dir);
+                    if (getColor(index) == getColor(other) && getColor(index) != NO_COLOR) {
+                        connect(index, dir, other);
+                        editedOther = true;
+                        break; // There can only ever be one of these
+                    }
+                }
+            }
+        } else {
+            // Fewer options left than connections that need to be made; implies an invalid move or an improperly-formatted board
+            throw contradiction("Overconstrained location", index);
+        }
+
+        // Propagate updates to neighbors if any new connections were made
+        if (isEdited(index) || editedOther) {
+            // We have to check all the directions because a new connection here might make it invalid for a neighbor to connect here, which might force that neighbor to connect somewhere else
+            for (int dir = 0; dir < 4; dir++) {
+                int neighbor = getNeighbor(index, dir);
+                if (neighbor != -1) {
+                    registerUpdate(neighbor);
+                }
+            }
+        }
+
+        setEdited(index, false); // Reset the edited flag
+    }
+
+    /**
+     * Count the number of valid move combinations from a cell
+     * @param index Index of the cell
+     * @return If the cell has X valid directions to connect to and Y remaining connections, returns X choose Y
+     */
+    int countMoveCombinations(int index) {
+        int validDirs = 4 - Integer.bitCount(getBlockedDirections(index));
+        int remainingConnections = getRemainingConnections(index);
+
+        // Calculate the combinations up to 2; that's all that's ever possible under the current setup
+        if (remainingConnections == 1) {
+            return validDirs;
+        } else if (remainingConnections == 2) {
+            // Combinations of 2 from validDirs
+            return validDirs * (validDirs - 1) / 2;
+        } else {
+            // Something has gone wrong
+            System.err.println("Unexpected number of remaining connections");
+            return 99999;
+        }
+    }
+
+    /**
+     * Check if a connection from a cell in the given direction would be blocked for any reason; out of bounds, already connected, color mismatch, other cell full, or would create a U-turn
+     * @param index Index of the cell
+     * @param direction Index of the direction to check
+     * @return True if the connection is blocked, false otherwise
+     */
+    boolean isBlockingConnection(int index, int direction) {
+        return (getBlockedDirections(index) & (1 << direction)) != 0;
+    }
+
+    /**
+     * Get the directions a cell is blocked from connecting in, for any of the reasons in isBlockingConnection
+     * @param index Index of the cell
+     * @return A mask of the blocked directions, using the direction indices as bit positions
+     */
+    int getBlockedDirections(int index) {
+        int blocked = blockedCache[index];
+        if (blocked == BLOCKED_UNKNOWN) {
+            blocked = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                if (computeBlocking(index, dir)) {
+                    blocked |= 1 << dir;
+                }
+            }
+            blockedCache[index] = (byte) blocked;
+        }
+        return blocked;
+    }
+
+    /**
+     * Work out whether a connection is blocked, without the cache; see isBlockingConnection
+     * @param index Index of the cell
+     * @param direction Index of the direction to check
+     * @return True if the connection is blocked, false otherwise
+     */
+    private boolean computeBlocking(int index, int direction) {
+
+        if (hasConnection(index, direction)) {
+            // Blocked because already connected
+            return true;
+        }
+
+        int other = getNeighbor(index, direction);
+        if (other == -1) {
+            // Blocked because out of bounds
+            return true;
+        }
+
+        int color = getColor(index);
+        int otherColor = getColor(other);
+        if (color != NO_COLOR && otherColor != NO_COLOR && color != otherColor) {
+            // Blocked because different colors
+            return true;
+        }
+
+        if (getRemainingConnections(other) <= 0) {
+            // Blocked because other cell is already full
+            return true;
+        }
+
+        if (isUTurn(index, direction, other)) {
+            // Blocked because this would make a U-turn
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if connecting a cell to another in the given direction would create a U-turn, either by forming a U-shaped connection or a 2x2 square of the same color
+     * @param index Index of the cell
+     * @param direction Index of the direction to check
+     * @param other Index of the cell being connected to
+     * @return True if the connection would create a U-turn, false otherwise
+     */
+    boolean isUTurn(int index, int direction, int other) {
+        return isUTurn(index, direction, other, Coordinate.leftTurnIndex(direction), neighbors.getLeftCorner(index, direction))
+            || isUTurn(index, direction, other, Coordinate.rightTurnIndex(direction), neighbors.getRightCorner(index, direction));
+    }
+
+    /**
+     * Check for a U-turn on one side of a connection; see isUTurn(int, int, int)
+     * @param index Index of the cell
+     * @param direction Index of the direction to check
+     * @param other Index of the cell being connected to
+     * @param side Index of the direction, perpendicular to the connection, in which to look for the U-turn
+     * @param corner Index of the cell diagonally across the connection on that side, or -1 if it's off the board
+     * @return True if the connection would create a U-turn on the given side, false otherwise
+     */
+    private boolean isUTurn(int index, int direction, int other, int side, int corner) {
+        if (corner == -1) {
+            // If the corner is on the board, so is the neighbor between it and this cell
+            return false;
+        }
+        int neighbor = neighbors.getNeighbor(index, side);
+
+        // Check for a U-shaped connection of any color
+        if (hasConnection(index, side) && (hasConnection(neighbor, direction) || hasConnection(other, side))) {
+            return true;
+        } else if (hasConnection(other, side) && hasConnection(neighbor, direction)) {
+            return true;
+        }
+
+        // Check for a 2x2 square of the same color, regardless of connections
+        int color = getColor(index);
+        return color != NO_COLOR && color == getColor(other) && color == getColor(neighbor) && color == getColor(corner);
+    }
+
+    /**
+     * Add a cell to the update queue, if it isn't already there
+     * @param index Index of the cell
+     */
+    private void registerUpdate(int index) {
+        updatesScheduled.add(index);
+    }
+
+    /**
+     * Get the index of the neighbor of a cell in the given direction
+     * @param index Index of the cell
+     * @param direction Index of the direction
+     * @return The index of the neighbor, or -1 if it would be out of bounds
+     */
+    int getNeighbor(int index, int direction) {
+        return neighbors.getNeighbor(index, direction);
+    }
+
+    /**
+     * Get the index of the cell diagonally across a connection on its left-turn side; the left-turn corners of the four directions are the four diagonals of a cell
+     * @param index Index of the cell
+     * @param direction Index of the direction of the connection
+     * @return The index of the corner cell, or -1 if it would be out of bounds
+     */
+    int getLeftCorner(int index, int direction) {
+        return neighbors.getLeftCorner(index, direction);
+    }
+
+    /**
+     * Write the packed state of a cell; every change to the board goes through here
+     * @param index Index of the cell
+     * @param cell The new packed state
+     */
+    private void setCell(int index, int cell) {
+        if (cells[index] == (short) cell) {
+            return;
+        }
+
+        if (trailing) {
+            if (trailSize + 2 > trail.length) {
+                trail = Arrays.copyOf(trail, trail.length * 2);
+            }
+            trail[trailSize++] = index;
+            trail[trailSize++] = cells[index];
+        }
+        hash ^= getHashDelta(index, cells[index], cell);
+        updateOpenCells(index, cells[index], cell);
+        invalidateBlocked(index, cells[index], cell);
+        cells[index] = (short) cell;
+    }
+
+    /**
+     * Throw away the cached blocked directions that might depend on a cell, if the change to it could affect them
+     * Blocking only looks at the connections and colors of a cell's neighbors and diagonal corners, so a change can only affect the cell itself and the eight around it
+     * @param index Index of the cell
+     * @param before The packed state of the cell before the change
+     * @param after The packed state of the cell after the change
+     */
+    private void invalidateBlocked(int index, int before, int after) {
+        if (((before ^ after) & (CONNECTIONS_MASK | COLOR_MASK)) == 0) {
+            return;
+        }
+
+        blockedCache[index] = BLOCKED_UNKNOWN;
+        for (int dir = 0; dir < 4; dir++) {
+            int neighbor = neighbors.getNeighbor(index, dir);
+            if (neighbor != -1) {
+                blockedCache[neighbor] = BLOCKED_UNKNOWN;
+            }
+            // The left-turn corners of the four directions are the four diagonals
+            int corner = neighbors.getLeftCorner(index, dir);
+            if (corner != -1) {
+                blockedCache[corner] = BLOCKED_UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Bring the open cell bitset and unresolved cell count up to date when a cell changes from one state to another
+     * @param index Index of the cell
+     * @param before The packed state of the cell before the change
+     * @param after The packed state of the cell after the change
+     */
+    private void updateOpenCells(int index, int before, int after) {
+        boolean wasOpen = getCellRemainingConnections(before) > 0;
+        boolean isOpen = getCellRemainingConnections(after) > 0;
+        if (wasOpen != isOpen) {
+            openCells[index >>> 6] ^= 1L << index;
+        }
+        unresolvedCount += (isCellResolved(after) ? 0 : 1) - (isCellResolved(before) ? 0 : 1);
+    }
+
+    /**
+     * Check whether a packed cell is finished; no connections left to make and a color assigned
+     * @param cell The packed cell
+     * @return True if the cell is finished
+     */
+    private static boolean isCellResolved(int cell) {
+        return getCellRemainingConnections(cell) == 0 && (cell & COLOR_MASK) != 0;
+    }
+
+    /**
+     * Get the number of remaining connections of a packed cell; see getRemainingConnections(int)
+     * @param cell The packed cell
+     * @return The number of remaining connections
+     */
+    private static int getCellRemainingConnections(int cell) {
+        return ((cell & START_BIT) != 0 ? 1 : 2) - Integer.bitCount(cell & CONNECTIONS_MASK);
+    }
+
+    /**
+     * Get the value to XOR into the Zobrist hash when a cell changes from one state to another
+     * Each connection of a cell and its color are hashed as separate features, so only the ones that actually changed need to be touched; the start and edited flags aren't part of the hash
+     * @param index Index of the cell
+     * @param before The packed state of the cell before the change
+     * @param after The packed state of the cell after the change
+     * @return The change to the hash
+     */
+    private static long getHashDelta(int index, int before, int after) {
+        long delta = 0;
+
+        int changedConnections = (before ^ after) & CONNECTIONS_MASK;
+        while (changedConnections != 0) {
+            int dir = Integer.numberOfTrailingZeros(changedConnections);
+            delta ^= getFeatureKey(index, dir);
+            changedConnections &= changedConnections - 1;
+        }
+
+        int colorBefore = (before & COLOR_MASK) >>> COLOR_SHIFT;
+        int colorAfter = (after & COLOR_MASK) >>> COLOR_SHIFT;
+        if (colorBefore != colorAfter) {
+            // Color zero is unresolved and doesn't contribute to the hash
+            if (colorBefore != 0) {
+                delta ^= getFeatureKey(index, 4 + colorBefore);
+            }
+            if (colorAfter != 0) {
+                delta ^= getFeatureKey(index, 4 + colorAfter);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Get the Zobrist key for a single feature of a cell; features 0-3 are the connections and the rest are the packed colors
+     * The keys are generated on the fly by the SplitMix64 finalizer rather than stored in a table, so they're the same for every board and every run
+     * @param index Index of the cell
+     * @param feature The feature of the cell
+     * @return The key for that feature
+     */
+    private static long getFeatureKey(int index, int feature) {
+        long z = (((long) index << 9) | feature) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get the Zobrist hash of the connections and colors of every cell on the board
+     * Boards in the same state always have the same hash, however they got there
+     * @return The hash of the board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Turn the undo log on or off; turning it off discards anything recorded so far
+     * @param trailing Whether cell writes should be recorded
+     */
+    public void setTrailing(boolean trailing) {
+        this.trailing = trailing;
+        this.trailSize = 0;
+        this.trail = trailing ? new int[256] : null;
+    }
+
+    /**
+     * Turn detailed reports of contradictions on or off
+     * With them off, every contradiction throws the same preallocated InvalidMoveException, with no stack trace and no location; that's all the search needs to know, and it's the most common outcome of trying a move
+     * @param diagnostics Whether contradictions should be reported with a message, location and stack trace
+     */
+    public void setDiagnostics(boolean diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Check whether cell writes are currently being recorded in the undo log
+     * @return True if trailing is enabled
+     */
+    public boolean isTrailing() {
+        return trailing;
+    }
+
+    /**
+     * Get a mark for the current state of the board, which can later be passed to undoTo to get back here
+     * @return The current position in the undo log
+     */
+    public int mark() {
+        if (!trailing) {
+            throw new IllegalStateException("Trailing is not enabled on this board");
         }
+        return trailSize;
+    }
+
+    /**
+     * Restore the board to the state it was in when the given mark was taken, undoing every cell write since then
+     * Any pending updates are dropped as well, since they may be left over from a move that threw partway through propagation
+     * @param mark A mark previously returned by mark()
+     */
+    public void undoTo(int mark) {
+        if (!trailing || mark > trailSize) {
+            throw new IllegalStateException("Invalid mark: " + mark);
+        }
+
+        while (trailSize > mark) {
+            short previous = (short) trail[--trailSize];
+            int index = trail[--trailSize];
+            hash ^= getHashDelta(index, cells[index], previous);
+            updateOpenCells(index, cells[index], previous);
+            invalidateBlocked(index, cells[index], previous);
+            cells[index] = previous;
+        }
+        updatesScheduled.clear();
+    }
+
+    /**
+     * Check whether a cell is connected in the given direction
+     * @param index Index of the cell
+     * @param direction Index of the direction
+     * @return True if connected in that direction
+     */
+    boolean hasConnection(int index, int direction) {
+        return (cells[index] & (1 << direction)) != 0;
+    }
+
+    /**
+     * Get the connections of a cell as a bitmask, using the direction indices as bit positions
+     * @param index Index of the cell
+     * @return The connection bitmask
+     */
+    int getConnectionMask(int index) {
+        return cells[index] & CONNECTIONS_MASK;
+    }
+
+    /**
+     * Get the color index of a cell
+     * @param index Index of the cell
+     * @return The color index, or NO_COLOR if unresolved
+     */
+    int getColor(int index) {
+        return ((cells[index] & COLOR_MASK) >>> COLOR_SHIFT) - 1;
+    }
+
+    /**
+     * Set the color index of a cell
+     * @param index Index of the cell
+     * @param colorIndex The new color index, or NO_COLOR to unresolve it
+     */
+    void setColor(int index, int colorIndex) {
+        if (colorIndex < NO_COLOR || colorIndex > MAX_COLOR_INDEX) {
+            throw new IllegalArgumentException("Color index out of range: " + colorIndex);
+        }
+        setCell(index, (cells[index] & ~COLOR_MASK) | ((colorIndex + 1) << COLOR_SHIFT));
+    }
+
+    /**
+     * Check whether a cell is a start or end point
+     * @param index Index of the cell
+     * @return True if the cell is a start or end point
+     */
+    boolean isStart(int index) {
+        return (cells[index] & START_BIT) != 0;
+    }
+
+    /**
+     * Check whether a cell has been edited since its connections were last checked
+     * @param index Index of the cell
+     * @return True if the cell has been edited
+     */
+    boolean isEdited(int index) {
+        return (cells[index] & EDITED_BIT) != 0;
+    }
+
+    /**
+     * Set or clear the edited flag of a cell
+     * @param index Index of the cell
+     * @param edited The new value of the flag
+     */
+    void setEdited(int index, boolean edited) {
+        setCell(index, edited ? cells[index] | EDITED_BIT : cells[index] & ~EDITED_BIT);
+    }
+
+    /**
+     * Count the current number of connections a cell has
+     * @param index Index of the cell
+     * @return The number of connections
+     */
+    int countConnections(int index) {
+        return Integer.bitCount(cells[index] & CONNECTIONS_MASK);
+    }
+
+    /**
+     * Get the number of remaining connections a cell must make; start and end points make one, everything else makes two
+     * @param index Index of the cell
+     * @return The number of remaining connections
+     */
+    int getRemainingConnections(int index) {
+        return (isStart(index) ? 1 : 2) - countConnections(index);
+    }
+
+    /**
+     * Get the index of the cell at a specific coordinate
+     * @param coordinate The coordinate of the cell
+     * @return The row-major index of the cell
+     */
+    int getIndex(Coordinate coordinate) {
+        return coordinate.getRow() * width + coordinate.getCol();
+    }
+
+    /**
+     * Get the coordinate of a cell
+     * @param index Index of the cell
+     * @return The coordinate of the cell
+     */
+    Coordinate getCoordinate(int index) {
+        return neighbors.getCoordinate(index);
     }
 
     /**
@@ -331,7 +1216,7 @@ public class Board {
      * @return The location at the specified row and column
      */
     public Location getLocation(int row, int col) {
-        return grid[row][col];
+        return getLocation(row * width + col);
     }
 
     /**
@@ -340,23 +1225,38 @@ public class Board {
      * @return The location at the specified coordinate
      */
     public Location getLocation(Coordinate coordinate) {
-        return grid[coordinate.getRow()][coordinate.getCol()];
+        return getLocation(getIndex(coordinate));
     }
 
     /**
-     * Get the grid of locations making up this board
-     * @return The grid of locations
+     * Get the location view of a cell, creating it if this is the first time it's been asked for
+     * @param index Index of the cell
+     * @return The location at the specified index
      */
-    public Location[][] getGrid() {
-        return grid;
+    Location getLocation(int index) {
+        if (views == null) {
+            views = new Location[cells.length];
+        }
+        Location view = views[index];
+        if (view == null) {
+            view = new Location(this, index);
+            views[index] = view;
+        }
+        return view;
     }
 
     /**
-     * Get the moves priority queue
-     * @return The moves priority queue
+     * Get the grid of locations making up this board
+     * @return The grid of locations
      */
-    public PriorityQueue<Move> getMovesQueue() {
-        return moves;
+    public Location[][] getGrid() {
+        Location[][] grid = new Location[height][width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                grid[row][col] = getLocation(row, col);
+            }
+        }
+        return grid;
     }
 
     /**
@@ -380,14 +1280,7 @@ public class Board {
      * @return True if the board is solved, false otherwise
      */
     public boolean isSolved() {
-        for (Location[] row : grid) {
-            for (Location loc : row) {
-                if (loc.getRemainingConnections() != 0 || loc.getColorIndex() == null) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return unresolvedCount == 0;
     }
 
     /**
@@ -399,12 +1292,57 @@ public class Board {
         boolean[][] diff = new boolean[height][width];
         for (int row = 0; row < height; row++) {
             for (int col = 0; col < width; col++) {
-                diff[row][col] = grid[row][col].getDiff(other.grid[row][col]);
+                diff[row][col] = isDifferent(row * width + col, other);
             }
         }
         return diff;
     }
 
+    /**
+     * Check if a cell has connections or color different from the same cell on another board; used for rendering changes between subsequent boards
+     * @param index Index of the cell
+     * @param other The board to compare to
+     * @return True if the cells differ, false otherwise
+     */
+    boolean isDifferent(int index, Board other) {
+        return ((cells[index] ^ other.cells[index]) & (CONNECTIONS_MASK | COLOR_MASK)) != 0;
+    }
+
+    /**
+     * Get a copy of the packed cells making up the board, which fromCells can turn back into the same board
+     * @return The cells, in row-major order
+     */
+    short[] copyCells() {
+        return cells.clone();
+    }
+
+    /**
+     * Check if every cell of this board, down to the bookkeeping flags, matches the same cell on another board
+     * @param other The board to compare to
+     * @return True if the boards' cells are identical, false otherwise
+     */
+    boolean hasSameCells(Board other) {
+        return Arrays.equals(cells, other.cells);
+    }
+
+    /**
+     * Get the colors of the board in the same row format the String[] constructor reads, with each colored cell as its color's letter and each empty cell as '.'
+     * The paths themselves aren't included; on a solved board every cell is colored, which is enough to trace them
+     * @return One string per row of the board
+     */
+    public String[] toRows() {
+        String[] rows = new String[height];
+        for (int row = 0; row < height; row++) {
+            StringBuilder sb = new StringBuilder(width);
+            for (int col = 0; col < width; col++) {
+                int color = getColor(row * width + col);
+                sb.append(color == NO_COLOR ? '.' : (char) ('A' + color));
+            }
+            rows[row] = sb.toString();
+        }
+        return rows;
+    }
+
     /**
      * Get a simple string representation of the board for debugging purposes
      * @return A string representation of the board
@@ -416,29 +1354,26 @@ public class Board {
             sb.append(i%10 + " ");
         }
         sb.append("\n\n");
-        for (Location[] row : grid) {
+        for (int row = 0; row < height; row++) {
             boolean[] vertConnections = new boolean[this.width];
-            sb.append(row[0].getCoordinate().getRow()%10 + "| ");
-            for (Location loc : row) {
-                if (loc.getColorIndex() == null) {
+            sb.append(row%10 + "| ");
+            for (int col = 0; col < width; col++) {
+                int index = row * width + col;
+                if (getColor(index) == NO_COLOR) {
                     sb.append(".");
                 } else {
-                    sb.append((char) ('A' + loc.getColorIndex()));
+                    sb.append((char) ('A' + getColor(index)));
                 }
 
-                if (loc.getConnections()[3]) {
+                if (hasConnection(index, 3)) {
                     sb.append("-");
                 } else {
                     sb.append(" ");
                 }
 
-                if (loc.getConnections()[1]) {
-                    vertConnections[loc.getCoordinate().getCol()] = true;
-                } else {
-                    vertConnections[loc.getCoordinate().getCol()] = false;
-                }
+                vertConnections[col] = hasConnection(index, 1);
             }
-            sb.append("|" + row[0].getCoordinate().getRow());
+            sb.append("|" + row);
             sb.append("\n   ");
             for (boolean connected : vertConnections) {
                 sb.append(connected ? "| " : "  ");
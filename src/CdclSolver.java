@@ -0,0 +1,539 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A small conflict-driven clause learning (CDCL) SAT solver, used by SatSolver to solve the CNF encoding of a board.
+ * It's the textbook design cut down to what the board encodings need: two watched literals per clause for propagation, first-UIP conflict analysis, VSIDS variable activity kept in a binary heap, phase saving, and Luby restarts.
+ * Learnt clauses are never thrown away, which is fine for the few thousand conflicts a board typically takes.
+ *
+ * Variables are numbered from 1, and literals are given in DIMACS form: v for the variable being true, -v for it being false.
+ * Internally, a literal is 2v for true and 2v+1 for false, so a literal and its negation differ only in the lowest bit.
+ *
+ * Clauses can be added between calls to solve, so a caller can rule out a model it didn't like and ask again.
+ */
+
+class CdclSolver {
+    // Conflicts between restarts, before scaling by the Luby sequence
+    private static final int RESTART_BASE = 100;
+
+    // How much the activity increment grows by after each conflict, which decays every older bump relative to it
+    private static final double ACTIVITY_DECAY = 0.95;
+
+    // Conflicts between checks of the cancellation flag
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private int variableCount = 0;
+
+    // Every clause, original and learnt; each one's first two literals are the watched ones
+    private final ArrayList<int[]> clauses = new ArrayList<>();
+
+    // For each literal, the clauses watching its negation, so they're visited when it becomes true
+    private int[][] watches = new int[2][];
+    private int[] watchCounts = new int[2];
+
+    // Per variable: the value (0 unassigned, 1 true, -1 false), the decision level it was assigned at, the clause that implied it or -1, and the last value it had
+    private byte[] values = new byte[1];
+    private int[] levels = new int[1];
+    private int[] reasons = new int[1];
+    private boolean[] phases = new boolean[1];
+
+    // Assigned literals in order, the trail position each decision level starts at, and how far propagation has got through the trail
+    private int[] trail = new int[1];
+    private int trailSize = 0;
+    private int[] levelStarts = new int[1];
+    private int level = 0;
+    private int propagated = 0;
+
+    // VSIDS activity per variable, and a max-heap of unassigned variables keyed by it
+    private double[] activity = new double[1];
+    private double activityIncrement = 1;
+    private int[] heap = new int[1];
+    private int[] heapPositions = new int[1];
+    private int heapSize = 0;
+
+    // Scratch space for conflict analysis
+    private boolean[] seen = new boolean[1];
+
+    // Set once the clauses are known to be unsatisfiable at decision level zero
+    private boolean unsatisfiable = false;
+
+    // The assignment found by the last successful solve
+    private boolean[] model = new boolean[1];
+
+    private long conflicts = 0;
+    private long decisions = 0;
+
+    /**
+     * Create a new variable
+     * @return The number of the new variable
+     */
+    int newVariable() {
+        int var = ++variableCount;
+        if (var >= values.length) {
+            int size = values.length * 2;
+            values = Arrays.copyOf(values, size);
+            levels = Arrays.copyOf(levels, size);
+            reasons = Arrays.copyOf(reasons, size);
+            phases = Arrays.copyOf(phases, size);
+            trail = Arrays.copyOf(trail, size);
+            activity = Arrays.copyOf(activity, size);
+            heap = Arrays.copyOf(heap, size);
+            heapPositions = Arrays.copyOf(heapPositions, size);
+            seen = Arrays.copyOf(seen, size);
+            watches = Arrays.copyOf(watches, size * 2);
+            watchCounts = Arrays.copyOf(watchCounts, size * 2);
+        }
+        reasons[var] = -1;
+        heapInsert(var);
+        return var;
+    }
+
+    /**
+     * Get the number of variables created so far
+     * @return The number of variables
+     */
+    int getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Get the number of clauses, including learnt ones
+     * @return The number of clauses
+     */
+    int getClauseCount() {
+        return clauses.size();
+    }
+
+    long getConflicts() {
+        return conflicts;
+    }
+
+    long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Add a clause; must not be called during a solve
+     * @param literals The literals of the clause, in DIMACS form; at least one of them must be true
+     */
+    void addClause(int... literals) {
+        if (unsatisfiable) {
+            return;
+        }
+        int[] clause = new int[literals.length];
+        int size = 0;
+        for (int literal : literals) {
+            int lit = literal > 0 ? 2 * literal : -2 * literal + 1;
+            int value = valueOf(lit);
+            if (value > 0) {
+                return;         // Already satisfied at level zero
+            } else if (value < 0) {
+                continue;       // Already false at level zero, so it can never help
+            }
+            boolean duplicate = false;
+            for (int i = 0; i < size; i++) {
+                if (clause[i] == lit) {
+                    duplicate = true;
+                } else if (clause[i] == (lit ^ 1)) {
+                    return;     // Contains both a literal and its negation
+                }
+            }
+            if (!duplicate) {
+                clause[size++] = lit;
+            }
+        }
+
+        if (size == 0) {
+            unsatisfiable = true;
+        } else if (size == 1) {
+            assign(clause[0], -1);
+            if (propagate() != -1) {
+                unsatisfiable = true;
+            }
+        } else {
+            attach(Arrays.copyOf(clause, size));
+        }
+    }
+
+    /**
+     * Look for an assignment satisfying every clause
+     * @param cancelled Checked every so often; once it returns true, the solve gives up
+     * @return True if one was found, which can then be read with getValue; false if there isn't one; null if the solve was cancelled
+     */
+    Boolean solve(BooleanSupplier cancelled) {
+        if (unsatisfiable) {
+            return false;
+        }
+
+        int restart = 1;
+        long restartLimit = RESTART_BASE * luby(restart);
+        long conflictsSinceRestart = 0;
+
+        while (true) {
+            int conflict = propagate();
+            if (conflict != -1) {
+                conflicts++;
+                conflictsSinceRestart++;
+                if (level == 0) {
+                    unsatisfiable = true;
+                    return false;
+                }
+
+                int[] learnt = analyze(conflict);
+                backtrack(learntLevel(learnt));
+                if (learnt.length == 1) {
+                    assign(learnt[0], -1);
+                } else {
+                    assign(learnt[0], attach(learnt));
+                }
+                activityIncrement /= ACTIVITY_DECAY;
+
+                if (conflicts % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                    backtrack(0);
+                    return null;
+                }
+                if (conflictsSinceRestart >= restartLimit) {
+                    backtrack(0);
+                    restartLimit = RESTART_BASE * luby(++restart);
+                    conflictsSinceRestart = 0;
+                }
+            } else {
+                int var = nextDecision();
+                if (var == 0) {
+                    // Every variable is assigned without a conflict
+                    model = new boolean[variableCount + 1];
+                    for (int v = 1; v <= variableCount; v++) {
+                        model[v] = values[v] > 0;
+                    }
+                    backtrack(0);
+                    return true;
+                }
+                decisions++;
+                levelStarts = level + 1 < levelStarts.length ? levelStarts : Arrays.copyOf(levelStarts, levelStarts.length * 2);
+                levelStarts[++level] = trailSize;
+                assign(phases[var] ? 2 * var : 2 * var + 1, -1);
+            }
+        }
+    }
+
+    /**
+     * Get the value of a variable in the assignment found by the last successful solve
+     * @param var The variable
+     * @return True if the variable is true
+     */
+    boolean getValue(int var) {
+        return model[var];
+    }
+
+    /**
+     * Get the value of an internal literal under the current assignment
+     * @param lit The literal
+     * @return 1 if true, -1 if false, 0 if unassigned
+     */
+    private int valueOf(int lit) {
+        int value = values[lit >> 1];
+        return (lit & 1) == 0 ? value : -value;
+    }
+
+    /**
+     * Make a literal true
+     * @param lit The literal
+     * @param reason The clause that implied it, or -1 for a decision or a fact
+     */
+    private void assign(int lit, int reason) {
+        int var = lit >> 1;
+        values[var] = (byte) ((lit & 1) == 0 ? 1 : -1);
+        levels[var] = level;
+        reasons[var] = reason;
+        trail[trailSize++] = lit;
+    }
+
+    /**
+     * Add a clause of at least two literals to the clause list and watch its first two
+     * @param clause The clause
+     * @return The index of the clause
+     */
+    private int attach(int[] clause) {
+        int index = clauses.size();
+        clauses.add(clause);
+        watch(clause[0] ^ 1, index);
+        watch(clause[1] ^ 1, index);
+        return index;
+    }
+
+    /**
+     * Add a clause to the watch list of a literal
+     * @param lit The literal whose becoming true should visit the clause
+     * @param clause The index of the clause
+     */
+    private void watch(int lit, int clause) {
+        int[] list = watches[lit];
+        if (list == null) {
+            list = watches[lit] = new int[4];
+        } else if (watchCounts[lit] == list.length) {
+            list = watches[lit] = Arrays.copyOf(list, list.length * 2);
+        }
+        list[watchCounts[lit]++] = clause;
+    }
+
+    /**
+     * Propagate every assignment on the trail that hasn't been propagated yet
+     * @return The index of a clause with every literal false, or -1 if there's no conflict
+     */
+    private int propagate() {
+        while (propagated < trailSize) {
+            int lit = trail[propagated++];
+            int falseLit = lit ^ 1;
+            int[] list = watches[lit];
+            int count = watchCounts[lit];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int index = list[i];
+                int[] clause = clauses.get(index);
+
+                // Keep the false literal in the second slot
+                if (clause[0] == falseLit) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLit;
+                }
+                if (valueOf(clause[0]) > 0) {
+                    list[kept++] = index;
+                    continue;   // Already satisfied by the other watch
+                }
+
+                // Look for another literal to watch
+                boolean moved = false;
+                for (int j = 2; j < clause.length; j++) {
+                    if (valueOf(clause[j]) >= 0) {
+                        clause[1] = clause[j];
+                        clause[j] = falseLit;
+                        watch(clause[1] ^ 1, index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+
+                list[kept++] = index;
+                if (valueOf(clause[0]) < 0) {
+                    // Every literal is false; keep the rest of the watch list and report the conflict
+                    for (i++; i < count; i++) {
+                        list[kept++] = list[i];
+                    }
+                    watchCounts[lit] = kept;
+                    propagated = trailSize;
+                    return index;
+                }
+                assign(clause[0], index);
+            }
+            watchCounts[lit] = kept;
+        }
+        return -1;
+    }
+
+    /**
+     * Work out the first-UIP clause learnt from a conflict, bumping the activity of every variable involved
+     * @param conflict The index of the clause with every literal false
+     * @return The learnt clause, with the literal it asserts first and the one assigned latest after that
+     */
+    private int[] analyze(int conflict) {
+        int[] learnt = new int[8];
+        int size = 1;           // The first slot is saved for the asserting literal
+        int pending = 0;        // Variables from the current level still to be resolved away
+        int lit = -1;
+        int position = trailSize - 1;
+        int clauseIndex = conflict;
+
+        do {
+            int[] clause = clauses.get(clauseIndex);
+            for (int j = lit == -1 ? 0 : 1; j < clause.length; j++) {
+                int q = clause[j];
+                int var = q >> 1;
+                if (!seen[var] && levels[var] > 0) {
+                    seen[var] = true;
+                    bump(var);
+                    if (levels[var] >= level) {
+                        pending++;
+                    } else {
+                        if (size == learnt.length) {
+                            learnt = Arrays.copyOf(learnt, size * 2);
+                        }
+                        learnt[size++] = q;
+                    }
+                }
+            }
+
+            // Resolve on the most recently assigned variable involved
+            while (!seen[trail[position] >> 1]) {
+                position--;
+            }
+            lit = trail[position--];
+            clauseIndex = reasons[lit >> 1];
+            seen[lit >> 1] = false;
+            pending--;
+        } while (pending > 0);
+        learnt[0] = lit ^ 1;
+
+        for (int i = 1; i < size; i++) {
+            seen[learnt[i] >> 1] = false;
+        }
+
+        // Put the literal assigned latest second, so that it gets watched and the clause stays correct after backtracking
+        int latest = 1;
+        for (int i = 2; i < size; i++) {
+            if (levels[learnt[i] >> 1] > levels[learnt[latest] >> 1]) {
+                latest = i;
+            }
+        }
+        if (size > 1) {
+            int swap = learnt[1];
+            learnt[1] = learnt[latest];
+            learnt[latest] = swap;
+        }
+        return Arrays.copyOf(learnt, size);
+    }
+
+    /**
+     * Get the level to backtrack to after learning a clause
+     * @param learnt The learnt clause, as returned by analyze
+     * @return The highest level among the literals other than the asserting one, or zero if there aren't any
+     */
+    private int learntLevel(int[] learnt) {
+        return learnt.length == 1 ? 0 : levels[learnt[1] >> 1];
+    }
+
+    /**
+     * Undo every assignment above a decision level
+     * @param target The level to go back to
+     */
+    private void backtrack(int target) {
+        if (level <= target) {
+            return;
+        }
+        for (int i = trailSize - 1; i >= levelStarts[target + 1]; i--) {
+            int var = trail[i] >> 1;
+            phases[var] = values[var] > 0;
+            values[var] = 0;
+            reasons[var] = -1;
+            if (heapPositions[var] < 0) {
+                heapInsert(var);
+            }
+        }
+        trailSize = levelStarts[target + 1];
+        propagated = trailSize;
+        level = target;
+    }
+
+    /**
+     * Pick the unassigned variable with the highest activity
+     * @return The variable, or zero if every variable is assigned
+     */
+    private int nextDecision() {
+        while (heapSize > 0) {
+            int var = heapRemoveTop();
+            if (values[var] == 0) {
+                return var;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Increase the activity of a variable that took part in a conflict
+     * @param var The variable
+     */
+    private void bump(int var) {
+        activity[var] += activityIncrement;
+        if (activity[var] > 1e100) {
+            // Scale everything down before it overflows; only the order matters
+            for (int v = 1; v <= variableCount; v++) {
+                activity[v] *= 1e-100;
+            }
+            activityIncrement *= 1e-100;
+        }
+        if (heapPositions[var] >= 0) {
+            heapUp(heapPositions[var]);
+        }
+    }
+
+    private void heapInsert(int var) {
+        heap[heapSize] = var;
+        heapPositions[var] = heapSize;
+        heapUp(heapSize++);
+    }
+
+    private int heapRemoveTop() {
+        int top = heap[0];
+        heapPositions[top] = -1;
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPositions[heap[0]] = 0;
+            heapDown(0);
+        }
+        return top;
+    }
+
+    private void heapUp(int position) {
+        int var = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (activity[heap[parent]] >= activity[var]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = var;
+        heapPositions[var] = position;
+    }
+
+    private void heapDown(int position) {
+        int var = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) {
+                child++;
+            }
+            if (activity[heap[child]] <= activity[var]) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = var;
+        heapPositions[var] = position;
+    }
+
+    /**
+     * Get a term of the Luby sequence (1, 1, 2, 1, 1, 2, 4, ...), which spaces out restarts
+     * @param i The position in the sequence, from 1
+     * @return The term
+     */
+    private static long luby(int i) {
+        // Find the smallest complete subsequence containing the term, then work down into it
+        int x = i - 1;
+        int size = 1;
+        int power = 0;
+        while (size < x + 1) {
+            power++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != x) {
+            size = (size - 1) >> 1;
+            power--;
+            x = x % size;
+        }
+        return 1L << power;
+    }
+}
@@ -28,6 +28,8 @@ public class Colors {
     private final Map<String, Color> COLOR_NAME_MAP = new HashMap<>();
     // Map of color names to indexes
     private final Map<String, Integer> COLOR_REVERSE_INDEX_MAP = new HashMap<>();
+    // Colors for every index a board can hold, built the first time it's asked for
+    private Color[] palette = null;
 
     // Reads colors from colors.json and populates COLOR_INDEX_MAP and COLOR_NAME_MAP
     private void loadColorsFromJson(String filename) {
@@ -73,6 +75,22 @@ public class Colors {
         }
     }
 
+    /**
+     * Get the colors for every color index a board can hold as an array, so that drawing a cell is an array lookup rather than a map lookup
+     * Indexes without a color in the file get a random one, the same as getColorByIndex gives them
+     * @return The colors, indexed by color index; shared, so not to be modified
+     */
+    public Color[] getPalette() {
+        if (palette == null) {
+            Color[] colors = new Color[Board.MAX_COLOR_INDEX + 1];
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = getColorByIndex(i);
+            }
+            palette = colors;
+        }
+        return palette;
+    }
+
     public Color getColorByName(String name) {
         if (COLOR_NAME_MAP.containsKey(name)) {
             return COLOR_NAME_MAP.get(name);
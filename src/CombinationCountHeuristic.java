@@ -0,0 +1,21 @@
+package src;
+
+import java.util.List;
+
+/**
+ * The solver's original ordering: locations with the fewest valid move combinations first, and moves in direction order.
+ * The sort is the bucket pass in Solver.sortLocationsByConnections rather than a comparison sort, so this is the cheapest ordering to work out, though not the one that searches the fewest nodes.
+ */
+
+public class CombinationCountHeuristic implements Heuristic {
+
+    @Override
+    public int scoreMove(Location location, Coordinate direction, Board board) {
+        return 0;
+    }
+
+    @Override
+    public void sortLocations(List<Location> locations, Board board) {
+        Solver.sortLocationsByConnections(locations, board);
+    }
+}
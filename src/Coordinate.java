@@ -50,6 +50,24 @@ public class Coordinate {
         return -1; // or throw an exception
     }
 
+    public static int leftTurnIndex(int index) {
+        if (index == 0) return 2;
+        if (index == 1) return 3;
+        if (index == 2) return 1;
+        if (index == 3) return 0;
+        System.err.println("Invalid index: " + index);
+        return -1; // or throw an exception
+    }
+
+    public static int rightTurnIndex(int index) {
+        if (index == 0) return 3;
+        if (index == 1) return 2;
+        if (index == 2) return 0;
+        if (index == 3) return 1;
+        System.err.println("Invalid index: " + index);
+        return -1; // or throw an exception
+    }
+
     public static int toIndex(Coordinate c) {
         if (c.equals(UP)) return 0;
         if (c.equals(DOWN)) return 1;
@@ -0,0 +1,63 @@
+package src;
+
+/**
+ * Decides which depth limit each round of the iterative deepening search in Solver starts at.
+ *
+ * Forced moves on a board tend to come in runs at the same depth: a board with a tangled region keeps needing deep searches until the region is resolved, and an open board keeps giving up easy moves at depth 0.
+ * So rather than starting every round at depth 0 and re-running the shallow levels that just failed, the scheduler starts one level above the depth the last forced move was found at.
+ * Starting right at that depth turned out about three times slower over the archive, since easy moves keep turning up between the hard ones and cost much more to find with a deep search; one level above lets a run of shallow moves pull the start back down to 0.
+ * Starting deep never finds a wrong move: since deadliness is monotonic in the depth limit, a move that's forced at a shallow depth is still forced at a deeper one, and a round that finds nothing deep would have found nothing shallower either.
+ * The only thing it can cost is a round that runs out of its budget at the deeper level, in which case the solver resets the scheduler and goes back to depth 0.
+ *
+ * Each solve has its own scheduler, shared through its SearchContext; only the thread running the solve's main loop uses it.
+ */
+
+class DepthScheduler {
+    // Whether to start from just above the depth of the last forced move, rather than always from 0
+    private final boolean adaptive;
+
+    // Deepest depth limit a round can go to
+    private final int maxDepth;
+
+    // Depth the last forced move was found at
+    private int recentDepth = 0;
+
+    /**
+     * @param options Settings for the solve
+     */
+    DepthScheduler(SolverOptions options) {
+        this.adaptive = options.isAdaptiveDepth();
+        this.maxDepth = options.getMaxDepth();
+    }
+
+    /**
+     * Get the depth limit the next round should start at
+     * @return The depth limit
+     */
+    int getStartDepth() {
+        return adaptive ? Math.max(0, Math.min(recentDepth - 1, maxDepth)) : 0;
+    }
+
+    /**
+     * Get the deepest depth limit a round can go to
+     * @return The depth limit
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Record the depth limit a forced move was found at
+     * @param depthLimit The depth limit
+     */
+    void recordForcedMove(int depthLimit) {
+        recentDepth = depthLimit;
+    }
+
+    /**
+     * Go back to starting rounds at depth 0
+     */
+    void reset() {
+        recentDepth = 0;
+    }
+}
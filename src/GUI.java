@@ -5,12 +5,12 @@ import javax.swing.SwingUtilities;
 import java.awt.Color;
 import java.awt.GridLayout;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 
 import java.awt.BorderLayout;
-import java.awt.Graphics;
 import java.awt.Dimension;
 
 public class GUI {
@@ -25,9 +25,7 @@ public class GUI {
     private static Runnable updateLabels = null; // Placeholder for label update runnable
     public static void main(String[] args) {
 
-        final ArrayList<ArrayList<Board>> solveHistories = new ArrayList<>();
-        final ArrayList<ArrayList<boolean[][]>> diffs = new ArrayList<>(); // Store diffs for each board's solve history
-        final ArrayList<ArrayList<Move[]>> moveHistories = new ArrayList<>(); // Store move histories for each board
+        final ArrayList<SolveHistory> solveHistories = new ArrayList<>(); // Boards are rebuilt from these when they're shown, rather than all kept
 
         int boardIndex = 0;                                         // Change this to view different boards
         final int[] boardIndexHolder = {boardIndex};                // Use an array to allow mutation in lambdas
@@ -40,22 +38,18 @@ public class GUI {
         new Thread(() -> {
             boolean rendered = false;
             for (int i = 0; i < 270; i++) {
-                if (i == 155 || i == 176) continue; // Skip boards 155 and 176 as they have non-unique solutions
 
-                ArrayList<Move[]> moveHistory = new ArrayList<>();
-                ArrayList<Board> solveHistory = getSolveHistory(i, moveHistory);
-                if (solveHistory == null || solveHistory.isEmpty() || !solveHistory.get(solveHistory.size() - 1).isSolved()) {
+                SolveHistory solveHistory = getSolveHistory(i);
+                if (!solveHistory.isSolved()) {
                     System.err.println("No solution found for board " + i);
                     break;
                 }
                 solveHistories.add(solveHistory);
-                diffs.add(getDiffs(solveHistory));
-                moveHistories.add(moveHistory);
 
                 if (!rendered) {
                     // Wait to render anything until the first board is ready, otherwise the GUI thread will crash
                     rendered = true;
-                    SwingUtilities.invokeLater(() -> renderStuff(solveHistories, diffs, moveHistories, boardIndexHolder, solutionIndexHolder, playingStatusHolder));
+                    SwingUtilities.invokeLater(() -> renderStuff(solveHistories, boardIndexHolder, solutionIndexHolder, playingStatusHolder));
                 }
 
                 // Update button states and labels on the Swing thread
@@ -68,7 +62,7 @@ public class GUI {
     }
 
     // TODO Really, these should live in Solver.java
-    private static ArrayList<Board> getSolveHistory(int i, ArrayList<Move[]> moveHistory) {
+    private static SolveHistory getSolveHistory(int i) {
         Board startBoard = new Board("boards/imported.txt", i);
         try {
             startBoard.updateAll();
@@ -79,20 +73,10 @@ public class GUI {
 
         System.out.println("Starting board " + i + ":\n" + startBoard.simpleReadout() + "\n");
 
-        return Solver.solveBoard(startBoard, moveHistory);
+        return SolveHistory.solve(startBoard, new SolverOptions().setPool(ForkJoinPool.commonPool()));
     }
 
-    private static ArrayList<boolean[][]> getDiffs(ArrayList<Board> solveHistory) {
-        ArrayList<boolean[][]> diffs = new ArrayList<>();
-        diffs.add(solveHistory.get(0).getDiff(solveHistory.get(0))); // First board has no diff
-        for (int i = 1; i < solveHistory.size(); i++) {
-            boolean[][] diff = solveHistory.get(i).getDiff(solveHistory.get(i - 1));
-            diffs.add(diff);
-        }
-        return diffs;
-    }
-
-    private static void renderStuff(ArrayList<ArrayList<Board>> solveHistories, ArrayList<ArrayList<boolean[][]>> diffs, ArrayList<ArrayList<Move[]>> moveHistories, int[] boardIndexHolder, int[] solutionIndexHolder, boolean[] playingStatusHolder) {
+    private static void renderStuff(ArrayList<SolveHistory> solveHistories, int[] boardIndexHolder, int[] solutionIndexHolder, boolean[] playingStatusHolder) {
         JFrame frame = new JFrame("Grid");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(FRAME_WIDTH, FRAME_HEIGHT);
@@ -106,29 +90,18 @@ public class GUI {
         javax.swing.JLabel boardLabel = new javax.swing.JLabel("Board " + (boardIndexHolder[0] + 1) + "/" + solveHistories.size(), javax.swing.SwingConstants.CENTER);
         boardLabel.setFont(boardLabel.getFont().deriveFont(24f));
 
-        final JPanel gridPanel = new JPanel();
-        final ArrayList<JPanel> squares = new ArrayList<>();
-        gridPanel.setBorder(BorderFactory.createEmptyBorder(
+        final GridCanvas gridCanvas = new GridCanvas(colors.getPalette());
+        gridCanvas.setBorder(BorderFactory.createEmptyBorder(
             OUTER_BORDER_SIZE, OUTER_BORDER_SIZE, OUTER_BORDER_SIZE, OUTER_BORDER_SIZE));
 
+        // Show the current step; only the cells that changed since the last step shown get redrawn
+        Runnable updateStep = () -> gridCanvas.setStep(solveHistories.get(boardIndexHolder[0]), solutionIndexHolder[0]);
+
         Runnable updateGrid = () -> {
-            int boardHeight = solveHistories.get(boardIndexHolder[0]).get(0).getHeight();
-            int boardWidth = solveHistories.get(boardIndexHolder[0]).get(0).getWidth();
-            gridPanel.removeAll(); // Clear existing squares
-            gridPanel.setLayout(new GridLayout(boardHeight, boardWidth, 1, 1)); // Reset layout
-
-            squares.clear();
-            for (int row = 0; row < boardHeight; row++) {
-                for (int col = 0; col < boardWidth; col++) {
-                    JPanel square = getGridSquare(solveHistories, diffs, moveHistories, boardIndexHolder, solutionIndexHolder, row, col);
-                    square.setBackground(Color.BLACK);
-                    square.setPreferredSize(new Dimension(100, 100));
-                    squares.add(square);
-                    gridPanel.add(square);
-                }
-            }
-            gridPanel.revalidate(); // Refresh the panel
-            gridPanel.repaint(); // Repaint the panel
+            SolveHistory history = solveHistories.get(boardIndexHolder[0]);
+            gridCanvas.setPreferredSize(new Dimension(100 * history.getWidth(), 100 * history.getHeight()));
+            gridCanvas.revalidate();
+            updateStep.run();       // Redraws the whole grid if the board size has changed
         };
         updateGrid.run(); // Initial grid setup
 
@@ -204,9 +177,7 @@ public class GUI {
 
                 updateLabels.run();
                 updateButtonStates.run();
-                for (JPanel square : squares) {
-                    square.repaint();
-                }
+                updateStep.run();
             }
         });
 
@@ -215,9 +186,7 @@ public class GUI {
                 solutionIndexHolder[0]--;
                 updateLabels.run();
                 updateButtonStates.run();
-                for (JPanel square : squares) {
-                    square.repaint();
-                }
+                updateStep.run();
             }
         });
 
@@ -226,16 +195,14 @@ public class GUI {
                 solutionIndexHolder[0]++;
                 updateLabels.run();
                 updateButtonStates.run();
-                for (JPanel square : squares) {
-                    square.repaint();
-                }
+                updateStep.run();
             } else if (boardIndexHolder[0] < solveHistories.size() - 1) {
                 // If at the end of the current board, move to the next board
                 boardIndexHolder[0]++;
                 solutionIndexHolder[0] = 0; // Reset to first step of the new board's solution
                 updateLabels.run();
                 updateButtonStates.run();
-                updateGrid.run();         // Need to repalace the whole grid and not just repaint it because the board size might have changed
+                updateGrid.run();         // The board size might have changed
             }
         });
 
@@ -248,9 +215,7 @@ public class GUI {
 
                 updateLabels.run();
                 updateButtonStates.run();
-                for (JPanel square : squares) {
-                    square.repaint();
-                }
+                updateStep.run();
             }
         });
 
@@ -320,16 +285,14 @@ public class GUI {
                         System.out.println("Moved to solution step " + solutionIndexHolder[0] + " of board " + boardIndexHolder[0]);
                         solutionIndexHolder[0]++;
                         updateLabels.run();
-                        for (JPanel square : squares) {
-                            square.repaint();
-                        }
+                        SwingUtilities.invokeLater(updateStep);
                     } else if (boardIndexHolder[0] < solveHistories.size() - 1) {
                         System.out.println("Moved to board " + boardIndexHolder[0]);
                         // If at the end of the current board, move to the next board
                         boardIndexHolder[0]++;
                         solutionIndexHolder[0] = 0; // Reset to first step of the new board's solution
                         updateLabels.run();
-                        updateGrid.run();         // Need to repalace the whole grid and not just repaint it because the board size might have changed
+                        SwingUtilities.invokeLater(updateGrid);         // The board size might have changed
                     } else {
                         // Reached the end of all boards; stop playing
                         playingStatusHolder[0] = false;
@@ -392,147 +355,11 @@ public class GUI {
         JPanel mainPanel = new JPanel();
         mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));
         mainPanel.add(boardArrowPanel);
-        mainPanel.add(gridPanel);
+        mainPanel.add(gridCanvas);
         mainPanel.add(moveArrowPanel);
         mainPanel.add(lowerButtonPanel);
 
         frame.add(mainPanel, BorderLayout.CENTER);
         frame.setVisible(true);
     }
-
-    private static JPanel getGridSquare(ArrayList<ArrayList<Board>> solveHistories, ArrayList<ArrayList<boolean[][]>> diffs, ArrayList<ArrayList<Move[]>> moveHistories, int[] boardIndexHolder, int[] solutionIndexHolder, int row, int col) {
-        return new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-
-                // Fetch the data that's to be rendered
-                Board board = solveHistories.get(boardIndexHolder[0]).get(solutionIndexHolder[0]);         // Workaround for lambda variable capture
-                boolean[][] diff = diffs.get(boardIndexHolder[0]).get(solutionIndexHolder[0]);
-                ArrayList<Coordinate> moveCoordinates = new ArrayList<>();
-                for (Move move : moveHistories.get(boardIndexHolder[0]).get(solutionIndexHolder[0])) {
-                    moveCoordinates.add(move.getStart());
-                    moveCoordinates.add(move.getStart().add(move.getDirection()));
-                }
-
-                Location loc = board.getLocation(row, col);
-                Coordinate coord = loc.getCoordinate();
-
-                // Set some dimensions based on the panel size
-                int minDimension = Math.min(getWidth(), getHeight());
-                int outerCircleDiameter = (int) (minDimension * (loc.isStart() ? 0.85 : 0.65));
-                int lineWidth = (int) (minDimension * 0.4);
-                int innerCircleDiameter = (int) (minDimension * 0.4);
-                int centerX = getWidth() / 2;
-                int centerY = getHeight() / 2;
-                int borderWidth = (int) (minDimension / 16);
-
-                // Work out the color of the circle
-                Color circleColor = Color.GRAY;
-                if (loc.getColorIndex() != null) {
-                    circleColor = colors.getColorByIndex(loc.getColorIndex());
-                }
-
-                // Draw the circle
-                if ((loc.getRemainingConnections() > 0 && loc.countConnections() > 0) || loc.isStart()) {
-                    g.setColor(circleColor);
-                    g.fillOval(centerX - outerCircleDiameter / 2, centerY - outerCircleDiameter / 2, outerCircleDiameter, outerCircleDiameter);
-                }
-
-                // Draw the connections to each connected grid square
-                for (int i = 0; i < Coordinate.DIRECTIONS.length; i++) {
-                    Coordinate dir = Coordinate.DIRECTIONS[i];
-
-                    if (loc.getConnections()[i]) {
-                        g.setColor(circleColor);
-                        if (dir == Coordinate.UP) {
-                            g.fillRect(centerX - lineWidth / 2, 0, lineWidth, centerY);
-                        } else if (dir == Coordinate.DOWN) {
-                            g.fillRect(centerX - lineWidth / 2, centerY, lineWidth, getHeight() - centerY);
-                        } else if (dir == Coordinate.LEFT) {
-                            g.fillRect(0, centerY - lineWidth / 2, centerX, lineWidth);
-                        } else if (dir == Coordinate.RIGHT) {
-                            g.fillRect(centerX, centerY - lineWidth / 2, getWidth() - centerX, lineWidth);
-                        }
-                    }
-
-                    int neighborRow = row + dir.getRow();
-                    int neighborCol = col + dir.getCol();
-                    Coordinate neighborCoord = new Coordinate(neighborRow, neighborCol);
-                    if (diff[row][col]) {
-
-                        boolean drawBorder = false;
-                        boolean drawCorner = false;
-                        Coordinate rightTurnNeighbor = coord.add(Coordinate.rightTurn(dir));
-                        Coordinate rightCornerNeighbor = rightTurnNeighbor.add(dir);
-
-                        // Decide what kind of border to draw, if any
-                        if (moveCoordinates.contains(loc.getCoordinate()) && !moveCoordinates.contains(neighborCoord)) {
-                            g.setColor(Color.RED);
-                            drawBorder = true;
-                        } else if (!neighborCoord.isInBounds(board) || !diff[neighborRow][neighborCol] || (!moveCoordinates.contains(coord) && moveCoordinates.contains(neighborCoord))) {
-                            g.setColor(Color.YELLOW);
-                            drawBorder = true;
-                        } else if (neighborCoord.isInBounds(board) && rightTurnNeighbor.isInBounds(board) && rightCornerNeighbor.isInBounds(board)) {
-                            // A bunch of elaborate logic to draw interior corners for the diff borders
-                            if (!moveCoordinates.contains(coord) &&
-                                            (!moveCoordinates.contains(neighborCoord) && diff[neighborRow][neighborCol]) &&
-                                            (!moveCoordinates.contains(rightTurnNeighbor) && diff[rightTurnNeighbor.getRow()][rightTurnNeighbor.getCol()]) && 
-                                            (moveCoordinates.contains(rightCornerNeighbor) || !diff[rightCornerNeighbor.getRow()][rightCornerNeighbor.getCol()])) {
-                                g.setColor(Color.YELLOW);
-                                drawCorner = true;
-                            } else if (moveCoordinates.contains(coord) &&
-                                            (moveCoordinates.contains(neighborCoord) || !diff[neighborRow][neighborCol]) &&
-                                            (moveCoordinates.contains(rightTurnNeighbor) || !diff[rightTurnNeighbor.getRow()][rightTurnNeighbor.getCol()]) && 
-                                            (!moveCoordinates.contains(rightCornerNeighbor) && diff[rightTurnNeighbor.getRow()][rightTurnNeighbor.getCol()])) {
-                                g.setColor(Color.RED);
-                                drawCorner = true;
-                                // It's extremely unlikely a red interior corner will ever happen, but I've included it for completeness's sake
-                            }
-                        }
-
-                        if (drawBorder) {
-                            if (dir == Coordinate.UP) {
-                                g.fillRect(0, 0, getWidth(), borderWidth);
-                            } else if (dir == Coordinate.DOWN) {
-                                g.fillRect(0, getHeight() - borderWidth, getWidth(), borderWidth);
-                            } else if (dir == Coordinate.LEFT) {
-                                g.fillRect(0, 0, borderWidth, getHeight());
-                            } else if (dir == Coordinate.RIGHT) {
-                                g.fillRect(getWidth() - borderWidth, 0, borderWidth, getHeight());
-                            }
-                        } else if (drawCorner) {
-                            if (dir == Coordinate.UP) {
-                                g.fillRect(getWidth() - borderWidth, 0, borderWidth, borderWidth);
-                            } else if (dir == Coordinate.DOWN) {
-                                g.fillRect(0, getHeight() - borderWidth, borderWidth, borderWidth);
-                            } else if (dir == Coordinate.LEFT) {
-                                g.fillRect(0, 0, borderWidth, borderWidth);
-                            } else if (dir == Coordinate.RIGHT) {
-                                g.fillRect(getWidth() - borderWidth, getHeight() - borderWidth, borderWidth, borderWidth);
-                            }
-                        }
-                    }
-                }
-
-                // Draw an additional circle of the same color if the location is a corner
-                if (loc.countConnections() == 2) {
-                    if (loc.getConnections()[Coordinate.toIndex(Coordinate.UP)] && loc.getConnections()[Coordinate.toIndex(Coordinate.DOWN)]) {
-                        // Do nothing
-                    } else if (loc.getConnections()[Coordinate.toIndex(Coordinate.LEFT)] && loc.getConnections()[Coordinate.toIndex(Coordinate.RIGHT)]) {
-                        // Do nothing
-                    } else {
-                        g.setColor(circleColor);
-                        g.fillOval(centerX - lineWidth / 2, centerY - lineWidth / 2, lineWidth, lineWidth);
-                    }
-                }
-
-                // Mark the start/end locations
-                if (board.getLocation(row, col).isStart()) {
-                    g.setColor(Color.BLACK);
-                    g.fillOval(centerX - innerCircleDiameter / 2, centerY - innerCircleDiameter / 2, innerCircleDiameter, innerCircleDiameter);
-                }
-            }
-        };
-    }
-}
\ No newline at end of file
+}
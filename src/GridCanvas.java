@@ -0,0 +1,374 @@
+package src;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+
+/**
+ * The grid of the viewer, drawn as a single component rather than a panel per cell.
+ *
+ * Each step shown is first boiled down to a snapshot of a few primitives per cell: its color index, its connections, and whether it's a start, still open, changed since the last step or part of the step's moves.
+ * The grid is drawn from the snapshot into an image that's kept between paints, and moving to another step only redraws the cells whose snapshot changed, along with their neighbours, since the diff borders of a cell depend on the cells around it.
+ * Painting the component is then a single copy of the image, so autoplay stays smooth on the largest boards, where most steps only touch a handful of cells.
+ *
+ * Like the rest of Swing, it should only be used from the event dispatch thread.
+ */
+
+public class GridCanvas extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    // Width of the gaps between cells, in pixels
+    private static final int GAP = 1;
+
+    // Flags making up the snapshot of each cell besides its color and connections
+    private static final byte START = 1;
+    private static final byte OPEN = 2;         // Has connections still to make
+    private static final byte CHANGED = 4;      // Differs from the step before
+    private static final byte MOVED = 8;        // Is one end of one of the moves that made the step
+
+    // Connection masks of the two straight shapes a cell with two connections can make
+    private static final int UP_DOWN = (1 << Coordinate.toIndex(Coordinate.UP)) | (1 << Coordinate.toIndex(Coordinate.DOWN));
+    private static final int LEFT_RIGHT = (1 << Coordinate.toIndex(Coordinate.LEFT)) | (1 << Coordinate.toIndex(Coordinate.RIGHT));
+
+    // The row and column offset of each direction, and the direction a right turn from it leads in, indexed as in Coordinate.DIRECTIONS
+    private static final int[] ROW_OFFSETS = new int[Coordinate.DIRECTIONS.length];
+    private static final int[] COL_OFFSETS = new int[Coordinate.DIRECTIONS.length];
+    private static final int[] RIGHT_TURNS = new int[Coordinate.DIRECTIONS.length];
+    static {
+        for (int i = 0; i < Coordinate.DIRECTIONS.length; i++) {
+            ROW_OFFSETS[i] = Coordinate.DIRECTIONS[i].getRow();
+            COL_OFFSETS[i] = Coordinate.DIRECTIONS[i].getCol();
+            RIGHT_TURNS[i] = Coordinate.rightTurnIndex(i);
+        }
+    }
+
+    // Colors of the lines, indexed by color index
+    private final Color[] palette;
+
+    // Dimensions of the board shown, in cells
+    private int boardWidth = 0;
+    private int boardHeight = 0;
+
+    // Snapshot of the step shown, one entry per cell in row-major order
+    private int[] colors = new int[0];
+    private byte[] connections = new byte[0];
+    private byte[] flags = new byte[0];
+
+    // The grid as drawn so far, and the cells that have changed since they were drawn into it
+    private BufferedImage image = null;
+    private boolean[] dirty = new boolean[0];
+    private boolean allDirty = true;
+
+    /**
+     * @param palette Colors of the lines, indexed by color index; see Colors.getPalette
+     */
+    public GridCanvas(Color[] palette) {
+        this.palette = palette;
+        setOpaque(true);
+    }
+
+    /**
+     * Show a step of a solve, redrawing only the cells that differ from the step shown before
+     * @param history The history of the solve
+     * @param step The step to show
+     */
+    public void setStep(SolveHistory history, int step) {
+        Board board = history.getBoard(step);
+        boolean[][] diff = history.getDiff(step);
+        int width = board.getWidth();
+        int height = board.getHeight();
+        int size = width * height;
+
+        int[] newColors = new int[size];
+        byte[] newConnections = new byte[size];
+        byte[] newFlags = new byte[size];
+        for (int index = 0; index < size; index++) {
+            newColors[index] = board.getColor(index);
+            newConnections[index] = (byte) board.getConnectionMask(index);
+            newFlags[index] = (byte) ((board.isStart(index) ? START : 0)
+                    | (board.getRemainingConnections(index) > 0 ? OPEN : 0)
+                    | (diff[index / width][index % width] ? CHANGED : 0));
+        }
+        for (Move move : history.getMoves(step)) {
+            Coordinate start = move.getStart();
+            Coordinate end = start.add(move.getDirection());
+            newFlags[start.getRow() * width + start.getCol()] |= MOVED;
+            newFlags[end.getRow() * width + end.getCol()] |= MOVED;
+        }
+
+        if (width != boardWidth || height != boardHeight) {
+            boardWidth = width;
+            boardHeight = height;
+            dirty = new boolean[size];
+            allDirty = true;
+        } else {
+            for (int index = 0; index < size; index++) {
+                if (newColors[index] != colors[index] || newConnections[index] != connections[index] || newFlags[index] != flags[index]) {
+                    markDirty(index);
+                }
+            }
+        }
+        colors = newColors;
+        connections = newConnections;
+        flags = newFlags;
+        repaintDirty();
+    }
+
+    /**
+     * Mark a cell and every cell around it, diagonals included, as needing to be redrawn
+     * @param index Index of the cell
+     */
+    private void markDirty(int index) {
+        int row = index / boardWidth;
+        int col = index % boardWidth;
+        for (int r = Math.max(0, row - 1); r <= Math.min(boardHeight - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(boardWidth - 1, col + 1); c++) {
+                dirty[r * boardWidth + c] = true;
+            }
+        }
+    }
+
+    /**
+     * Ask Swing to repaint the area covering every dirty cell
+     */
+    private void repaintDirty() {
+        if (allDirty) {
+            repaint();
+            return;
+        }
+        int minRow = boardHeight, maxRow = -1, minCol = boardWidth, maxCol = -1;
+        for (int index = 0; index < dirty.length; index++) {
+            if (dirty[index]) {
+                int row = index / boardWidth;
+                int col = index % boardWidth;
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+                minCol = Math.min(minCol, col);
+                maxCol = Math.max(maxCol, col);
+            }
+        }
+        if (maxRow >= 0) {
+            int x = cellX(minCol);
+            int y = cellY(minRow);
+            repaint(x, y, cellX(maxCol + 1) - x, cellY(maxRow + 1) - y);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (boardWidth == 0) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            return;
+        }
+
+        if (image == null || image.getWidth() != getWidth() || image.getHeight() != getHeight()) {
+            image = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), BufferedImage.TYPE_INT_RGB);
+            allDirty = true;
+        }
+
+        Graphics2D imageGraphics = image.createGraphics();
+        try {
+            if (allDirty) {
+                // The gaps between cells are never drawn over, so they only need filling in along with everything else
+                imageGraphics.setColor(getBackground());
+                imageGraphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+                Arrays.fill(dirty, true);
+            }
+            for (int index = 0; index < dirty.length; index++) {
+                if (dirty[index]) {
+                    int row = index / boardWidth;
+                    int col = index % boardWidth;
+                    int x = cellX(col);
+                    int y = cellY(row);
+                    int w = cellX(col + 1) - x - GAP;
+                    int h = cellY(row + 1) - y - GAP;
+                    if (w > 0 && h > 0) {
+                        Graphics2D cellGraphics = (Graphics2D) imageGraphics.create(x, y, w, h);
+                        paintCell(cellGraphics, index, w, h);
+                        cellGraphics.dispose();
+                    }
+                }
+            }
+        } finally {
+            imageGraphics.dispose();
+        }
+        Arrays.fill(dirty, false);
+        allDirty = false;
+
+        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * Get the left edge of a column of cells, inside the component's border
+     * @param col The column; the board's width gives the right edge of the last column
+     * @return The x coordinate, in pixels
+     */
+    private int cellX(int col) {
+        Insets insets = getInsets();
+        return insets.left + col * (getWidth() - insets.left - insets.right + GAP) / boardWidth;
+    }
+
+    /**
+     * Get the top edge of a row of cells, inside the component's border
+     * @param row The row; the board's height gives the bottom edge of the last row
+     * @return The y coordinate, in pixels
+     */
+    private int cellY(int row) {
+        Insets insets = getInsets();
+        return insets.top + row * (getHeight() - insets.top - insets.bottom + GAP) / boardHeight;
+    }
+
+    /**
+     * Check whether a cell is on the board and has a flag set
+     * @param row The row of the cell
+     * @param col The column of the cell
+     * @param flag The flag
+     * @return True if the cell is on the board and has the flag, false otherwise
+     */
+    private boolean hasFlag(int row, int col, byte flag) {
+        return isInBounds(row, col) && (flags[row * boardWidth + col] & flag) != 0;
+    }
+
+    /**
+     * Check whether a cell is on the board
+     * @param row The row of the cell
+     * @param col The column of the cell
+     * @return True if the cell is on the board, false otherwise
+     */
+    private boolean isInBounds(int row, int col) {
+        return row >= 0 && row < boardHeight && col >= 0 && col < boardWidth;
+    }
+
+    /**
+     * Draw a single cell from the snapshot
+     * @param g Graphics for the cell, with its origin at the cell's top left corner
+     * @param index Index of the cell
+     * @param w The width of the cell
+     * @param h The height of the cell
+     */
+    private void paintCell(Graphics2D g, int index, int w, int h) {
+        int row = index / boardWidth;
+        int col = index % boardWidth;
+        int mask = connections[index];
+        boolean start = (flags[index] & START) != 0;
+        boolean changed = (flags[index] & CHANGED) != 0;
+        boolean moved = (flags[index] & MOVED) != 0;
+
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, w, h);
+
+        // Set some dimensions based on the cell size
+        int minDimension = Math.min(w, h);
+        int outerCircleDiameter = (int) (minDimension * (start ? 0.85 : 0.65));
+        int lineWidth = (int) (minDimension * 0.4);
+        int innerCircleDiameter = (int) (minDimension * 0.4);
+        int centerX = w / 2;
+        int centerY = h / 2;
+        int borderWidth = minDimension / 16;
+
+        Color circleColor = colors[index] == Board.NO_COLOR ? Color.GRAY : palette[colors[index]];
+
+        // Draw the circle
+        if (((flags[index] & OPEN) != 0 && mask != 0) || start) {
+            g.setColor(circleColor);
+            g.fillOval(centerX - outerCircleDiameter / 2, centerY - outerCircleDiameter / 2, outerCircleDiameter, outerCircleDiameter);
+        }
+
+        // Draw the connections to each connected cell, and the borders around the cells that changed
+        for (int dir = 0; dir < Coordinate.DIRECTIONS.length; dir++) {
+            Coordinate direction = Coordinate.DIRECTIONS[dir];
+
+            if ((mask & (1 << dir)) != 0) {
+                g.setColor(circleColor);
+                if (direction == Coordinate.UP) {
+                    g.fillRect(centerX - lineWidth / 2, 0, lineWidth, centerY);
+                } else if (direction == Coordinate.DOWN) {
+                    g.fillRect(centerX - lineWidth / 2, centerY, lineWidth, h - centerY);
+                } else if (direction == Coordinate.LEFT) {
+                    g.fillRect(0, centerY - lineWidth / 2, centerX, lineWidth);
+                } else if (direction == Coordinate.RIGHT) {
+                    g.fillRect(centerX, centerY - lineWidth / 2, w - centerX, lineWidth);
+                }
+            }
+
+            if (!changed) {
+                continue;
+            }
+
+            int neighborRow = row + ROW_OFFSETS[dir];
+            int neighborCol = col + COL_OFFSETS[dir];
+            int turnRow = row + ROW_OFFSETS[RIGHT_TURNS[dir]];
+            int turnCol = col + COL_OFFSETS[RIGHT_TURNS[dir]];
+            int cornerRow = turnRow + ROW_OFFSETS[dir];
+            int cornerCol = turnCol + COL_OFFSETS[dir];
+            boolean neighborMoved = hasFlag(neighborRow, neighborCol, MOVED);
+            boolean neighborChanged = hasFlag(neighborRow, neighborCol, CHANGED);
+            boolean turnMoved = hasFlag(turnRow, turnCol, MOVED);
+            boolean turnChanged = hasFlag(turnRow, turnCol, CHANGED);
+            boolean cornerMoved = hasFlag(cornerRow, cornerCol, MOVED);
+            boolean cornerChanged = hasFlag(cornerRow, cornerCol, CHANGED);
+
+            boolean drawBorder = false;
+            boolean drawCorner = false;
+
+            // Decide what kind of border to draw, if any
+            if (moved && !neighborMoved) {
+                g.setColor(Color.RED);
+                drawBorder = true;
+            } else if (!isInBounds(neighborRow, neighborCol) || !neighborChanged || (!moved && neighborMoved)) {
+                g.setColor(Color.YELLOW);
+                drawBorder = true;
+            } else if (isInBounds(turnRow, turnCol) && isInBounds(cornerRow, cornerCol)) {
+                // A bunch of elaborate logic to draw interior corners for the diff borders
+                if (!moved && (!neighborMoved && neighborChanged) && (!turnMoved && turnChanged) && (cornerMoved || !cornerChanged)) {
+                    g.setColor(Color.YELLOW);
+                    drawCorner = true;
+                } else if (moved && (neighborMoved || !neighborChanged) && (turnMoved || !turnChanged) && (!cornerMoved && turnChanged)) {
+                    g.setColor(Color.RED);
+                    drawCorner = true;
+                    // It's extremely unlikely a red interior corner will ever happen, but I've included it for completeness's sake
+                }
+            }
+
+            if (drawBorder) {
+                if (direction == Coordinate.UP) {
+                    g.fillRect(0, 0, w, borderWidth);
+                } else if (direction == Coordinate.DOWN) {
+                    g.fillRect(0, h - borderWidth, w, borderWidth);
+                } else if (direction == Coordinate.LEFT) {
+                    g.fillRect(0, 0, borderWidth, h);
+                } else if (direction == Coordinate.RIGHT) {
+                    g.fillRect(w - borderWidth, 0, borderWidth, h);
+                }
+            } else if (drawCorner) {
+                if (direction == Coordinate.UP) {
+                    g.fillRect(w - borderWidth, 0, borderWidth, borderWidth);
+                } else if (direction == Coordinate.DOWN) {
+                    g.fillRect(0, h - borderWidth, borderWidth, borderWidth);
+                } else if (direction == Coordinate.LEFT) {
+                    g.fillRect(0, 0, borderWidth, borderWidth);
+                } else if (direction == Coordinate.RIGHT) {
+                    g.fillRect(w - borderWidth, h - borderWidth, borderWidth, borderWidth);
+                }
+            }
+        }
+
+        // Draw an additional circle of the same color if the cell is a corner, so the bend looks rounded
+        if (Integer.bitCount(mask) == 2 && mask != UP_DOWN && mask != LEFT_RIGHT) {
+            g.setColor(circleColor);
+            g.fillOval(centerX - lineWidth / 2, centerY - lineWidth / 2, lineWidth, lineWidth);
+        }
+
+        // Mark the start/end cells
+        if (start) {
+            g.setColor(Color.BLACK);
+            g.fillOval(centerX - innerCircleDiameter / 2, centerY - innerCircleDiameter / 2, innerCircleDiameter, innerCircleDiameter);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package src;
+
+import java.util.List;
+
+/**
+ * A way of ordering the search: which open locations to look at first, and which moves to try first from a location.
+ * Ordering doesn't change whether the solver finds a forced move at a given depth, only which one it finds first and how quickly; the dead-end search stops at the first location it can refute, and at the first move it can't, so putting the most constrained locations and the most promising moves first is what makes deep refutations fast.
+ *
+ * Set one for a solve with SolverOptions.setHeuristic. ConstraintHeuristic is the default; CombinationCountHeuristic is the original fixed ordering.
+ */
+
+public interface Heuristic {
+
+    /**
+     * Score a move from an open location; the search tries combinations with higher total scores first
+     * @param location The location the move starts from
+     * @param direction The direction of the move
+     * @param board The board containing the location
+     * @return The score of the move
+     */
+    int scoreMove(Location location, Coordinate direction, Board board);
+
+    /**
+     * Sort open locations into the order the search should look at them, most constrained first
+     * Locations are ranked as a whole list rather than scored one at a time, since features like the distance to other loose ends depend on the rest of the board, and working those out once per sort is what keeps it from costing a scan of the board per location
+     * @param locations The locations to sort
+     * @param board The board containing the locations
+     */
+    void sortLocations(List<Location> locations, Board board);
+
+    /**
+     * Sort open locations into the order the search should look at them when it's checking the consequences of a move at a particular place
+     * By default this is just by distance to that place; see Solver.sortLocationsByDistance
+     * @param locations The locations to sort
+     * @param board The board containing the locations
+     * @param target The coordinate of the move being checked
+     */
+    default void sortLocationsNear(List<Location> locations, Board board, Coordinate target) {
+        Solver.sortLocationsByDistance(locations, target);
+    }
+}
@@ -6,8 +6,7 @@ package src;
  * It's valid and expected for the solver to generate invalid moves, that's an integral part of the backtracking algorithm
  * This exception is just a way to communicate that information back to the solver
  * 
- * Potential improvements:
- * - This might be an inefficient way to handle invalid moves, as exceptions can be costly in terms of performance
+ * Filling in a stack trace through the recursive propagation costs far more than the propagation itself, so boards used as scratch space by the search don't create one of these at all (see Board.setDiagnostics); they throw a single shared instance with no stack trace, message detail or location instead.
 */
 public class InvalidMoveException extends Throwable{
     private final String message;
@@ -18,6 +17,18 @@ public class InvalidMoveException extends Throwable{
         this.location = location;
     }
 
+    /**
+     * Create an exception that can skip recording a stack trace, e.g. one that's created once and thrown over and over
+     * @param message What was wrong with the move
+     * @param location Where the problem was found, or null if it isn't recorded
+     * @param writableStackTrace Whether to record a stack trace
+     */
+    InvalidMoveException(String message, Location location, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+        this.message = message;
+        this.location = location;
+    }
+
     public String getMessage() {
         return message;
     }
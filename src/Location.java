@@ -1,63 +1,32 @@
 package src;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
- * Container for all the data associated with a single grid square on a given board
- * 
- * Potential improvements:
- * - Reduce the size of the Location class by packing all the booleans together into a single value
- * - Reduce the size of the Location class by storing colors as bytes instead of Integers
- * - Reduce duplication of coordinate data by having the Board class provide coordinates based on array indices, so those don't have to be stored in each Location
+ * A view onto a single grid square on a given board
+ *
+ * The state itself is packed into the board's cell array; this class only holds the index of the cell it looks at, and exists so the GUI, the tests and the solver have something convenient to pass around.
+ * The connection logic lives in Board and works on cell indices directly, so the methods here that take a board just forward to it.
  */
 
 public class Location {
 
+    // The board this is a view onto, and the index of the cell within it
+    private final Board board;
+    private final int index;
+
     // Duplicate tracking of the coordinate at this location to make it easier to access its neighbors
     private final Coordinate coordinate;
 
-    // Whether there is a connection in each direction; Up, Down, Left, Right. Duplicated in this location's neighbors
-    private final boolean[] connections = new boolean[4];
-
-    // This is an index because the actual colors are sometimes not resolved until later. Uses Integer for nullability
-    private Integer colorIndex;
-
-    // Whether this Location is a start or end point; start and end points can only have one connection as opposed to two
-    private final boolean isStart;
-
-    // Whether this location has been edited since its connections were last checked. If so, it needs to propagate connection checks to its neighbors.
-    private boolean edited = false;
-
     /**
-     * @param c Coordinate of this location
-     * @param colorIndex Index of this location's color; null if color unresolved
-     * @param isStart Whether this is a starting location
-     */
-    public Location(Coordinate c, Integer colorIndex, boolean isStart) {
-        this.coordinate = c;
-        this.colorIndex = colorIndex;
-        this.isStart = isStart;
-        for (int i = 0; i < connections.length; i++) {
-            connections[i] = false;
-        }
-    }
-
-    /**
-     * Copy constructor
-     * @param other Location to copy
+     * @param board Board containing this location
+     * @param index Row-major index of this location's cell within the board
      */
-    public Location(Location other) {
-        this.coordinate = other.coordinate;
-        this.colorIndex = other.colorIndex;
-        this.isStart = other.isStart;
-        this.connections[0] = other.connections[0];
-        this.connections[1] = other.connections[1];
-        this.connections[2] = other.connections[2];
-        this.connections[3] = other.connections[3];
+    Location(Board board, int index) {
+        this.board = board;
+        this.index = index;
+        this.coordinate = board.getCoordinate(index);
     }
 
-    // TODO broader documentation on the connection logic
-
     /**
      * Connect this location to another location in the given direction; mark the "edited" flag as appropriate and resolve the color propagation
      * @param direction Direction to connect in
@@ -67,18 +36,13 @@ public class Location {
      */
     public void connectTo(Coordinate direction, Location other, Board board) throws InvalidMoveException {
 
-        int index = Coordinate.toIndex(direction);
-        if (index == -1) {
+        int dirIndex = Coordinate.toIndex(direction);
+        if (dirIndex == -1) {
             System.err.println("Invalid connection direction: " + direction);
             return;
         }
 
-        connections[index] = true;
-        other.connections[Coordinate.getOppositeIndex(index)] = true;
-        other.edited = true;
-        if (colorIndex != other.getColorIndex()) {
-            other.updateColor(board);
-        }
+        board.connect(index, dirIndex, other.index);
     }
 
     /**
@@ -87,45 +51,7 @@ public class Location {
      * @throws InvalidMoveException if a color conflict is detected (e.g. two connected locations have different colors)
      */
     public void updateColor(Board board) throws InvalidMoveException {
-
-        // Check each connected direction
-        for (int i = 0; i < connections.length; i++) {
-            if (!connections[i]) {
-                continue; 
-            }
-
-            Coordinate direction = Coordinate.DIRECTIONS[i];
-            Location other = board.getLocation(coordinate.add(direction));
-            
-            if (colorIndex == null && other.getColorIndex() != null) {
-                // Take the color of the connected location
-                setColorIndex(other.getColorIndex());
-
-                // Check again in case there's another location that can propagate the color further but that was already checked
-                updateColor(board); 
-                
-                // There's an edge case where this forces a new connection, if there's only one possible candidate to connect to with a matching color
-                if (getRemainingConnections() > 0) {
-                    edited = true;
-                    registerUpdate(board);
-                }
-            } else if (colorIndex != null && other.getColorIndex() == null) {
-                // Propagate this location's color to the connected location
-                other.setColorIndex(colorIndex);
-
-                // Propagate the color updates through the neighbor to its neighbors, etc
-                other.updateColor(board);
-
-                // Similarly, this might force a new connection as well
-                if (other.getRemainingConnections() > 0) {
-                    other.edited = true;
-                    other.registerUpdate(board);
-                }
-            } else if (colorIndex != null && other.getColorIndex() != null && !colorIndex.equals(other.getColorIndex())) {
-                // It's an error if two connected locations have different colors 
-                throw new InvalidMoveException("Color conflict", this);
-            }
-        }
+        board.updateColor(index);
     }
 
     /**
@@ -134,65 +60,7 @@ public class Location {
      * @throws InvalidMoveException If an invalid move is detected
      */
     public void checkConnections(Board board) throws InvalidMoveException {
-
-        if (getRemainingConnections() == 0) {
-            // Can't connect to anything else; exit early
-            return;
-        }
-
-        int remainingConnections = getRemainingConnections();
-
-        // Get a list of directions that cannot be connected to
-        ArrayList<Coordinate> blockedDirections = new ArrayList<>();
-        for (Coordinate dir : Coordinate.DIRECTIONS) {
-            if (isBlockingConnection(dir, board)) {
-                blockedDirections.add(dir);
-            }
-        }
-
-        // Flag for whether another location was edited as a result of this check
-        boolean editedOther = false;
-
-        if (4 - blockedDirections.size() == remainingConnections) {
-            // If this location has to make exactly as many connections as there are open options, we know it has to connect to all of them
-            
-            for (Coordinate dir : Coordinate.DIRECTIONS) {
-                if (!blockedDirections.contains(dir)) {
-                    Location other = board.getLocation(coordinate.add(dir));
-                    connectTo(dir, other, board);
-                    editedOther = true;
-                }
-            }
-        } else if (4 - blockedDirections.size() > remainingConnections) {
-            // Even if this location has more options than connections to make, it can still be proved that it has to connect to another of the same color, which can only be the "loose end" of a path coming from the other start location of that color
-
-            for (Coordinate dir : Coordinate.DIRECTIONS) {
-                if (!blockedDirections.contains(dir) && !connections[Coordinate.toIndex(dir)]) {
-                    Location other = board.getLocation(coordinate.add(dir));
-                    if (this.colorIndex == other.getColorIndex() && this.colorIndex != null) {
-                        connectTo(dir, other, board);
-                        editedOther = true;
-                        break; // There can only ever be one of these
-                    }
-                }
-            }
-        } else {
-            // Fewer options left than connections that need to be made; implies an invalid move or an improperly-formatted board
-            throw new InvalidMoveException("Overconstrained location", this);
-        }
-
-        // Propagate updates to neighbors if any new connections were made
-        if (edited || editedOther) {
-            // We have to check all the directions because a new connection here might make it invalid for a neighbor to connect here, which might force that neighbor to connect somewhere else
-            for (Coordinate dir : Coordinate.DIRECTIONS) {
-                Coordinate newCoordinate = coordinate.add(dir);
-                if (newCoordinate.isInBounds(board)) {
-                    board.getLocation(newCoordinate).registerUpdate(board);
-                }
-            }
-        }
-
-        edited = false; // Reset the edited flag
+        board.checkConnections(index);
     }
 
     /**
@@ -201,25 +69,7 @@ public class Location {
      * @return If this location has X valid directions to connect to and Y remaining connections, returns X choose Y
      */
     public int countMoveCombinations(Board board) {
-        int validDirs = 0;
-        int remainingConnections = getRemainingConnections();
-        for (Coordinate dir : Coordinate.DIRECTIONS) {
-            if (!isBlockingConnection(dir, board)) {
-                validDirs++;
-            }
-        }
-        
-        // Calculate the combinations up to 2; that's all that's ever possible under the current setup
-        if (remainingConnections == 1) {
-            return validDirs;
-        } else if (remainingConnections == 2) {
-            // Combinations of 2 from validDirs
-            return validDirs * (validDirs - 1) / 2;
-        } else {
-            // Something has gone wrong
-            System.err.println("Unexpected number of remaining connections");
-            return 99999;
-        }
+        return board.countMoveCombinations(index);
     }
 
     /**
@@ -229,9 +79,10 @@ public class Location {
      */
     public ArrayList<Move> getValidMoves(Board board) {
         ArrayList<Move> validMoves = new ArrayList<>(4);
-        for (Coordinate dir : Coordinate.DIRECTIONS) {
-            if (!isBlockingConnection(dir, board)) {
-                validMoves.add(new Move(coordinate, dir, board));
+        int blocked = board.getBlockedDirections(index);
+        for (int dir = 0; dir < Coordinate.DIRECTIONS.length; dir++) {
+            if ((blocked & (1 << dir)) == 0) {
+                validMoves.add(new Move(coordinate, Coordinate.DIRECTIONS[dir], 0));
             }
         }
         return validMoves;
@@ -243,9 +94,57 @@ public class Location {
      * @return An arraylist of arrays of moves, each array representing a valid combination of moves from this location
      */
     public ArrayList<Move[]> getValidMoveCombinations(Board board) {
+        return getValidMoveCombinations(board, getValidMoves(board));
+    }
+
+    /**
+     * Get a list of all valid move combinations from this location, scored by the given heuristic and with the highest-scoring combinations first
+     * @param board The board containing this location
+     * @param heuristic The heuristic to score the moves with
+     * @return An arraylist of arrays of moves, each array representing a valid combination of moves from this location, in descending order of total score
+     */
+    public ArrayList<Move[]> getValidMoveCombinations(Board board, Heuristic heuristic) {
+        ArrayList<Move> validMoves = new ArrayList<>(4);
+        boolean scored = false;
+        int blocked = board.getBlockedDirections(index);
+        for (int dir = 0; dir < Coordinate.DIRECTIONS.length; dir++) {
+            if ((blocked & (1 << dir)) == 0) {
+                int score = heuristic.scoreMove(this, Coordinate.DIRECTIONS[dir], board);
+                validMoves.add(new Move(coordinate, Coordinate.DIRECTIONS[dir], score));
+                scored |= score != 0;
+            }
+        }
+
+        ArrayList<Move[]> combinations = getValidMoveCombinations(board, validMoves);
+        if (scored) {
+            // Stable, so equal scores stay in direction order
+            combinations.sort((a, b) -> Integer.compare(totalScore(b), totalScore(a)));
+        }
+        return combinations;
+    }
+
+    /**
+     * Get the total score of a combination of moves
+     * @param combination The moves
+     * @return The sum of their scores
+     */
+    private static int totalScore(Move[] combination) {
+        int total = 0;
+        for (Move move : combination) {
+            total += move.getScore();
+        }
+        return total;
+    }
+
+    /**
+     * Put together every combination of the given valid moves that makes up this location's remaining connections
+     * @param board The board containing this location
+     * @param validMoves The valid moves from this location
+     * @return An arraylist of arrays of moves, each array representing a valid combination of moves from this location
+     */
+    private ArrayList<Move[]> getValidMoveCombinations(Board board, ArrayList<Move> validMoves) {
         ArrayList<Move[]> combinations = new ArrayList<>();
-        ArrayList<Move> validMoves = getValidMoves(board);
-        int comboSize = getRemainingConnections();
+        int comboSize = board.getRemainingConnections(index);
 
         if (comboSize == 1) {
             // Just return the valid moves
@@ -262,7 +161,7 @@ public class Location {
             // Something has gone wrong
             System.err.println("Unexpected number of remaining connections");
         }
-        
+
         return combinations;
     }
 
@@ -273,35 +172,7 @@ public class Location {
      * @return True if the connection is blocked, false otherwise
      */
     public boolean isBlockingConnection(Coordinate direction, Board board) {
-
-        if (connections[Coordinate.toIndex(direction)]) {
-            // Blocked because already connected
-            return true;
-        }
-
-        Coordinate newCoordinate = coordinate.add(direction);
-        if (!newCoordinate.isInBounds(board)) {
-            // Blocked because out of bounds
-            return true;
-        }
-
-        Location other = board.getLocation(newCoordinate);
-        if (colorIndex != null && other.getColorIndex() != null && !colorIndex.equals(other.getColorIndex())) {
-            // Blocked because different colors
-            return true;
-        }
-
-        if (other.countConnections() >= other.getMaxConnections()) {
-            // Blocked because other location is already full
-            return true;
-        }
-     
-        if (isUTurn(direction, other, board)) {
-            // Blocked because this would make a U-turn
-            return true;
-        }
-
-        return false; 
+        return board.isBlockingConnection(index, Coordinate.toIndex(direction));
     }
 
     /**
@@ -312,57 +183,7 @@ public class Location {
      * @return True if the connection would create a U-turn, false otherwise
      */
     public boolean isUTurn(Coordinate direction, Location other, Board board) {
-        
-        Coordinate leftOffset = Coordinate.leftTurn(direction);
-        Coordinate leftCoordinate = coordinate.add(leftOffset);
-        Coordinate leftCorner = leftCoordinate.add(direction);
-        int dirIndex = Coordinate.toIndex(direction);
-        int leftIndex = Coordinate.toIndex(leftOffset);
-
-        // Check if this makes a U-turn to the left
-        if (leftCoordinate.isInBounds(board) && leftCorner.isInBounds(board)) {
-
-            // Check for a U-shaped connection of any color
-            Location leftNeighbor = board.getLocation(leftCoordinate);
-            if (connections[leftIndex] && (leftNeighbor.getConnections()[dirIndex] || other.getConnections()[leftIndex])) {
-                return true;
-            } else if (other.getConnections()[leftIndex] && leftNeighbor.getConnections()[dirIndex]) {
-                return true;
-            }
-
-            // Check for a 2x2 square of the same color, regardless of connections
-            Location leftCornerNeighbor = board.getLocation(other.getCoordinate().add(leftOffset));
-            if (this.colorIndex != null && this.colorIndex.equals(other.getColorIndex())
-                && this.colorIndex.equals(leftNeighbor.getColorIndex())
-                && this.colorIndex.equals(leftCornerNeighbor.getColorIndex())) {
-                return true;
-            }
-        }
-
-        Coordinate rightOffset = Coordinate.rightTurn(direction);
-        Coordinate rightCoordinate = coordinate.add(rightOffset);
-        Coordinate rightCorner = rightCoordinate.add(direction);
-        int rightIndex = Coordinate.toIndex(rightOffset);
-
-        // Check if this makes a U-turn to the right
-        if (rightCoordinate.isInBounds(board) && rightCorner.isInBounds(board)) {
-
-            Location rightNeighbor = board.getLocation(rightCoordinate);
-            if (connections[rightIndex] && (rightNeighbor.getConnections()[dirIndex] || other.getConnections()[rightIndex])) {
-                return true;
-            } else if (other.getConnections()[rightIndex] && rightNeighbor.getConnections()[dirIndex]) {
-                return true;
-            }
-
-            Location rightCornerNeighbor = board.getLocation(other.getCoordinate().add(rightOffset));
-            if (this.colorIndex != null && this.colorIndex.equals(other.getColorIndex())
-                && this.colorIndex.equals(rightNeighbor.getColorIndex())
-                && this.colorIndex.equals(rightCornerNeighbor.getColorIndex())) {
-                return true;
-            }
-        }
-        
-        return false;
+        return board.isUTurn(index, Coordinate.toIndex(direction), other.index);
     }
 
     /**
@@ -373,12 +194,21 @@ public class Location {
         return coordinate;
     }
 
+    /**
+     * Get the row-major index of this location's cell within its board
+     * @return The index of this location
+     */
+    public int getIndex() {
+        return index;
+    }
+
     /**
      * Get the color index of this location; null if unresolved
      * @return The color index of this location
      */
     public Integer getColorIndex() {
-        return colorIndex;
+        int colorIndex = board.getColor(index);
+        return colorIndex == Board.NO_COLOR ? null : colorIndex;
     }
 
     /**
@@ -386,14 +216,18 @@ public class Location {
      * @param colorIndex The new color index of this location
      */
     public void setColorIndex(Integer colorIndex) {
-        this.colorIndex = colorIndex;
+        board.setColor(index, colorIndex == null ? Board.NO_COLOR : colorIndex);
     }
 
     /**
-     * Get the connections array, where each index corresponds to a direction (0=Up, 1=Down, 2=Left, 3=Right)
+     * Get a copy of the connections, where each index corresponds to a direction (0=Up, 1=Down, 2=Left, 3=Right)
      * @return The connections array
      */
     public boolean[] getConnections() {
+        boolean[] connections = new boolean[4];
+        for (int dir = 0; dir < connections.length; dir++) {
+            connections[dir] = board.hasConnection(index, dir);
+        }
         return connections;
     }
 
@@ -402,7 +236,7 @@ public class Location {
      * @param edited
      */
     public void setEdited(boolean edited) {
-        this.edited = edited;
+        board.setEdited(index, edited);
     }
 
     /**
@@ -410,13 +244,7 @@ public class Location {
      * @return The number of connections
      */
     public int countConnections() {
-        int count = 0;
-        for (Boolean connection : connections) {
-            if (connection) {
-                count++;
-            }
-        }
-        return count;
+        return board.countConnections(index);
     }
 
     /**
@@ -424,7 +252,7 @@ public class Location {
      * @return The number of remaining connections
      */
     public int getRemainingConnections() {
-        return getMaxConnections() - countConnections();
+        return board.getRemainingConnections(index);
     }
 
     /**
@@ -432,29 +260,7 @@ public class Location {
      * @return True if this location is a start or end point, false otherwise
      */
     public boolean isStart() {
-        return isStart;
-    }
-
-    /**
-     * Get the maximum number of connections this location can have; 1 if it's a start/end point, 2 otherwise
-     * @return
-     */
-    private int getMaxConnections() {
-        if (isStart) {
-            return 1;
-        } else {
-            return 2;
-        }
-    }
-
-    /**
-     * Add this location to the board's update queue
-     * @param board The board containing this location
-     */
-    private void registerUpdate(Board board) {
-        if (!board.updatesScheduled.contains(this)) {
-            board.updatesScheduled.add(this);
-        }
+        return board.isStart(index);
     }
 
     /**
@@ -462,7 +268,7 @@ public class Location {
      */
     @Override
     public String toString() {
-        return "Loc:{" + coordinate.toString() + ", colorIndex=" + colorIndex + "}";
+        return "Loc:{" + coordinate.toString() + ", colorIndex=" + getColorIndex() + "}";
     }
 
     /**
@@ -471,10 +277,6 @@ public class Location {
      * @return True if the locations differ, false otherwise
      */
     public boolean getDiff(Location other) {
-
-        if (Arrays.equals(connections, other.connections) && colorIndex == other.colorIndex) {
-            return false;
-        }
-        return true;
+        return board.isDifferent(index, other.board);
     }
-}
\ No newline at end of file
+}
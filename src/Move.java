@@ -1,8 +1,8 @@
 package src;
 
 /**
- * Represents a move in the game, defined by a starting coordinate, a direction, and an evaluated score.
- * Right now, this is just a data structure, but, in the future, it might be expanded to evaluate move quality as well.
+ * Represents a move in the game, defined by a starting coordinate, a direction, and a score.
+ * Moves created for the search are scored by the solve's Heuristic (see Location.getValidMoveCombinations); moves created anywhere else, such as replayed or listed moves, have a score of 0.
  */
 
 public class Move {
@@ -10,15 +10,16 @@ public class Move {
     private final Coordinate direction;
     private final int score;
 
-    public Move(Coordinate start, Coordinate direction, Board board) {
+    /**
+     * Create a move that's already been scored, e.g. by a Heuristic
+     * @param start The coordinate the move starts from
+     * @param direction The direction of the move
+     * @param score The score of the move; higher scores are tried first
+     */
+    public Move(Coordinate start, Coordinate direction, int score) {
         this.start = start;
         this.direction = direction;
-        this.score = Move.evaluateMove(start, direction, board);
-    }
-
-    static int evaluateMove(Coordinate start, Coordinate direction, Board board) {
-        // Not yet implemented
-        return 0;
+        this.score = score;
     }
 
     public Coordinate getStart() {
@@ -0,0 +1,122 @@
+package src;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed adjacency for every cell of a board of a given size, so the connection logic can walk the grid with plain array lookups instead of doing coordinate arithmetic (and allocating a Coordinate) for every neighbor it looks at.
+ *
+ * For each cell and direction this holds the index of the neighbor in that direction, and the index of the diagonal corner cell on either side of it, which is what the U-turn check needs; -1 wherever that would be off the board.
+ * It also holds the coordinate of every cell, so that views and moves can share them rather than making new ones.
+ *
+ * The tables only depend on the dimensions, so there is one shared instance per board size, and every board of that size (including all the copies the solver makes) points at the same one.
+ */
+
+final class NeighborTable {
+
+    // One table per board size, shared between every board of that size
+    private static final ConcurrentHashMap<Long, NeighborTable> TABLES = new ConcurrentHashMap<>();
+
+    // Neighbor of each cell in each direction, at [index * 4 + direction]
+    private final int[] neighbors;
+
+    // Corner cell on the left/right-turn side of each neighbor, at [index * 4 + direction]; i.e. one step in the turned direction, then one step in the original direction
+    private final int[] leftCorners;
+    private final int[] rightCorners;
+
+    // Coordinate of each cell, in row-major order
+    private final Coordinate[] coordinates;
+
+    /**
+     * @param width The width of the board
+     * @param height The height of the board
+     */
+    private NeighborTable(int width, int height) {
+        int size = width * height;
+        neighbors = new int[size * 4];
+        leftCorners = new int[size * 4];
+        rightCorners = new int[size * 4];
+        coordinates = new Coordinate[size];
+
+        for (int index = 0; index < size; index++) {
+            coordinates[index] = new Coordinate(index / width, index % width);
+        }
+        for (int index = 0; index < size; index++) {
+            for (int dir = 0; dir < 4; dir++) {
+                neighbors[index * 4 + dir] = step(width, height, index, dir);
+            }
+        }
+        for (int index = 0; index < size; index++) {
+            for (int dir = 0; dir < 4; dir++) {
+                leftCorners[index * 4 + dir] = corner(index, dir, Coordinate.leftTurnIndex(dir));
+                rightCorners[index * 4 + dir] = corner(index, dir, Coordinate.rightTurnIndex(dir));
+            }
+        }
+    }
+
+    /**
+     * Get the shared table for boards of the given size, building it the first time it's asked for
+     * @param width The width of the board
+     * @param height The height of the board
+     * @return The table for boards of that size
+     */
+    static NeighborTable forSize(int width, int height) {
+        return TABLES.computeIfAbsent(((long) width << 32) | height, key -> new NeighborTable(width, height));
+    }
+
+    /**
+     * Work out the neighbor of a cell in the given direction from its row and column; only used while building the table
+     * @return The index of the neighbor, or -1 if it would be out of bounds
+     */
+    private static int step(int width, int height, int index, int direction) {
+        Coordinate offset = Coordinate.DIRECTIONS[direction];
+        int row = index / width + offset.getRow();
+        int col = index % width + offset.getCol();
+        if (row < 0 || col < 0 || row >= height || col >= width) {
+            return -1;
+        }
+        return row * width + col;
+    }
+
+    /**
+     * Work out a corner cell from the neighbor tables; only used while building the table
+     * @return The index of the cell one step to the given side and then one step in the given direction, or -1 if it would be out of bounds
+     */
+    private int corner(int index, int direction, int side) {
+        int neighbor = neighbors[index * 4 + side];
+        return neighbor == -1 ? -1 : neighbors[neighbor * 4 + direction];
+    }
+
+    /**
+     * @param index Index of the cell
+     * @param direction Index of the direction
+     * @return The index of the neighbor in that direction, or -1 if it would be out of bounds
+     */
+    int getNeighbor(int index, int direction) {
+        return neighbors[index * 4 + direction];
+    }
+
+    /**
+     * @param index Index of the cell
+     * @param direction Index of the direction of the connection
+     * @return The index of the corner cell diagonally across the connection on its left-turn side, or -1 if it would be out of bounds
+     */
+    int getLeftCorner(int index, int direction) {
+        return leftCorners[index * 4 + direction];
+    }
+
+    /**
+     * @param index Index of the cell
+     * @param direction Index of the direction of the connection
+     * @return The index of the corner cell diagonally across the connection on its right-turn side, or -1 if it would be out of bounds
+     */
+    int getRightCorner(int index, int direction) {
+        return rightCorners[index * 4 + direction];
+    }
+
+    /**
+     * @param index Index of the cell
+     * @return The shared coordinate of the cell
+     */
+    Coordinate getCoordinate(int index) {
+        return coordinates[index];
+    }
+}
@@ -0,0 +1,171 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The search behind isDeadly, split into fork/join subtasks so that a single deep refutation can use the whole pool rather than one thread of it.
+ *
+ * A board is deadly if any of its open locations has every combination deadly, so the locations are searched as one task each, and each location's combinations as one task each.
+ * Two kinds of result settle things early, and cancel every sibling still running once they're known: a combination that isn't deadly proves its location safe, and a location with every combination deadly proves the whole board deadly.
+ * The result is always the one the sequential search would give; only which parts of the search get done, and so the metrics and what ends up in the transposition table, can differ.
+ *
+ * Every task works on its own copy of the board, since the sequential search backtracks through a single board's undo log; that copying is why only the levels with the most work under them are split (see SolverOptions.setParallelRefutationDepth), and everything below them runs the ordinary search on the thread that picked up the task.
+ * Subtasks are forked into whatever pool the calling thread belongs to, which for a parallel solve is the one in the options, so idle workers steal them from the ones doing the refutations.
+ */
+
+class ParallelRefutation {
+
+    /**
+     * Check whether any of a board's open locations is left with no combination that isn't deadly, searching them all concurrently
+     * @param board The board to check; only read, never modified, while the search runs
+     * @param locations The open locations of the board, in the order the sequential search would check them
+     * @param depthLimit The depth limit for the search
+     * @param context The state of the search this is part of; once it's cancelled, the result is meaningless
+     * @return True if the board is deadly, false otherwise
+     */
+    static boolean searchLocations(Board board, List<Location> locations, int depthLimit, SearchContext context) {
+        // Working out the combinations touches the board's caches, so it's done here, before any other thread can be reading it
+        Heuristic heuristic = context.getOptions().getHeuristic();
+        ArrayList<ArrayList<Move[]>> combos = new ArrayList<>(locations.size());
+        for (Location loc : locations) {
+            ArrayList<Move[]> moveCombos = loc.getValidMoveCombinations(board, heuristic);
+            if (moveCombos.isEmpty()) {
+                return true; // No valid move combinations from this location, so there's nothing to search
+            }
+            combos.add(moveCombos);
+        }
+
+        AtomicBoolean deadly = new AtomicBoolean(false);
+        SearchContext boardContext = context.withCancellation(deadly::get);
+        ArrayList<LocationTask> tasks = new ArrayList<>(combos.size());
+        for (ArrayList<Move[]> moveCombos : combos) {
+            tasks.add(new LocationTask(board, moveCombos, depthLimit, boardContext, deadly));
+        }
+        invokeAll(tasks, context.getOptions().getPool());
+        return deadly.get();
+    }
+
+    /**
+     * Run a group of tasks to completion, in the calling thread's pool if it's part of one and in the given pool otherwise
+     * @param tasks The tasks to run
+     * @param pool The pool to use from outside a pool
+     */
+    private static void invokeAll(List<? extends ForkJoinTask<?>> tasks, ForkJoinPool pool) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks whether a single location has any combination that isn't deadly, marking the board deadly if it doesn't
+     */
+    private static class LocationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final ArrayList<Move[]> combos;
+        private final int depthLimit;
+        private final SearchContext context;
+
+        // Set once any location is known to be left with no valid combination
+        private final AtomicBoolean deadly;
+
+        LocationTask(Board board, ArrayList<Move[]> combos, int depthLimit, SearchContext context, AtomicBoolean deadly) {
+            this.board = board;
+            this.combos = combos;
+            this.depthLimit = depthLimit;
+            this.context = context;
+            this.deadly = deadly;
+        }
+
+        @Override
+        protected void compute() {
+            if (context.isCancelled()) {
+                return;
+            }
+
+            AtomicBoolean safe = new AtomicBoolean(false);
+            SearchContext locationContext = context.withCancellation(safe::get);
+            ArrayList<ComboTask> tasks = new ArrayList<>(combos.size());
+            for (Move[] combo : combos) {
+                tasks.add(new ComboTask(board, combo, depthLimit, locationContext, safe));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            // A combination that was cancelled reports that it isn't deadly, so this only counts the ones that were searched through and really are
+            for (ComboTask task : tasks) {
+                if (!task.join()) {
+                    return;
+                }
+            }
+            deadly.set(true);
+        }
+    }
+
+    /**
+     * Checks whether a single combination of moves from a location leads to a deadly board, marking its location safe if it doesn't
+     */
+    private static class ComboTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final Move[] combo;
+        private final int depthLimit;
+        private final SearchContext context;
+
+        // Set once any combination from the same location is known not to be deadly
+        private final AtomicBoolean safe;
+
+        ComboTask(Board board, Move[] combo, int depthLimit, SearchContext context, AtomicBoolean safe) {
+            this.board = board;
+            this.combo = combo;
+            this.depthLimit = depthLimit;
+            this.context = context;
+            this.safe = safe;
+        }
+
+        /**
+         * @return True if the combination is invalid or leads to a deadly board; false if it doesn't, or if the search was cancelled before finding out
+         */
+        @Override
+        protected Boolean compute() {
+            if (context.isCancelled()) {
+                return false;
+            }
+
+            SolverMetrics.Depth depthMetrics = context.getDepthMetrics();
+            Board testBoard = new Board(board);
+            context.getMetrics().recordBoardsCreated(1);
+            testBoard.setTrailing(true);
+            testBoard.setDiagnostics(false);
+            if (!testBoard.tryApplyMoves(combo)) {
+                depthMetrics.recordInvalidCombo();
+                depthMetrics.recordPropagationSteps(testBoard.getPropagationSteps());
+                return true;
+            }
+
+            // Deepen the search to see if this move leads to a dead end
+            boolean deadly = Solver.isDeadly(testBoard, depthLimit - 1, combo[0].getStart(), context);
+            depthMetrics.recordPropagationSteps(testBoard.getPropagationSteps());
+            if (deadly) {
+                depthMetrics.recordDeadlyCombo();
+            } else if (!context.isCancelled()) {
+                safe.set(true);
+            }
+            return deadly;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package src;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Random access to the puzzles in an archive file like boards/imported.txt, where each puzzle is a line giving its width and height followed by that many rows of the grid.
+ *
+ * The file is memory-mapped and scanned once to find where each puzzle's rows start and how big it is, so after that any puzzle can be read without going through the ones before it.
+ * The result of the scan can also be kept in a sidecar index file, so that very large archives don't have to be scanned again every time they're opened; the index records the size and modification time of the archive it was built from, and is rebuilt if either has changed.
+ *
+ * Puzzles can be read one at a time by index, or all in order with iterator() or stream().
+ */
+
+public class PuzzleArchive implements Iterable<Board> {
+
+    // Identifies a sidecar index file, and the version of its layout
+    private static final int INDEX_MAGIC = 0x4E4C4958;
+    private static final int INDEX_VERSION = 1;
+
+    // Archives opened through Board(String, int), so loading a whole archive one board at a time only scans it once
+    private static final ConcurrentHashMap<String, PuzzleArchive> SHARED = new ConcurrentHashMap<>();
+
+    private final Path path;
+
+    // The whole archive, mapped read-only
+    private final MappedByteBuffer data;
+
+    // Size and modification time of the archive when it was opened, to tell whether a cached copy or an index file is stale
+    private final long fileSize;
+    private final long lastModified;
+
+    // For each puzzle, the offset of its first row, and its dimensions
+    private final long[] offsets;
+    private final int[] widths;
+    private final int[] heights;
+
+    /**
+     * Open an archive, scanning it to find the puzzles
+     * @param archivePath The path to the archive file
+     * @throws IOException If the archive can't be read
+     */
+    public PuzzleArchive(String archivePath) throws IOException {
+        this(archivePath, null);
+    }
+
+    /**
+     * Open an archive, using a sidecar index file to avoid scanning it where possible
+     * @param archivePath The path to the archive file
+     * @param indexPath The path to the index file; it's read if it exists and matches the archive, and (re)written otherwise. May be null to always scan and not keep an index
+     * @throws IOException If the archive can't be read, or the index can't be written
+     */
+    public PuzzleArchive(String archivePath, String indexPath) throws IOException {
+        this.path = Path.of(archivePath);
+        this.fileSize = Files.size(path);
+        this.lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Archive is too large to map: " + archivePath);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        long[][] index = indexPath == null ? null : readIndex(indexPath);
+        if (index == null) {
+            index = scan();
+            if (indexPath != null) {
+                writeIndex(indexPath, index);
+            }
+        }
+
+        int count = index[0].length;
+        this.offsets = index[0];
+        this.widths = new int[count];
+        this.heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = (int) index[1][i];
+            heights[i] = (int) index[2][i];
+        }
+    }
+
+    /**
+     * Get an archive shared between every caller that asks for the same path, opening it the first time and again whenever the file changes
+     * @param archivePath The path to the archive file
+     * @return The archive
+     * @throws UncheckedIOException If the archive can't be read
+     */
+    static PuzzleArchive getShared(String archivePath) {
+        return SHARED.compute(archivePath, (key, archive) -> {
+            try {
+                if (archive != null && !archive.isStale()) {
+                    return archive;
+                }
+                return new PuzzleArchive(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Check whether the archive file has changed since it was opened
+     * @return True if the file's size or modification time is different
+     * @throws IOException If the file can't be read
+     */
+    private boolean isStale() throws IOException {
+        return Files.size(path) != fileSize || Files.getLastModifiedTime(path).toMillis() != lastModified;
+    }
+
+    /**
+     * Find every puzzle in the archive in a single pass over the mapped file
+     * @return The offset of the first row, width and height of each puzzle, as three parallel arrays
+     */
+    private long[][] scan() {
+        LongList offsets = new LongList();
+        LongList widths = new LongList();
+        LongList heights = new LongList();
+
+        int limit = data.limit();
+        int position = 0;
+        while (position < limit) {
+            int end = findLineEnd(position);
+            if (end > position && Character.isDigit(data.get(position))) {
+                // A header line; the width and height are separated by a space
+                String[] parts = readLine(position, end).trim().split(" ");
+                int width = Integer.parseInt(parts[0]);
+                int height = Integer.parseInt(parts[1]);
+                int rowsStart = nextLine(end);
+                offsets.add(rowsStart);
+                widths.add(width);
+                heights.add(height);
+
+                // Skip over the rows, so nothing in them can be taken for a header
+                position = rowsStart;
+                for (int row = 0; row < height && position < limit; row++) {
+                    position = nextLine(findLineEnd(position));
+                }
+            } else {
+                position = nextLine(end);
+            }
+        }
+
+        return new long[][] {offsets.toArray(), widths.toArray(), heights.toArray()};
+    }
+
+    /**
+     * Read the sidecar index file, if it exists and was built from the archive as it is now
+     * @param indexPath The path to the index file
+     * @return The index, in the same form as scan(), or null if there's no usable index
+     */
+    private long[][] readIndex(String indexPath) {
+        if (!Files.isRegularFile(Path.of(indexPath))) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexPath)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION || in.readLong() != fileSize || in.readLong() != lastModified) {
+                return null;
+            }
+            int count = in.readInt();
+            long[][] index = new long[3][count];
+            for (int i = 0; i < count; i++) {
+                index[0][i] = in.readLong();
+                index[1][i] = in.readInt();
+                index[2][i] = in.readInt();
+            }
+            return index;
+        } catch (IOException e) {
+            // A truncated or unreadable index is just rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Write the sidecar index file
+     * @param indexPath The path to the index file
+     * @param index The index, in the same form as scan()
+     * @throws IOException If the file can't be written
+     */
+    private void writeIndex(String indexPath, long[][] index) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexPath)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(index[0].length);
+            for (int i = 0; i < index[0].length; i++) {
+                out.writeLong(index[0][i]);
+                out.writeInt((int) index[1][i]);
+                out.writeInt((int) index[2][i]);
+            }
+        }
+    }
+
+    /**
+     * @return The number of puzzles in the archive
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @param index The index of the puzzle within the archive
+     * @return The width of the puzzle
+     */
+    public int getWidth(int index) {
+        checkIndex(index);
+        return widths[index];
+    }
+
+    /**
+     * @param index The index of the puzzle within the archive
+     * @return The height of the puzzle
+     */
+    public int getHeight(int index) {
+        checkIndex(index);
+        return heights[index];
+    }
+
+    /**
+     * Read the rows of a puzzle, in the form Board(String[]) takes
+     * @param index The index of the puzzle within the archive
+     * @return An array of strings, one per row of the puzzle
+     */
+    public String[] getRows(int index) {
+        checkIndex(index);
+
+        String[] rows = new String[heights[index]];
+        int position = (int) offsets[index];
+        for (int row = 0; row < rows.length; row++) {
+            if (position >= data.limit()) {
+                throw new IllegalStateException("Not enough lines in archive for board " + index + " of height " + rows.length);
+            }
+            int end = findLineEnd(position);
+            rows[row] = readLine(position, end);
+            position = nextLine(end);
+        }
+        return rows;
+    }
+
+    /**
+     * Read a puzzle as a new board, with every cell scheduled for an update
+     * @param index The index of the puzzle within the archive
+     * @return The puzzle's starting board
+     */
+    public Board getBoard(int index) {
+        return new Board(getRows(index));
+    }
+
+    /**
+     * Iterate over every puzzle in the archive in order, reading each one as it's reached
+     */
+    @Override
+    public Iterator<Board> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Board next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getBoard(next++);
+            }
+        };
+    }
+
+    /**
+     * Stream every puzzle in the archive in order, reading each one as it's reached
+     * @return A stream of the puzzles' starting boards
+     */
+    public Stream<Board> stream() {
+        return IntStream.range(0, size()).mapToObj(this::getBoard);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= offsets.length) {
+            throw new IndexOutOfBoundsException("No board " + index + " in archive of " + offsets.length + " boards: " + path);
+        }
+    }
+
+    /**
+     * @param position Offset of the start of a line
+     * @return Offset of the line break ending that line (not including any carriage return), or the end of the file
+     */
+    private int findLineEnd(int position) {
+        int limit = data.limit();
+        int end = position;
+        while (end < limit && data.get(end) != '\n') {
+            end++;
+        }
+        if (end > position && data.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * @param lineEnd Offset returned by findLineEnd
+     * @return Offset of the start of the following line
+     */
+    private int nextLine(int lineEnd) {
+        int limit = data.limit();
+        if (lineEnd < limit && data.get(lineEnd) == '\r') {
+            lineEnd++;
+        }
+        return Math.min(lineEnd + 1, limit);
+    }
+
+    /**
+     * Decode a line of the archive; archives are plain ASCII
+     * @param start Offset of the start of the line
+     * @param end Offset of the end of the line
+     * @return The line's contents
+     */
+    private String readLine(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        data.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Minimal growable list of longs, so the scan doesn't box every offset
+     */
+    private static class LongList {
+        private long[] values = new long[256];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
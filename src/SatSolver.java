@@ -0,0 +1,405 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * An alternative backend to Solver that encodes the board as a boolean formula and hands it to a CDCL SAT solver (see CdclSolver), rather than searching for forced moves.
+ * The encoding follows the same rules the board enforces as moves are applied:
+ * - Every cell has exactly one of the colors of the starts, and the cells that already have a color keep it
+ * - Every edge between two neighboring cells is a variable; the edges already on the board are fixed
+ * - Starts have exactly one edge, and every other cell exactly two
+ * - Cells joined by an edge have the same color
+ * - No 2x2 square has three of its edges, the U-turn that isUTurn forbids, nor all four cells the same color
+ *
+ * None of that stops a path from closing into a loop that doesn't touch a start, so loops are ruled out lazily: each one found in a model is forbidden with a clause and the formula solved again.
+ * The model is then replayed onto the board a cell at a time, so the solution comes back as the same path of boards and move history as Solver.solveBoard gives.
+ * If the board refuses any of those moves, its rules have caught something the encoding missed; that model is forbidden as well, and the formula solved again.
+ *
+ * The SAT solver tends to beat the native search on big, open boards, where the forced moves need deep searches to find, and to lose on small ones, where encoding the board costs more than solving it.
+ * SolverOptions.Backend.PORTFOLIO races the two against each other, so nobody has to guess which one a board wants.
+ */
+
+public class SatSolver {
+    /**
+     * Solve the given board with a SAT solver, returning a list of boards representing the solution path.
+     * @param board The board to solve
+     * @param moveHistory List in which to store the history of moves made to reach each board in the solution path
+     * @param options Settings for this solve; only the metrics, verbosity and time limit apply
+     * @return A list of boards representing the solution path; just the board itself if it has no solution or runs out of time
+     */
+    public static ArrayList<Board> solveBoard(Board board, ArrayList<Move[]> moveHistory, SolverOptions options) {
+        return solveBoard(board, moveHistory, options, SearchContext.deadline(options));
+    }
+
+    /**
+     * Solve the given board with a SAT solver, giving up if asked to
+     * @param board The board to solve
+     * @param moveHistory List in which to store the history of moves made to reach each board in the solution path
+     * @param options Settings for this solve; only the metrics and verbosity apply, and the caller takes care of the time limit
+     * @param cancelled Checked as the solve goes; once it returns true, the solve gives up and returns the board unsolved
+     * @return A list of boards representing the solution path; just the board itself if it has no solution or the solve gave up
+     */
+    static ArrayList<Board> solveBoard(Board board, ArrayList<Move[]> moveHistory, SolverOptions options, BooleanSupplier cancelled) {
+        SolverMetrics metrics = options.getMetrics() != null ? options.getMetrics() : new SolverMetrics();
+        ArrayList<Board> solution = new ArrayList<>();
+        solution.add(board);
+        moveHistory.add(new Move[]{}); // Add an empty array since the first board isn't generated by a move
+
+        Encoding encoding = new Encoding(board);
+        if (options.isVerbose()) {
+            System.out.println("Encoded board as " + encoding.sat.getVariableCount() + " variables and " + encoding.sat.getClauseCount() + " clauses");
+        }
+
+        try {
+            while (true) {
+                Boolean satisfiable = encoding.sat.solve(cancelled);
+                if (satisfiable == null || !satisfiable) {
+                    if (options.isVerbose()) {
+                        System.out.println(satisfiable == null ? "SAT solve cancelled" : "Board has no solution");
+                    }
+                    return solution;
+                }
+
+                // Rule out any loops, and solve again if there were some
+                if (encoding.forbidLoops()) {
+                    continue;
+                }
+
+                if (replay(encoding, solution, moveHistory, metrics)) {
+                    if (options.isVerbose()) {
+                        System.out.println("Board is solved! - " + encoding.sat.getConflicts() + " conflicts, " + encoding.sat.getDecisions() + " decisions");
+                    }
+                    return solution;
+                }
+
+                // The board disagreed with the model; throw it away and try another
+                solution.subList(1, solution.size()).clear();
+                moveHistory.subList(1, moveHistory.size()).clear();
+                encoding.forbidModel();
+            }
+        } finally {
+            metrics.recordSat(encoding.sat.getConflicts(), encoding.sat.getDecisions());
+        }
+    }
+
+    /**
+     * Apply the edges of a model to the board, one cell at a time in row-major order, adding a board to the solution path for each cell that needed any
+     * @param encoding The encoding, with a model that has no loops
+     * @param solution The solution path, holding just the starting board
+     * @param moveHistory The move history, holding just the starting board's empty entry
+     * @param metrics Where to count the boards created
+     * @return True if the board accepted every move and ended up solved
+     */
+    private static boolean replay(Encoding encoding, ArrayList<Board> solution, ArrayList<Move[]> moveHistory, SolverMetrics metrics) {
+        Board start = solution.get(0);
+        int width = start.getWidth();
+        int size = width * start.getHeight();
+
+        for (int index = 0; index < size; index++) {
+            Board current = solution.get(solution.size() - 1);
+            Move[] moves = new Move[4];
+            int count = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                if (encoding.hasEdge(index, dir) && !current.hasConnection(index, dir)) {
+                    moves[count++] = new Move(new Coordinate(index / width, index % width), Coordinate.DIRECTIONS[dir], 0);
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            Move[] combo = new Move[count];
+            System.arraycopy(moves, 0, combo, 0, count);
+            Board next = new Board(current);
+            metrics.recordBoardsCreated(1);
+            try {
+                next.applyMoves(combo);
+            } catch (InvalidMoveException e) {
+                return false;
+            }
+            solution.add(next);
+            moveHistory.add(combo);
+        }
+        return solution.get(solution.size() - 1).isSolved();
+    }
+
+    /**
+     * The CNF encoding of a single board, and the SAT solver holding it
+     */
+    private static class Encoding {
+        private final CdclSolver sat = new CdclSolver();
+        private final Board board;
+        private final int width;
+        private final int height;
+
+        // The color indices of the starts, in order of first appearance; the encoding refers to colors by their position in this list
+        private final int[] palette;
+
+        // Variable for each cell having each color of the palette, indexed by cell * palette.length + position
+        private final int[] colorVars;
+
+        // Variable for the edge from each cell in each direction, indexed by cell * 4 + direction; the same variable is shared by both ends, and zero means off the board
+        private final int[] edgeVars;
+
+        Encoding(Board board) {
+            this.board = board;
+            this.width = board.getWidth();
+            this.height = board.getHeight();
+            int size = width * height;
+
+            int[] colors = new int[size];
+            int colorCount = 0;
+            for (int i = 0; i < size; i++) {
+                int color = board.getColor(i);
+                if (board.isStart(i) && color != Board.NO_COLOR && indexOf(colors, colorCount, color) == -1) {
+                    colors[colorCount++] = color;
+                }
+            }
+            palette = new int[colorCount];
+            System.arraycopy(colors, 0, palette, 0, colorCount);
+
+            colorVars = new int[size * palette.length];
+            for (int i = 0; i < colorVars.length; i++) {
+                colorVars[i] = sat.newVariable();
+            }
+            edgeVars = new int[size * 4];
+            for (int i = 0; i < size; i++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    int other = board.getNeighbor(i, dir);
+                    if (other != -1 && edgeVars[i * 4 + dir] == 0) {
+                        int var = sat.newVariable();
+                        edgeVars[i * 4 + dir] = var;
+                        edgeVars[other * 4 + Coordinate.getOppositeIndex(dir)] = var;
+                    }
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                encodeColor(i);
+                encodeDegree(i);
+            }
+            for (int i = 0; i < size; i++) {
+                encodeEdges(i);
+                encodeSquare(i);
+            }
+        }
+
+        /**
+         * Every cell has exactly one color, and keeps the one it already has
+         * @param index Index of the cell
+         */
+        private void encodeColor(int index) {
+            int base = index * palette.length;
+            int[] atLeastOne = new int[palette.length];
+            for (int k = 0; k < palette.length; k++) {
+                atLeastOne[k] = colorVars[base + k];
+                for (int l = k + 1; l < palette.length; l++) {
+                    sat.addClause(-colorVars[base + k], -colorVars[base + l]);
+                }
+            }
+            sat.addClause(atLeastOne);
+
+            int color = board.getColor(index);
+            if (color != Board.NO_COLOR) {
+                int position = indexOf(palette, palette.length, color);
+                // A color without a start can't be part of any solution
+                sat.addClause(position == -1 ? new int[0] : new int[]{colorVars[base + position]});
+            }
+        }
+
+        /**
+         * Starts have exactly one edge and every other cell exactly two, counting the ones already on the board
+         * @param index Index of the cell
+         */
+        private void encodeDegree(int index) {
+            int[] edges = new int[4];
+            int count = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                int var = edgeVars[index * 4 + dir];
+                if (var != 0) {
+                    edges[count++] = var;
+                    if (board.hasConnection(index, dir)) {
+                        sat.addClause(var);
+                    }
+                }
+            }
+            int degree = board.isStart(index) ? 1 : 2;
+
+            // Every subset of the edges gives a clause: too many of them can't all be present, and enough of them can't all be absent
+            for (int subset = 0; subset < (1 << count); subset++) {
+                int bits = Integer.bitCount(subset);
+                if (bits != degree + 1 && bits != count - degree + 1) {
+                    continue;
+                }
+                int[] clause = new int[bits];
+                int n = 0;
+                for (int e = 0; e < count; e++) {
+                    if ((subset & (1 << e)) != 0) {
+                        clause[n++] = edges[e];
+                    }
+                }
+                if (bits == degree + 1) {
+                    // At most degree of them
+                    int[] negated = new int[bits];
+                    for (int e = 0; e < bits; e++) {
+                        negated[e] = -clause[e];
+                    }
+                    sat.addClause(negated);
+                }
+                if (bits == count - degree + 1) {
+                    // At least degree of them
+                    sat.addClause(clause);
+                }
+            }
+            if (count < degree) {
+                sat.addClause();
+            }
+        }
+
+        /**
+         * Cells joined by an edge have the same color; each edge is encoded from the cell above or to the left of it
+         * @param index Index of the cell
+         */
+        private void encodeEdges(int index) {
+            for (int dir : new int[]{1, 3}) {  // Down and Right
+                int edge = edgeVars[index * 4 + dir];
+                if (edge == 0) {
+                    continue;
+                }
+                int other = board.getNeighbor(index, dir);
+                for (int k = 0; k < palette.length; k++) {
+                    int a = colorVars[index * palette.length + k];
+                    int b = colorVars[other * palette.length + k];
+                    sat.addClause(-edge, -a, b);
+                    sat.addClause(-edge, -b, a);
+                }
+            }
+        }
+
+        /**
+         * No 2x2 square has three of its edges, nor all four of its cells the same color; each square is encoded from its top-left cell
+         * @param index Index of the top-left cell of the square
+         */
+        private void encodeSquare(int index) {
+            int right = board.getNeighbor(index, 3);
+            int down = board.getNeighbor(index, 1);
+            if (right == -1 || down == -1) {
+                return;
+            }
+            int corner = board.getNeighbor(right, 1);
+
+            int[] edges = {edgeVars[index * 4 + 3], edgeVars[index * 4 + 1], edgeVars[right * 4 + 1], edgeVars[down * 4 + 3]};
+            for (int skip = 0; skip < 4; skip++) {
+                int[] clause = new int[3];
+                int n = 0;
+                for (int e = 0; e < 4; e++) {
+                    if (e != skip) {
+                        clause[n++] = -edges[e];
+                    }
+                }
+                sat.addClause(clause);
+            }
+
+            for (int k = 0; k < palette.length; k++) {
+                sat.addClause(-colorVars[index * palette.length + k], -colorVars[right * palette.length + k],
+                    -colorVars[down * palette.length + k], -colorVars[corner * palette.length + k]);
+            }
+        }
+
+        /**
+         * Check whether the current model has an edge from a cell in a direction
+         * @param index Index of the cell
+         * @param direction Index of the direction
+         * @return True if the edge is present
+         */
+        boolean hasEdge(int index, int direction) {
+            int var = edgeVars[index * 4 + direction];
+            return var != 0 && sat.getValue(var);
+        }
+
+        /**
+         * Follow the path from every start in the current model, and forbid every loop left over
+         * @return True if there were any loops
+         */
+        boolean forbidLoops() {
+            int size = width * height;
+            boolean[] visited = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                if (board.isStart(i) && !visited[i]) {
+                    follow(i, visited, null);
+                }
+            }
+
+            boolean found = false;
+            for (int i = 0; i < size; i++) {
+                if (!visited[i]) {
+                    // Every cell has an edge, so anything not on a path from a start is on a loop
+                    ArrayList<Integer> loop = new ArrayList<>();
+                    follow(i, visited, loop);
+                    int[] clause = new int[loop.size()];
+                    for (int e = 0; e < clause.length; e++) {
+                        clause[e] = -loop.get(e);
+                    }
+                    sat.addClause(clause);
+                    found = true;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Walk along the edges of the current model from a cell until the path ends or comes back around, marking every cell on the way
+         * @param index Index of the cell to start from
+         * @param visited The cells visited so far
+         * @param edges If not null, where to add the variable of every edge walked along
+         */
+        private void follow(int index, boolean[] visited, ArrayList<Integer> edges) {
+            int previous = -1;
+            while (index != -1 && !visited[index]) {
+                visited[index] = true;
+                int next = -1;
+                for (int dir = 0; dir < 4; dir++) {
+                    int other = board.getNeighbor(index, dir);
+                    if (hasEdge(index, dir) && other != previous) {
+                        next = other;
+                        if (edges != null) {
+                            edges.add(edgeVars[index * 4 + dir]);
+                        }
+                        break;
+                    }
+                }
+                previous = index;
+                index = next;
+            }
+        }
+
+        /**
+         * Forbid the edges of the current model from all appearing together again
+         */
+        void forbidModel() {
+            ArrayList<Integer> clause = new ArrayList<>();
+            for (int i = 0; i < edgeVars.length; i++) {
+                int var = edgeVars[i];
+                // Each edge appears twice; only take it from the end where it points Down or Right
+                if (var != 0 && (i % 4 == 1 || i % 4 == 3) && sat.getValue(var)) {
+                    clause.add(-var);
+                }
+            }
+            int[] literals = new int[clause.size()];
+            for (int i = 0; i < literals.length; i++) {
+                literals[i] = clause.get(i);
+            }
+            sat.addClause(literals);
+        }
+
+        private static int indexOf(int[] values, int count, int value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package src;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The state shared by every part of a single search: the settings it was started with, the caches it builds up as it goes, and a way to tell it to stop early.
+ * Solver.solveBoard creates one of these per solve and passes it down through the search, so none of this has to live in static fields.
+ */
+
+class SearchContext {
+    // Cancellation check for searches that always run to completion
+    private static final BooleanSupplier NEVER_CANCELLED = () -> false;
+
+    private final SolverOptions options;
+
+    // Cache of isDeadly verdicts; null if disabled
+    private final TranspositionTable table;
+
+    // Counters for the work done by the search, and the ones for the depth limit of the iteration this part of the search belongs to
+    private final SolverMetrics metrics;
+    private final SolverMetrics.Depth depthMetrics;
+
+    // Which depth limit each round of the search starts at
+    private final DepthScheduler scheduler;
+
+    // Checked as the search goes; once it returns true, the search unwinds as quickly as possible and its result is meaningless
+    private final BooleanSupplier cancelled;
+
+    /**
+     * @param options Settings for the search; its time limit starts counting down now
+     */
+    SearchContext(SolverOptions options) {
+        this(options,
+            createTable(options),
+            options.getMetrics() != null ? options.getMetrics() : new SolverMetrics(),
+            0,
+            new DepthScheduler(options),
+            deadline(options));
+    }
+
+    private SearchContext(SolverOptions options, TranspositionTable table, SolverMetrics metrics, int depthLimit, DepthScheduler scheduler, BooleanSupplier cancelled) {
+        this.options = options;
+        this.table = table;
+        this.metrics = metrics;
+        this.depthMetrics = metrics.getDepth(depthLimit);
+        this.scheduler = scheduler;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Get the transposition table a solve should use
+     * @param options Settings for the solve
+     * @return The table the options supply, a new one of the configured size, or null if the table is disabled
+     */
+    private static TranspositionTable createTable(SolverOptions options) {
+        if (options.getTranspositionTable() != null) {
+            return options.getTranspositionTable();
+        }
+        return options.getTranspositionTableSize() > 0 ? new TranspositionTable(options.getTranspositionTableSize()) : null;
+    }
+
+    /**
+     * Get a check for a solve's time limit running out, counting from now
+     * @param options Settings for the solve
+     * @return A check that returns true once the time limit has passed; never true if there isn't one
+     */
+    static BooleanSupplier deadline(SolverOptions options) {
+        if (options.getTimeLimit() <= 0) {
+            return NEVER_CANCELLED;
+        }
+        LongSupplier clock = options.getClock();
+        long deadline = clock.getAsLong() + options.getTimeLimit() * 1_000_000;
+        return () -> clock.getAsLong() - deadline >= 0;
+    }
+
+    /**
+     * Get a context for a part of the search that can be abandoned independently; it shares everything else with this one, and is still cancelled whenever this one is
+     * @param cancelled Checked as the search goes; must stay true once it becomes true
+     * @return A new context
+     */
+    SearchContext withCancellation(BooleanSupplier cancelled) {
+        BooleanSupplier outer = this.cancelled;
+        BooleanSupplier combined = outer == NEVER_CANCELLED ? cancelled : () -> outer.getAsBoolean() || cancelled.getAsBoolean();
+        return new SearchContext(options, table, metrics, depthMetrics.getDepthLimit(), scheduler, combined);
+    }
+
+    /**
+     * Get a context for a single round of the search at the given depth limit, which is cancelled once it uses up the node or time budget the options give each round
+     * @param depthLimit The depth limit of the round
+     * @return A new context, or this one if rounds have no budget
+     */
+    SearchContext withIterationBudget(int depthLimit) {
+        long nodeBudget = options.getIterationNodeBudget();
+        long timeBudget = options.getIterationTimeBudget();
+        if (nodeBudget <= 0 && timeBudget <= 0) {
+            return this;
+        }
+
+        // Nodes are counted against the round's own depth limit, so that counter only moves while this round runs
+        SolverMetrics.Depth counters = metrics.getDepth(depthLimit);
+        long nodeLimit = counters.getNodesExpanded() + nodeBudget;
+        LongSupplier clock = options.getClock();
+        long timeLimit = clock.getAsLong() + timeBudget * 1_000_000;
+        return withCancellation(() -> (nodeBudget > 0 && counters.getNodesExpanded() >= nodeLimit) || (timeBudget > 0 && clock.getAsLong() - timeLimit >= 0));
+    }
+
+    /**
+     * Get a context for an iteration of the search at the given depth limit, whose work is counted against that depth limit; it shares everything else with this one
+     * @param depthLimit The depth limit of the iteration
+     * @return A new context
+     */
+    SearchContext atDepth(int depthLimit) {
+        return new SearchContext(options, table, metrics, depthLimit, scheduler, cancelled);
+    }
+
+    SolverOptions getOptions() {
+        return options;
+    }
+
+    DepthScheduler getScheduler() {
+        return scheduler;
+    }
+
+    TranspositionTable getTable() {
+        return table;
+    }
+
+    SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    SolverMetrics.Depth getDepthMetrics() {
+        return depthMetrics;
+    }
+
+    boolean isCancelled() {
+        return cancelled.getAsBoolean();
+    }
+}
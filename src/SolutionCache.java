@@ -0,0 +1,502 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of solved puzzles, so that a puzzle that's been solved once, in any orientation and with any coloring, doesn't have to be solved again.
+ *
+ * Puzzles are keyed by a canonical form of their starts: of the eight rotations and reflections of the grid, the one whose rows come first as text once the colors are relabelled in the order they first appear, row by row.
+ * Two puzzles have the same canonical form exactly when one is a rotation or reflection of the other with the colors renamed, so the key is the canonical form itself rather than a hash of it, and can't collide.
+ * Each entry holds the move history of the solve and the connections of the solved board, mapped into the canonical orientation; a hit maps them back to the orientation of the board being looked up and replays them, which takes a board copy per step rather than any search.
+ * Propagation doesn't always make the same connections in every orientation, so after the moves, any connections of the solution still missing are made a cell at a time, the way SatSolver replays a model.
+ * Colors never appear in a move, so they don't need mapping back; the board being looked up supplies its own.
+ *
+ * The most recently used entries are kept in memory, and if the cache has a directory, every entry is also written there as a small text file named after a hash of its key, so the cache survives restarts and can be shared between processes.
+ * The first line of each file is the key, the second has a hex digit for each cell giving the directions it's connected in on the solved board, and each line after that is one step of the history as space-separated moves, each a cell index and a direction index (see Coordinate.DIRECTIONS); all of it in the canonical orientation.
+ *
+ * A file that's truncated or doesn't parse, or a replay that the board rejects or that doesn't end solved, is treated as a miss and the entry thrown away; that can only happen if the files were edited or cut short, or the board's rules have changed since the entry was written.
+ * The cache is safe to share between threads.
+ */
+
+public class SolutionCache {
+    // Number of entries to keep in memory
+    private final int capacity;
+
+    // Where entries are written, or null to keep them in memory only
+    private final Path directory;
+
+    // Entries by key, least recently used first; the first array of each is the direction mask of every cell of the solved board, and each array after it is one step of the move history as pairs of a cell index and a direction index, all in the canonical orientation
+    private final LinkedHashMap<String, int[][]> entries;
+
+    /**
+     * The canonical form of a puzzle, and how to get there from the puzzle's own orientation
+     */
+    static class Canonical {
+        private final String key;
+
+        // For each cell of the original board, its index in the canonical orientation
+        private final int[] cells;
+
+        // For each direction on the original board, the direction it becomes in the canonical orientation
+        private final int[] directions;
+
+        private Canonical(String key, int[] cells, int[] directions) {
+            this.key = key;
+            this.cells = cells;
+            this.directions = directions;
+        }
+
+        String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * @param capacity The number of entries to keep in memory
+     * @param directory The directory to keep entries in between runs, created if it doesn't exist, or null to keep them in memory only
+     * @throws IOException If the directory can't be created
+     */
+    public SolutionCache(int capacity, Path directory) throws IOException {
+        this.capacity = capacity;
+        this.directory = directory;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[][]> eldest) {
+                return size() > SolutionCache.this.capacity;
+            }
+        };
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Get the fingerprint of a puzzle, which is the same for every rotation, reflection and recoloring of it
+     * @param board The puzzle; only its starts are looked at
+     * @return The fingerprint
+     */
+    public static String getFingerprint(Board board) {
+        return canonicalize(board).getKey();
+    }
+
+    /**
+     * Look up the solution to a puzzle, and replay it onto the board
+     * @param board The puzzle to look up; left as it is
+     * @param moveHistory List in which to store the history of moves made to reach each board in the solution path, if the puzzle is in the cache
+     * @return A list of boards representing the solution path, starting with the board itself, or null if the puzzle isn't in the cache
+     */
+    public ArrayList<Board> lookup(Board board, ArrayList<Move[]> moveHistory) {
+        Canonical canonical = canonicalize(board);
+        int[][] entry = get(canonical.key);
+        if (entry == null) {
+            return null;
+        }
+
+        // Map each direction of the canonical orientation back to the board's own
+        int[] directions = new int[4];
+        for (int dir = 0; dir < 4; dir++) {
+            directions[canonical.directions[dir]] = dir;
+        }
+        int[] cells = new int[canonical.cells.length];
+        for (int index = 0; index < cells.length; index++) {
+            cells[canonical.cells[index]] = index;
+        }
+
+        ArrayList<Board> solution = new ArrayList<>();
+        ArrayList<Move[]> history = new ArrayList<>();
+        solution.add(board);
+        history.add(new Move[]{}); // Add an empty array since the first board isn't generated by a move
+        try {
+            for (int step = 1; step < entry.length; step++) {
+                int[] connections = new int[entry[step].length];
+                for (int i = 0; i < connections.length; i += 2) {
+                    connections[i] = cells[entry[step][i]];
+                    connections[i + 1] = directions[entry[step][i + 1]];
+                }
+                replayStep(connections, solution, history);
+            }
+
+            // Make whatever connections the moves didn't, a cell at a time
+            int[] solved = entry[0];
+            for (int index = 0; index < cells.length; index++) {
+                int mask = solved[canonical.cells[index]];
+                int[] connections = new int[8];
+                int count = 0;
+                for (int dir = 0; dir < 4; dir++) {
+                    if ((mask & (1 << dir)) != 0) {
+                        connections[count++] = index;
+                        connections[count++] = directions[dir];
+                    }
+                }
+                replayStep(Arrays.copyOf(connections, count), solution, history);
+            }
+        } catch (InvalidMoveException e) {
+            remove(canonical.key);
+            return null;
+        }
+
+        if (!solution.get(solution.size() - 1).isSolved()) {
+            remove(canonical.key);
+            return null;
+        }
+        moveHistory.addAll(history);
+        return solution;
+    }
+
+    /**
+     * Make a step's connections on a copy of the last board of a solution path, skipping any that are already there, and add it to the path if it needed any
+     * @param connections Pairs of a cell index and a direction index on the board
+     * @param solution The solution path so far
+     * @param history The move history so far
+     * @throws InvalidMoveException If the board refuses one of the connections
+     */
+    private static void replayStep(int[] connections, ArrayList<Board> solution, ArrayList<Move[]> history) throws InvalidMoveException {
+        Board current = solution.get(solution.size() - 1);
+        int width = current.getWidth();
+        Board next = null;
+        ArrayList<Move> moves = new ArrayList<>(connections.length / 2);
+        for (int i = 0; i < connections.length; i += 2) {
+            int index = connections[i];
+            int dir = connections[i + 1];
+            // Propagation can make a connection at a different point in a different orientation, so it may already be there
+            if (!(next != null ? next : current).hasConnection(index, dir)) {
+                if (next == null) {
+                    next = new Board(current);
+                }
+                Move move = new Move(new Coordinate(index / width, index % width), Coordinate.DIRECTIONS[dir], 0);
+                next.applyMove(move);
+                moves.add(move);
+            }
+        }
+        if (next != null) {
+            solution.add(next);
+            history.add(moves.toArray(new Move[0]));
+        }
+    }
+
+    /**
+     * Add the solution to a puzzle to the cache; unsolved paths are ignored
+     * @param board The puzzle that was solved
+     * @param moveHistory The history of moves that solved it, as returned alongside the solution
+     * @param solution The solution path
+     */
+    public void store(Board board, ArrayList<Move[]> moveHistory, ArrayList<Board> solution) {
+        Board solved = solution.get(solution.size() - 1);
+        if (!solved.isSolved()) {
+            return;
+        }
+
+        Canonical canonical = canonicalize(board);
+        ArrayList<int[]> entry = new ArrayList<>(moveHistory.size() + 1);
+
+        // Every connection of the solved board, as a mask of directions for each cell
+        int[] connections = new int[canonical.cells.length];
+        for (int index = 0; index < connections.length; index++) {
+            for (int dir = 0; dir < 4; dir++) {
+                if (solved.hasConnection(index, dir)) {
+                    connections[canonical.cells[index]] |= 1 << canonical.directions[dir];
+                }
+            }
+        }
+        entry.add(connections);
+
+        for (Move[] combo : moveHistory) {
+            if (combo.length == 0) {
+                continue;
+            }
+            int[] step = new int[combo.length * 2];
+            for (int i = 0; i < combo.length; i++) {
+                step[2 * i] = canonical.cells[board.getIndex(combo[i].getStart())];
+                step[2 * i + 1] = canonical.directions[Coordinate.toIndex(combo[i].getDirection())];
+            }
+            entry.add(step);
+        }
+        put(canonical.key, entry.toArray(new int[0][]));
+    }
+
+    /**
+     * Get the number of entries held in memory
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Find an entry in memory, or failing that on disk
+     * @param key The canonical form of the puzzle
+     * @return The entry, laid out as in the entries field, or null if there isn't one for the puzzle
+     */
+    private synchronized int[][] get(String key) {
+        int[][] entry = entries.get(key);
+        if (entry == null && directory != null) {
+            entry = read(key);
+            if (entry != null) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private synchronized void put(String key, int[][] entry) {
+        entries.put(key, entry);
+        if (directory != null) {
+            write(key, entry);
+        }
+    }
+
+    private synchronized void remove(String key) {
+        entries.remove(key);
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(getPath(key));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Read an entry from the cache directory; a file that isn't laid out the way write leaves it is deleted and treated as a miss
+     * @param key The canonical form of the puzzle
+     * @return The entry, or null if there's no usable file for it, or the file is for a different key that happens to share its hash
+     */
+    private int[][] read(String key) {
+        Path path = getPath(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                if (!key.equals(reader.readLine())) {
+                    return null;
+                }
+                int[][] entry = parseEntry(reader, countCells(key));
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            // Truncated or edited; throw it away, the same as an entry whose replay fails
+            Files.deleteIfExists(path);
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse the lines of an entry file after the key
+     * @param reader Reader positioned just after the key
+     * @param cellCount Number of cells of the puzzle
+     * @return The entry, laid out as in the entries field, or null if a line is missing or malformed, or refers to a cell or direction that doesn't exist
+     * @throws IOException If the file can't be read
+     */
+    private static int[][] parseEntry(BufferedReader reader, int cellCount) throws IOException {
+        String line = reader.readLine();
+        if (line == null || line.length() != cellCount) {
+            return null;
+        }
+        ArrayList<int[]> entry = new ArrayList<>();
+        int[] connections = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            connections[i] = Character.digit(line.charAt(i), 16);
+            if (connections[i] < 0) {
+                return null;
+            }
+        }
+        entry.add(connections);
+
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                entry.add(new int[0]);
+                continue;
+            }
+            String[] parts = line.split(" ");
+            int[] step = new int[parts.length * 2];
+            for (int i = 0; i < parts.length; i++) {
+                int split = parts[i].indexOf(',');
+                if (split < 0) {
+                    return null;
+                }
+                try {
+                    step[2 * i] = Integer.parseInt(parts[i].substring(0, split));
+                    step[2 * i + 1] = Integer.parseInt(parts[i].substring(split + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (step[2 * i] < 0 || step[2 * i] >= cellCount || step[2 * i + 1] < 0 || step[2 * i + 1] >= 4) {
+                    return null;
+                }
+            }
+            entry.add(step);
+        }
+        return entry.toArray(new int[0][]);
+    }
+
+    /**
+     * Get the number of cells of a puzzle from its canonical form, which starts with its dimensions
+     * @param key The canonical form of the puzzle
+     * @return The number of cells
+     */
+    private static int countCells(String key) {
+        int times = key.indexOf('x');
+        return Integer.parseInt(key.substring(0, times)) * Integer.parseInt(key.substring(times + 1, key.indexOf('/')));
+    }
+
+    /**
+     * Write an entry to the cache directory, replacing whatever was there in one step so a reader never sees half a file
+     * @param key The canonical form of the puzzle
+     * @param entry The entry, laid out as in the entries field
+     */
+    private void write(String key, int[][] entry) {
+        Path path = getPath(key);
+        try {
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(key);
+                writer.newLine();
+                for (int mask : entry[0]) {
+                    writer.write(Character.forDigit(mask, 16));
+                }
+                writer.newLine();
+                for (int step = 1; step < entry.length; step++) {
+                    for (int i = 0; i < entry[step].length; i += 2) {
+                        writer.write((i > 0 ? " " : "") + entry[step][i] + "," + entry[step][i + 1]);
+                    }
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path getPath(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return directory.resolve(sb + ".txt");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Find the canonical form of a puzzle: whichever of its eight rotations and reflections reads first once its colors are relabelled in order of appearance
+     * @param board The puzzle; only its starts are looked at
+     * @return The canonical form, with the mapping into it from the board's own orientation
+     */
+    static Canonical canonicalize(Board board) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        Canonical best = null;
+        for (int symmetry = 0; symmetry < 8; symmetry++) {
+            // Rotating by a quarter turn, or reflecting across a diagonal, swaps the dimensions
+            boolean swapped = symmetry == 1 || symmetry == 3 || symmetry >= 6;
+            int newWidth = swapped ? height : width;
+            int newHeight = swapped ? width : height;
+
+            int[] cells = new int[width * height];
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    cells[row * width + col] = transform(symmetry, row, col, width, height, newWidth);
+                }
+            }
+            int[] directions = new int[4];
+            for (int dir = 0; dir < 4; dir++) {
+                // Where a step from the origin in this direction ends up, relative to where the origin does
+                Coordinate step = Coordinate.DIRECTIONS[dir];
+                int[] from = transformCoordinate(symmetry, 0, 0, width, height);
+                int[] to = transformCoordinate(symmetry, step.getRow(), step.getCol(), width, height);
+                directions[dir] = Coordinate.toIndex(new Coordinate(to[0] - from[0], to[1] - from[1]));
+            }
+
+            // Lay out the starts in the new orientation, then name the colors in the order they're met
+            int[] colors = new int[newWidth * newHeight];
+            for (int index = 0; index < cells.length; index++) {
+                if (board.isStart(index)) {
+                    colors[cells[index]] = board.getColor(index) + 1;
+                }
+            }
+            int[] names = new int[Board.MAX_COLOR_INDEX + 2];
+            int nextName = 0;
+            StringBuilder sb = new StringBuilder();
+            sb.append(newWidth).append('x').append(newHeight);
+            for (int index = 0; index < colors.length; index++) {
+                if (index % newWidth == 0) {
+                    sb.append('/');
+                }
+                if (colors[index] == 0) {
+                    sb.append('.');
+                } else {
+                    if (names[colors[index]] == 0) {
+                        names[colors[index]] = ++nextName;
+                    }
+                    sb.append((char) ('A' + names[colors[index]] - 1));
+                }
+            }
+
+            String key = sb.toString();
+            if (best == null || key.compareTo(best.key) < 0) {
+                best = new Canonical(key, cells, directions);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Map a cell to its index in one of the eight rotations and reflections of the grid
+     * @param symmetry Which rotation or reflection; see transformCoordinate
+     * @param row The row of the cell
+     * @param col The column of the cell
+     * @param width The width of the original grid
+     * @param height The height of the original grid
+     * @param newWidth The width of the transformed grid
+     * @return The index of the cell in the transformed grid
+     */
+    private static int transform(int symmetry, int row, int col, int width, int height, int newWidth) {
+        int[] coordinate = transformCoordinate(symmetry, row, col, width, height);
+        return coordinate[0] * newWidth + coordinate[1];
+    }
+
+    /**
+     * Map a coordinate into one of the eight rotations and reflections of the grid
+     * 0 leaves it as it is, 1 to 3 rotate it clockwise by that many quarter turns, 4 and 5 mirror it left-to-right and top-to-bottom, and 6 and 7 reflect it across the main and anti-diagonals
+     * @param symmetry Which rotation or reflection
+     * @param row The row of the coordinate
+     * @param col The column of the coordinate
+     * @param width The width of the original grid
+     * @param height The height of the original grid
+     * @return The row and column of the coordinate in the transformed grid
+     */
+    private static int[] transformCoordinate(int symmetry, int row, int col, int width, int height) {
+        return switch (symmetry) {
+            case 0 -> new int[] {row, col};
+            case 1 -> new int[] {col, height - 1 - row};
+            case 2 -> new int[] {height - 1 - row, width - 1 - col};
+            case 3 -> new int[] {width - 1 - col, row};
+            case 4 -> new int[] {row, width - 1 - col};
+            case 5 -> new int[] {height - 1 - row, col};
+            case 6 -> new int[] {col, row};
+            default -> new int[] {width - 1 - col, height - 1 - row};
+        };
+    }
+}
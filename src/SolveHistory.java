@@ -0,0 +1,227 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact record of a solve: the moves made at each step of the solution path, plus a copy of the board every so often, rather than a whole board per step.
+ *
+ * Any step's board is rebuilt on demand by taking the closest keyframe at or before it and replaying the moves since, the same way the solver made them.
+ * A keyframe is a single array of packed cells, so with one every KEYFRAME_INTERVAL steps, even a history of several hundred steps on a 36x20 board comes to a few tens of kilobytes, rather than the megabytes a board per step takes.
+ *
+ * Every step is replayed once when the history is built and checked against the board the solver produced; a step that doesn't come out identical, such as one filled in from a SAT model or a cached solution, is kept as a keyframe of its own, so a rebuilt board is always exactly the one on the original path.
+ * The board rebuilt last is kept along with the one for the step before it, so stepping forwards through a history and asking for each step's board and diff, like the viewer does, only costs one step's moves each time; diffs between steps are worked out when they're asked for rather than up front.
+ * The methods are synchronized, so a history can be built on one thread and read on another, like the GUI does.
+ */
+
+public class SolveHistory {
+    // Number of steps between regular keyframes
+    static final int KEYFRAME_INTERVAL = 32;
+
+    private final int width;
+    private final int height;
+
+    // The moves that made each step from the one before it; the first step's is empty
+    private final Move[][] moves;
+
+    // The steps that have a keyframe, in increasing order, and the cells of the board at each of them
+    private final int[] keyframeSteps;
+    private final short[][] keyframes;
+
+    // The board rebuilt last and the step it's at, or null if nothing's been rebuilt yet
+    private Board current = null;
+    private int currentStep = -1;
+
+    // The board at the step before the one rebuilt last, or null if it isn't known
+    private Board previous = null;
+
+    // Number of times a board has been rebuilt from a keyframe
+    private int restores = 0;
+
+    /**
+     * Build a history from a solution path and the moves that made it, as returned by Solver.solveBoard
+     * @param solution The board at each step of the path
+     * @param moveHistory The moves made to reach each board on the path, kept in step with it
+     */
+    public SolveHistory(List<Board> solution, List<Move[]> moveHistory) {
+        if (solution.isEmpty() || solution.size() != moveHistory.size()) {
+            throw new IllegalArgumentException("Solution has " + solution.size() + " steps but move history has " + moveHistory.size());
+        }
+        width = solution.get(0).getWidth();
+        height = solution.get(0).getHeight();
+        moves = moveHistory.toArray(new Move[0][]);
+
+        ArrayList<Integer> steps = new ArrayList<>();
+        ArrayList<short[]> frames = new ArrayList<>();
+        Board replay = null;
+        for (int step = 0; step < solution.size(); step++) {
+            Board board = solution.get(step);
+            if (replay != null && step % KEYFRAME_INTERVAL != 0) {
+                replay = replayStep(replay, moves[step]);
+                if (replay != null && replay.hasSameCells(board)) {
+                    continue;
+                }
+            }
+
+            // Either a regular keyframe, or a step that replaying doesn't reproduce
+            short[] cells = board.copyCells();
+            steps.add(step);
+            frames.add(cells);
+            replay = restore(cells);
+        }
+        keyframeSteps = steps.stream().mapToInt(Integer::intValue).toArray();
+        keyframes = frames.toArray(new short[0][]);
+    }
+
+    /**
+     * Solve a board and record its history
+     * @param board The board to solve
+     * @param options Settings for the solve
+     * @return The history of the solve
+     */
+    public static SolveHistory solve(Board board, SolverOptions options) {
+        ArrayList<Move[]> moveHistory = new ArrayList<>();
+        ArrayList<Board> solution = Solver.solveBoard(board, moveHistory, options);
+        return new SolveHistory(solution, moveHistory);
+    }
+
+    /**
+     * Get the number of steps in the history, including the starting board
+     * @return The number of steps
+     */
+    public int size() {
+        return moves.length;
+    }
+
+    /**
+     * Get the width of the board the history is for
+     * @return The width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the board the history is for
+     * @return The height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the number of keyframes kept; mostly of interest for checking how compact a history is
+     * @return The number of keyframes
+     */
+    public int getKeyframeCount() {
+        return keyframes.length;
+    }
+
+    /**
+     * Get the number of times a board has been rebuilt from a keyframe rather than from the step before; mostly of interest for checking that stepping through a history stays cheap
+     * @return The number of keyframe restores so far
+     */
+    public synchronized int getRestoreCount() {
+        return restores;
+    }
+
+    /**
+     * Get the moves that made a step from the one before it
+     * @param step The step
+     * @return The moves, which are empty for the first step; shared with the history, so not to be modified
+     */
+    public Move[] getMoves(int step) {
+        return moves[step];
+    }
+
+    /**
+     * Rebuild the board at a step
+     * @param step The step
+     * @return A new board, identical to the one the solver produced at that step, which the caller is free to modify
+     */
+    public synchronized Board getBoard(int step) {
+        return new Board(seek(step));
+    }
+
+    /**
+     * Check whether the last step reaches a solved board
+     * @return True if the solve succeeded, false otherwise
+     */
+    public synchronized boolean isSolved() {
+        return seek(moves.length - 1).isSolved();
+    }
+
+    /**
+     * Get the cells that changed between a step and the one before it
+     * @param step The step
+     * @return A 2D boolean array where true indicates a change in the corresponding position; all false for the first step
+     */
+    public synchronized boolean[][] getDiff(int step) {
+        if (step == 0) {
+            return new boolean[height][width];
+        }
+        Board board = seek(step);
+        if (previous == null) {
+            // Jumped here from somewhere else; rebuilding the step before and coming forwards again leaves both boards known
+            seek(step - 1);
+            board = seek(step);
+        }
+        return board.getDiff(previous);
+    }
+
+    /**
+     * Bring the rebuilt board to a step, replaying forwards from it if it's on the way and from the closest keyframe otherwise, and keep track of the board at the step before where that's known
+     * @param step The step
+     * @return The rebuilt board, owned by the history
+     */
+    private Board seek(int step) {
+        if (step < 0 || step >= moves.length) {
+            throw new IndexOutOfBoundsException("Step " + step + " out of range for history of " + moves.length + " steps");
+        }
+
+        int keyframe = Arrays.binarySearch(keyframeSteps, step);
+        if (keyframe < 0) {
+            keyframe = -keyframe - 2; // The closest keyframe before the step; there's always one, since the first step has one
+        }
+        int keyframeStep = keyframeSteps[keyframe];
+        if (current == null || currentStep > step || currentStep < keyframeStep) {
+            previous = currentStep == step - 1 ? current : null;
+            current = restore(keyframes[keyframe]);
+            currentStep = keyframeStep;
+            restores++;
+        }
+        while (currentStep < step) {
+            previous = current;
+            currentStep++;
+            current = replayStep(current, moves[currentStep]);
+            if (current == null) {
+                // Every step was checked when the history was built, so this can't happen
+                throw new IllegalStateException("Step " + currentStep + " couldn't be replayed");
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Turn a keyframe back into a board
+     * @param cells The keyframe's cells
+     * @return The board
+     */
+    private Board restore(short[] cells) {
+        // fromCells schedules every cell for an update, which the boards the solver copies never have pending; copying drops them
+        return new Board(Board.fromCells(width, height, cells.clone()));
+    }
+
+    /**
+     * Make the next step's board by applying its moves, the way the solver does
+     * @param board The board at the step before; left unchanged
+     * @param stepMoves The moves to apply
+     * @return The new board, or null if the moves couldn't be applied
+     */
+    private static Board replayStep(Board board, Move[] stepMoves) {
+        Board next = new Board(board);
+        next.setDiagnostics(false);
+        return next.tryApplyMoves(stepMoves) ? next : null;
+    }
+}
@@ -2,85 +2,443 @@ package src;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * The main home of the algorithm itself used to solve Numberlink puzzles.
  * It uses Iterative Deepening Search (IDS) to minimize memory usage while still keeping the search tree as shallow as possible.
  * Additionally, there's a mechanism of "proof by counterexample" to find moves that inevitably lead to a dead end, allowing the solver to skip them entirely.
+ * The search itself runs on a single scratch board per call, applying moves and then backtracking through the board's undo log, so no boards are copied per node.
+ * Open locations can optionally be evaluated concurrently on a ForkJoinPool, and the deeper levels of each isDeadly search split into subtasks on the same pool (see ParallelRefutation); the result is always the same one the sequential search would give.
+ * The order locations and moves are looked at in comes from the solve's Heuristic.
+ * SolverOptions can swap this search out for a SAT solver (see SatSolver), or race the two against each other.
+ * If the forced moves run out before the board is solved, the solver can fall back to guessing: it picks the most constrained open location, tries each of its move combinations in turn, and carries on finding forced moves after each guess, backtracking when one leads to a dead end.
  * 
  * Potential improvements:
- * - Implement more sophisticated heuristics for choosing which locations to evaluate first, more sophisticated than just the shallowest depth
+ * - Score moves by the distance to the same color's other loose end as well, which needs the loose ends finding once per node rather than once per move
  */
 
 public class Solver {
-    // Count of boards created during the solving process, for performance monitoring and debugging
-    public static int boardsCreated = 0;
+    // Marker result for a location that was found to have no valid move combinations at all
+    private static final Move[] NO_VALID_COMBOS = new Move[0];
+
+    // Most move combinations a location can have; two connections out of four directions
+    private static final int MAX_MOVE_COMBINATIONS = 6;
+
+    // Deepest depth limit the batched mode sweeps the whole board at; deeper rounds stop at the first forced move, since checking every location at depth 1 and up costs far more than the rescans it saves
+    private static final int MAX_BATCH_DEPTH = 0;
 
     /**
-     * Solve the given board, returning a list of boards representing the solution path.
+     * Solve the given board on the calling thread, returning a list of boards representing the solution path.
      * @param board The board to solve
      * @param moveHistory List in which to store the history of moves made to reach each board in the solution path
      * @return A list of boards representing the solution path
      */
     public static ArrayList<Board> solveBoard(Board board, ArrayList<Move[]> moveHistory) {
-        boardsCreated = 0;
+        return solveBoard(board, moveHistory, new SolverOptions());
+    }
+
+    /**
+     * Solve the given board, returning a list of boards representing the solution path.
+     * @param board The board to solve
+     * @param moveHistory List in which to store the history of moves made to reach each board in the solution path
+     * @param options Settings for this solve
+     * @return A list of boards representing the solution path
+     */
+    public static ArrayList<Board> solveBoard(Board board, ArrayList<Move[]> moveHistory, SolverOptions options) {
+        long start = System.nanoTime();
+        try {
+            SolutionCache cache = options.getSolutionCache();
+            if (cache != null) {
+                ArrayList<Board> cached = cache.lookup(board, moveHistory);
+                if (cached != null) {
+                    if (options.getMetrics() != null) {
+                        options.getMetrics().recordCacheHit();
+                    }
+                    return cached;
+                }
+            }
+
+            ArrayList<Board> solution = switch (options.getBackend()) {
+                case NATIVE -> solveNative(board, moveHistory, new SearchContext(options));
+                case SAT -> SatSolver.solveBoard(board, moveHistory, options);
+                case PORTFOLIO -> solvePortfolio(board, moveHistory, options);
+            };
+            if (cache != null) {
+                cache.store(board, moveHistory, solution);
+            }
+            return solution;
+        } finally {
+            if (options.getMetrics() != null) {
+                options.getMetrics().recordSolve(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Solve the given board with the forced-move search, guessing if the options allow it once the forced moves run out
+     * @param board The board to solve
+     * @param moveHistory List in which to store the history of moves made to reach each board in the solution path
+     * @param context The state of the search; once it's cancelled, the solve stops where it is
+     * @return A list of boards representing the solution path
+     */
+    private static ArrayList<Board> solveNative(Board board, ArrayList<Move[]> moveHistory, SearchContext context) {
         ArrayList<Board> solution = new ArrayList<>();
         solution.add(board);
-
         moveHistory.add(new Move[]{}); // Add an empty array since the first board isn't generated by a move
 
+        if (propagate(solution, moveHistory, context) == Outcome.STALLED && context.getOptions().isBranching()) {
+            // Stop at the first solution; if there isn't one, the path is left where the forced moves ran out
+            branch(solution, moveHistory, context, path -> true);
+        }
+        return solution;
+    }
+
+    /**
+     * Race the forced-move search against the SAT backend, each on its own thread with its own copy of the board, and take the first solution either of them finds
+     * The loser is told to stop as soon as there's a winner, and its thread is left to finish unwinding in the background
+     * @param board The board to solve
+     * @param moveHistory List in which to store the history of moves made to reach each board in the solution path
+     * @param options Settings for this solve, shared by both backends
+     * @return A list of boards representing the solution path; if neither backend solved the board, whichever got further
+     */
+    private static ArrayList<Board> solvePortfolio(Board board, ArrayList<Move[]> moveHistory, SolverOptions options) {
+        AtomicBoolean finished = new AtomicBoolean(false);
+        SearchContext context = new SearchContext(options).withCancellation(finished::get);
+
+        // Boards can't be read from two threads at once, so each backend gets its own copy
+        ArrayList<Move[]> nativeHistory = new ArrayList<>();
+        ArrayList<Move[]> satHistory = new ArrayList<>();
+        Board nativeBoard = new Board(board);
+        Board satBoard = new Board(board);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ExecutorCompletionService<ArrayList<Board>> race = new ExecutorCompletionService<>(executor);
+        Future<ArrayList<Board>> nativeFuture = race.submit(() -> solveNative(nativeBoard, nativeHistory, context));
+        race.submit(() -> SatSolver.solveBoard(satBoard, satHistory, options, context::isCancelled));
+
+        ArrayList<Board> best = null;
+        ArrayList<Move[]> bestHistory = null;
+        try {
+            for (int i = 0; i < 2; i++) {
+                Future<ArrayList<Board>> done = race.take();
+                ArrayList<Board> solution;
+                try {
+                    solution = done.get();
+                } catch (ExecutionException e) {
+                    // One backend failing shouldn't stop the other from answering
+                    e.printStackTrace();
+                    continue;
+                }
+                boolean solved = solution.get(solution.size() - 1).isSolved();
+                if (best == null || solved || solution.size() > best.size()) {
+                    best = solution;
+                    bestHistory = done == nativeFuture ? nativeHistory : satHistory;
+                }
+                if (solved) {
+                    if (options.isVerbose()) {
+                        System.out.println("Portfolio won by the " + (done == nativeFuture ? "native" : "SAT") + " backend");
+                    }
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.set(true);
+            executor.shutdown();
+        }
+
+        if (best == null) {
+            best = new ArrayList<>();
+            best.add(board);
+            bestHistory = new ArrayList<>();
+            bestHistory.add(new Move[]{});
+        }
+        best.set(0, board);
+        moveHistory.addAll(bestHistory);
+        return best;
+    }
+
+    /**
+     * Find every solution to the given board, up to a limit, branching wherever the forced moves run out whether or not the options ask for it
+     * Each guess is tried in turn, so any two of the solutions found differ somewhere; a board with a unique solution gives exactly one
+     * @param board The board to solve
+     * @param limit The most solutions to find
+     * @param options Settings for this solve
+     * @return The solved boards, in the order they were found; empty if the board has no solution
+     */
+    public static ArrayList<Board> findSolutions(Board board, int limit, SolverOptions options) {
+        SearchContext context = new SearchContext(options);
+        ArrayList<Board> solutions = new ArrayList<>();
+        if (limit <= 0) {
+            return solutions;
+        }
+
+        long start = System.nanoTime();
+        try {
+            ArrayList<Board> solution = new ArrayList<>();
+            solution.add(board);
+            ArrayList<Move[]> moveHistory = new ArrayList<>();
+            moveHistory.add(new Move[]{});
+
+            search(solution, moveHistory, context, path -> {
+                solutions.add(path.get(path.size() - 1));
+                return solutions.size() >= limit;
+            });
+            return solutions;
+        } finally {
+            context.getMetrics().recordSolve(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Count the solutions to the given board, up to a limit; see findSolutions
+     * @param board The board to solve
+     * @param limit The most solutions to count; 2 is enough to tell whether the solution is unique
+     * @param options Settings for this solve
+     * @return The number of solutions, or limit if there are at least that many
+     */
+    public static int countSolutions(Board board, int limit, SolverOptions options) {
+        return findSolutions(board, limit, options).size();
+    }
+
+    /**
+     * Where propagate got to with the forced moves
+     */
+    private enum Outcome {
+        SOLVED,     // The last board is solved
+        STALLED,    // No forced move could be found within the depth limit, so a guess is needed
+        DEAD        // The last board can't be solved; only possible after a guess
+    }
+
+    /**
+     * The iterative deepening loop: keep finding forced moves and adding them to the end of the solution path until the board is solved or no more can be found
+     * @param solution The solution path so far; forced moves are applied to the last board, and the boards they lead to are added to the end
+     * @param moveHistory The moves made to reach each board in the solution path, kept in step with it
+     * @param context The state of the search
+     * @return Whether the solution path now ends in a solved board, or where it stopped instead
+     */
+    private static Outcome propagate(ArrayList<Board> solution, ArrayList<Move[]> moveHistory, SearchContext context) {
+        SolverOptions options = context.getOptions();
+        SolverMetrics metrics = context.getMetrics();
+
+        // In the batched mode, the cells around the last batch of forced moves, which get swept first
+        boolean[] dirty = null;
+
         while (true) {
-            // Iterative Deepening Search (IDS) with a depth limit of 4
+            if (context.isCancelled()) {
+                return Outcome.STALLED;
+            }
+            Board current = solution.get(solution.size() - 1);
+            if (current.isSolved()) {
+                if (options.isVerbose()) {
+                    System.out.println("Board is solved! - Created " + metrics.getBoardsCreated() + " boards in total");
+                }
+                return Outcome.SOLVED;
+            }
+
+            // Iterative Deepening Search (IDS), up to the depth limit in the options (4 by default)
             // The depth limit is only there to stop the algorithm from running forever on unsolvable boards; it can be increased if necessary
+            // Each round starts wherever the scheduler says, which is usually the depth the last forced move was found at
 
+            DepthScheduler scheduler = context.getScheduler();
+            int startDepth = scheduler.getStartDepth();
             Move[] forcedMoves = null;
             int depthLimitAt = 0;
-            for (int depthLimit = 0; depthLimit <= 4; depthLimit++) {
+            boolean overBudget = false;
+            for (int depthLimit = startDepth; depthLimit <= scheduler.getMaxDepth(); depthLimit++) {
 
-                if (depthLimit >= 0) {
-                    System.out.println("Searching for forced moves at depth " + depthLimit + " - Created " + boardsCreated + " boards so far");
+                if (options.isVerbose()) {
+                    System.out.println("Searching for forced moves at depth " + depthLimit + " - Created " + metrics.getBoardsCreated() + " boards so far");
                 }
 
                 // Try to find a forced move at the current depth limit
-                forcedMoves = findForcedMoves(solution.get(solution.size() - 1), depthLimit);
-                if (forcedMoves != null || board.isSolved()) {
+                // A round that runs out of budget gives up on the locations it hadn't finished with, so anything it does find is still forced
+                SearchContext iterationContext = context.withIterationBudget(depthLimit);
+                long iterationStart = System.nanoTime();
+                if (options.isBatchForcedMoves() && depthLimit <= MAX_BATCH_DEPTH) {
+                    forcedMoves = sweepForcedMoves(current, depthLimit, dirty, iterationContext);
+                } else if (options.getPool() == null) {
+                    forcedMoves = findForcedMoves(current, depthLimit, iterationContext);
+                } else {
+                    forcedMoves = findForcedMovesParallel(current, depthLimit, options.getPool(), iterationContext);
+                }
+                metrics.getDepth(depthLimit).recordIteration(System.nanoTime() - iterationStart);
+                if (forcedMoves != null) {
                     depthLimitAt = depthLimit;
                     break;
                 }
+                if (iterationContext.isCancelled()) {
+                    // Out of budget (or time); a deeper round would only cost more
+                    overBudget = true;
+                    break;
+                }
             }
             if (forcedMoves == null) {
-                // No forced move found; return the current solution
-                return solution;
+                if (overBudget && startDepth > 0 && !context.isCancelled()) {
+                    // Started too deep to finish; go back and try the shallower depths that were skipped
+                    scheduler.reset();
+                    continue;
+                }
+                // No forced move found; the caller decides whether to guess
+                return Outcome.STALLED;
+            }
+            if (forcedMoves == NO_VALID_COMBOS) {
+                if (!options.isBranching()) {
+                    // Without any guesses, we shouldn't be here
+                    System.err.println("Found a location with no valid move combinations");
+                }
+                return Outcome.DEAD;
             }
+            metrics.getDepth(depthLimitAt).recordForcedMove();
+            scheduler.recordForcedMove(depthLimitAt);
 
             // Apply the forced move(s) that were just found to generate the next board state
             try {
-                Board newBoard = new Board(solution.get(solution.size() - 1));
-                boardsCreated++;
+                Board newBoard = new Board(current);
+                metrics.recordBoardsCreated(1);
                 for (Move forcedMove : forcedMoves) {
                     newBoard.applyMove(forcedMove);
                 }
+                metrics.recordSolutionPropagationSteps(newBoard.getPropagationSteps());
                 moveHistory.add(forcedMoves);
                 solution.add(newBoard);
+                if (options.isBatchForcedMoves()) {
+                    dirty = markChanged(current, newBoard);
+                }
 
-                if (depthLimitAt > 0) {
-                    System.out.println("Found forced move: at d=" + depthLimitAt + " " + forcedMoves[0] + (forcedMoves.length > 1 ? " and " + forcedMoves[1] : "") + " - Created " + boardsCreated + " boards so far");
+                if (options.isVerbose() && depthLimitAt > 0) {
+                    System.out.println("Found forced move: at d=" + depthLimitAt + " " + forcedMoves[0] + (forcedMoves.length > 1 ? " and " + forcedMoves[1] : "") + " - Created " + metrics.getBoardsCreated() + " boards so far");
                     System.out.println(newBoard.simpleReadout());
-                } if (depthLimitAt == 0) {
-                    System.out.println("Found forced move: at d=" + depthLimitAt + " " + forcedMoves[0] + (forcedMoves.length > 1 ? " and " + forcedMoves[1] : "") + " - Created " + boardsCreated + " boards so far");
+                } if (options.isVerbose() && depthLimitAt == 0) {
+                    System.out.println("Found forced move: at d=" + depthLimitAt + " " + forcedMoves[0] + (forcedMoves.length > 1 ? " and " + forcedMoves[1] : "") + " - Created " + metrics.getBoardsCreated() + " boards so far");
                     // System.out.println(newBoard.simpleReadout());
                 }
-                
-                if (newBoard.isSolved()) {
-                    System.out.println("Board is solved! - Created " + boardsCreated + " boards in total");
-                    return solution;
+            } catch (InvalidMoveException e) {
+                // This shouldn't happen without any guesses, but if it does, just stop here
+                if (!options.isBranching()) {
+                    System.err.println("Invalid move: " + e.getMessage());
+                }
+                return Outcome.DEAD;
+            }
+        }
+    }
+
+    /**
+     * Mark the cells near any cell that changed between two boards, for the batched mode to sweep first
+     * A cell's move combinations depend on its neighbors and the cells diagonal to them, so anything within two cells of a change may have new ones
+     * @param before The board before a batch of forced moves
+     * @param after The board after them
+     * @return Whether each cell is within two cells of a change, indexed by cell
+     */
+    private static boolean[] markChanged(Board before, Board after) {
+        int width = after.getWidth();
+        int height = after.getHeight();
+        boolean[] marked = new boolean[width * height];
+        for (int index = 0; index < marked.length; index++) {
+            if (!after.isDifferent(index, before)) {
+                continue;
+            }
+            int row = index / width;
+            int col = index % width;
+            for (int r = Math.max(0, row - 2); r <= Math.min(height - 1, row + 2); r++) {
+                for (int c = Math.max(0, col - 2); c <= Math.min(width - 1, col + 2); c++) {
+                    marked[r * width + c] = true;
+                }
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Run the forced moves from the end of the solution path, then guess if they run out, until a solution is found or every guess has been ruled out
+     * @param solution The solution path so far
+     * @param moveHistory The moves made to reach each board in the solution path, kept in step with it
+     * @param context The state of the search
+     * @param found Called with the solution path each time it ends in a solved board; returns true to stop the search there
+     * @return True if the search was stopped, leaving the solution path that stopped it in place; otherwise the path is put back the way it was passed in
+     */
+    private static boolean search(ArrayList<Board> solution, ArrayList<Move[]> moveHistory, SearchContext context, Predicate<ArrayList<Board>> found) {
+        int size = solution.size();
+        Outcome outcome = propagate(solution, moveHistory, context);
+        boolean stopped = outcome == Outcome.SOLVED ? found.test(solution) : outcome == Outcome.STALLED && branch(solution, moveHistory, context, found);
+        if (!stopped) {
+            truncate(solution, moveHistory, size);
+        }
+        return stopped;
+    }
+
+    /**
+     * Guess at the most constrained open location on the last board of the solution path, trying each of its move combinations in the heuristic's order and searching on from each one
+     * Nothing is given up by only guessing at one location, since every solution has to use one of its combinations
+     * @param solution The solution path so far, ending in a board with no forced moves
+     * @param moveHistory The moves made to reach each board in the solution path, kept in step with it
+     * @param context The state of the search
+     * @param found Called with the solution path each time it ends in a solved board; returns true to stop the search there
+     * @return True if the search was stopped; otherwise the path is left the way it was passed in
+     */
+    private static boolean branch(ArrayList<Board> solution, ArrayList<Move[]> moveHistory, SearchContext context, Predicate<ArrayList<Board>> found) {
+        SolverOptions options = context.getOptions();
+        SolverMetrics metrics = context.getMetrics();
+        Heuristic heuristic = options.getHeuristic();
+        Board current = solution.get(solution.size() - 1);
+
+        ArrayList<Location> openLocations = current.getOpenLocations();
+        heuristic.sortLocations(openLocations, current);
+        Location loc = openLocations.get(0);
+
+        for (Move[] combo : loc.getValidMoveCombinations(current, heuristic)) {
+            if (context.isCancelled()) {
+                return true;
+            }
+            Board guess = new Board(current);
+            metrics.recordBoardsCreated(1);
+            try {
+                guess.applyMoves(combo);
+                if (options.isReachabilityPruning()) {
+                    guess.checkReachability();
                 }
             } catch (InvalidMoveException e) {
-                // This shouldn't happen, but if it does, just return the current solution
-                System.err.println("Invalid move: " + e.getMessage());
-                return solution;
+                continue;
+            }
+            metrics.recordSolutionPropagationSteps(guess.getPropagationSteps());
+            metrics.recordBranch();
+
+            if (options.isVerbose()) {
+                System.out.println("No forced moves; guessing " + combo[0] + (combo.length > 1 ? " and " + combo[1] : "") + " - Created " + metrics.getBoardsCreated() + " boards so far");
+            }
+            solution.add(guess);
+            moveHistory.add(combo);
+            if (search(solution, moveHistory, context, found)) {
+                return true;
+            }
+            truncate(solution, moveHistory, solution.size() - 1);
+            if (options.isVerbose()) {
+                System.out.println("Guess " + combo[0] + (combo.length > 1 ? " and " + combo[1] : "") + " led to a dead end; backtracking");
             }
         }
+        return false;
+    }
+
+    /**
+     * Cut the solution path and move history back to the given length
+     * @param solution The solution path
+     * @param moveHistory The moves made to reach each board in the solution path
+     * @param size The length to cut them back to
+     */
+    private static void truncate(ArrayList<Board> solution, ArrayList<Move[]> moveHistory, int size) {
+        solution.subList(size, solution.size()).clear();
+        moveHistory.subList(size, moveHistory.size()).clear();
     }
 
     /**
@@ -90,83 +448,401 @@ public class Solver {
      * @return An array of forced moves, or null if none are found
      */
     public static Move[] findForcedMoves(Board board, int depthLimit) {
+        Move[] forcedMoves = findForcedMoves(board, depthLimit, new SearchContext(new SolverOptions().setTranspositionTableSize(0)));
+        return forcedMoves == NO_VALID_COMBOS ? null : forcedMoves;
+    }
 
-        ArrayList<Location> openLocations = board.getOpenLocations();
+    /**
+     * Find a set of forced moves for the given board at the specified depth limit, as part of a larger search.
+     * @param board The board to analyze
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param context The state of the search this is part of
+     * @return An array of forced moves, null if none are found, or NO_VALID_COMBOS if the board is a dead end
+     */
+    static Move[] findForcedMoves(Board board, int depthLimit, SearchContext context) {
+        context = context.atDepth(depthLimit);
+        SolverMetrics.Depth depthMetrics = context.getDepthMetrics();
+
+        // Work on a single scratch copy of the board for the whole search, backtracking through its undo log rather than copying it for every combination
+        Board testBoard = new Board(board);
+        context.getMetrics().recordBoardsCreated(1);
+        testBoard.setTrailing(true);
+        testBoard.setDiagnostics(false);
 
-        // Check locations with fewer connection possibilities and more open connections first
-        // From lowest to highest on countMoveCombinations
-        sortLocationsByConnections(openLocations, board);
+        ArrayList<Location> openLocations = testBoard.getOpenLocations();
 
+        // Check the most constrained locations first; by default, from lowest to highest on countMoveCombinations
+        context.getOptions().getHeuristic().sortLocations(openLocations, testBoard);
+
+        Move[] forcedMoves = searchLocations(testBoard, openLocations, depthLimit, context);
+        depthMetrics.recordPropagationSteps(testBoard.getPropagationSteps());
+        return forcedMoves;
+    }
+
+    /**
+     * Check each open location in turn for a forced move, for findForcedMoves
+     * @param testBoard The scratch board to search on; must have trailing enabled, and is left in the state it was passed in
+     * @param openLocations The open locations on the board, in the order to check them
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param context The state of the search this is part of
+     * @return An array of forced moves, null if none are found, or NO_VALID_COMBOS if a location had none left
+     */
+    private static Move[] searchLocations(Board testBoard, List<Location> openLocations, int depthLimit, SearchContext context) {
         // Check all open locations for forced moves
         for (Location loc : openLocations) {
-            ArrayList<Move[]> combos = loc.getValidMoveCombinations(board);
-            ArrayList<Move[]> validCombos = new ArrayList<>(2); // We only care if there's 0, 1, or more than 1 valid combination, so we can limit the size of this list to 2
-            
-            // Filter each move combination to see if it leads to an invalid board or dead-end; keep only those that don't
-            for (Move[] combo : combos) {
-                Board testBoard = new Board(board);
-                boardsCreated++;
-                try {
-                    testBoard.applyMoves(combo);
-                } catch (InvalidMoveException e) {
-                    // Leads to an invalid board; eliminate this one
-                    continue;
+            Move[] forcedMoves = checkLocation(testBoard, loc, depthLimit, context);
+            if (forcedMoves != null) {
+                return forcedMoves;
+            }
+            // Otherwise, if there's more than one valid combination, we can't make a forced move here, so we've found nothing
+        }
+        return null;
+    }
+
+    /**
+     * Check a single open location for a forced move
+     * @param testBoard The scratch board to search on; must have trailing enabled, and is left in the state it was passed in
+     * @param loc The location to check
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param context The state of the search this is part of
+     * @return The location's only valid move combination, null if it has more than one, or NO_VALID_COMBOS if it has none
+     */
+    private static Move[] checkLocation(Board testBoard, Location loc, int depthLimit, SearchContext context) {
+        SolverMetrics.Depth depthMetrics = context.getDepthMetrics();
+        ArrayList<Move[]> combos = loc.getValidMoveCombinations(testBoard, context.getOptions().getHeuristic());
+        ArrayList<Move[]> validCombos = new ArrayList<>(2); // We only care if there's 0, 1, or more than 1 valid combination, so we can limit the size of this list to 2
+        
+        // Filter each move combination to see if it leads to an invalid board or dead-end; keep only those that don't
+        for (Move[] combo : combos) {
+            int mark = testBoard.mark();
+            // Deeper searches get the reachability check from isDeadly
+            if (!testBoard.tryApplyMoves(combo) || (depthLimit == 0 && context.getOptions().isReachabilityPruning() && !testBoard.tryCheckReachability())) {
+                // Leads to an invalid board; eliminate this one
+                testBoard.undoTo(mark);
+                depthMetrics.recordInvalidCombo();
+                continue;
+            }
+
+            boolean deadly = depthLimit > 0 && isDeadly(testBoard, depthLimit, combo[0].getStart(), context);
+            testBoard.undoTo(mark);
+            if (deadly) {
+                // Leads to a dead-end; eliminate this one
+                depthMetrics.recordDeadlyCombo();
+                continue;
+            }
+
+            validCombos.add(combo);
+
+            if (validCombos.size() > 1) {
+                return null;      // If there's more than one valid combination, we already know there's no forced move here, so skip the rest of the checks
+            }
+        }
+
+        // If there are no valid combinations left, the board is a dead end; if there's only one, it's forced
+        return validCombos.isEmpty() ? NO_VALID_COMBOS : validCombos.get(0);
+    }
+
+    /**
+     * Find every forced move at the given depth limit in one sweep over the board, rather than stopping at the first one; for the batched mode of the solver
+     * All of them were found on the same board, and each is forced on it, so they can all be applied together
+     * If some cells are marked as dirty, the open locations among them are swept first, and the rest only if that finds nothing; after a batch of forced moves, the locations that didn't change are unlikely to have become forced
+     * @param board The board to analyze
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param dirty Cells to sweep first, indexed by cell; null to sweep every open location at once
+     * @param context The state of the search this is part of
+     * @return Every forced move found, without duplicates, null if none are found, or NO_VALID_COMBOS if the board is a dead end
+     */
+    static Move[] sweepForcedMoves(Board board, int depthLimit, boolean[] dirty, SearchContext context) {
+        context = context.atDepth(depthLimit);
+
+        Board testBoard = new Board(board);
+        context.getMetrics().recordBoardsCreated(1);
+        testBoard.setTrailing(true);
+        testBoard.setDiagnostics(false);
+
+        ArrayList<Location> openLocations = testBoard.getOpenLocations();
+        context.getOptions().getHeuristic().sortLocations(openLocations, testBoard);
+
+        ArrayList<Location> near = openLocations;
+        ArrayList<Location> far = new ArrayList<>();
+        if (dirty != null) {
+            near = new ArrayList<>();
+            for (Location loc : openLocations) {
+                (dirty[loc.getIndex()] ? near : far).add(loc);
+            }
+        }
+
+        Move[] forcedMoves = sweepLocations(board, testBoard, near, depthLimit, context);
+        if (forcedMoves == null && !far.isEmpty() && !context.isCancelled()) {
+            forcedMoves = sweepLocations(board, testBoard, far, depthLimit, context);
+        }
+        context.getDepthMetrics().recordPropagationSteps(testBoard.getPropagationSteps());
+        return forcedMoves;
+    }
+
+    /**
+     * Check every location in a list for a forced move, for sweepForcedMoves, evaluating them concurrently if the options have a pool
+     * @param board The board being analyzed; only read, never modified
+     * @param testBoard A trailing scratch copy of the board, for checking locations on the calling thread
+     * @param locations The locations to check, in the order to report their moves in
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param context The state of the search this is part of
+     * @return Every forced move found, without duplicates, null if none are found, or NO_VALID_COMBOS if any location had none left
+     */
+    private static Move[] sweepLocations(Board board, Board testBoard, List<Location> locations, int depthLimit, SearchContext context) {
+        int count = locations.size();
+        Move[][] results = new Move[count][];
+        ForkJoinPool pool = context.getOptions().getPool();
+        if (pool == null) {
+            for (int i = 0; i < count && !context.isCancelled(); i++) {
+                results[i] = checkLocation(testBoard, locations.get(i), depthLimit, context);
+                if (results[i] == NO_VALID_COMBOS) {
+                    return NO_VALID_COMBOS;
                 }
+            }
+        } else {
+            // Every location gets checked, so none of them are ever cancelled for another deciding the result first
+            AtomicInteger firstDecided = new AtomicInteger(count);
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final int order = i;
+                final int index = locations.get(i).getIndex();
+                tasks.add(pool.submit(() -> evaluateLocation(board, index, depthLimit, order, results, firstDecided, context)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
 
-                if (depthLimit > 0 && isDeadly(testBoard, depthLimit, combo[0].getStart())) {
-                    // Leads to a dead-end; eliminate this one
-                    continue;
+        // Gather up the moves, leaving out any connection that another location's combination already makes from the other end
+        ArrayList<Move> forcedMoves = new ArrayList<>();
+        boolean[] connected = new boolean[board.getWidth() * board.getHeight() * 4];
+        for (Move[] combo : results) {
+            if (combo == NO_VALID_COMBOS) {
+                return NO_VALID_COMBOS;
+            } else if (combo == null) {
+                continue;
+            }
+            for (Move move : combo) {
+                int index = board.getIndex(move.getStart());
+                int direction = Coordinate.toIndex(move.getDirection());
+                if (!connected[index * 4 + direction]) {
+                    connected[index * 4 + direction] = true;
+                    connected[board.getNeighbor(index, direction) * 4 + Coordinate.getOppositeIndex(direction)] = true;
+                    forcedMoves.add(move);
                 }
+            }
+        }
+        return forcedMoves.isEmpty() ? null : forcedMoves.toArray(new Move[0]);
+    }
 
-                validCombos.add(combo);
+    /**
+     * Find a set of forced moves for the given board at the specified depth limit, evaluating open locations concurrently.
+     * Locations are still considered in the same sorted order as findForcedMoves, and the result is always the one findForcedMoves would return: the first location in that order to have zero or one valid combinations decides it.
+     * As soon as a location decides the result, every worker evaluating a location later in the order gives up.
+     * @param board The board to analyze
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param pool The pool to run the evaluations on
+     * @return An array of forced moves, or null if none are found
+     */
+    public static Move[] findForcedMovesParallel(Board board, int depthLimit, ForkJoinPool pool) {
+        Move[] forcedMoves = findForcedMovesParallel(board, depthLimit, pool, new SearchContext(new SolverOptions().setTranspositionTableSize(0)));
+        return forcedMoves == NO_VALID_COMBOS ? null : forcedMoves;
+    }
 
-                if (validCombos.size() > 1) {
-                    continue;      // If there's more than one valid combination, we already know there's no forced move here, so skip the rest of the checks
-                }
+    /**
+     * Find a set of forced moves for the given board at the specified depth limit, evaluating open locations concurrently, as part of a larger search.
+     * @param board The board to analyze
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param pool The pool to run the evaluations on
+     * @param context The state of the search this is part of
+     * @return An array of forced moves, null if none are found, or NO_VALID_COMBOS if the board is a dead end
+     */
+    static Move[] findForcedMovesParallel(Board board, int depthLimit, ForkJoinPool pool, SearchContext context) {
+        SearchContext iterationContext = context.atDepth(depthLimit);
+
+        // Work out the order the locations would be checked in sequentially
+        Board sortBoard = new Board(board);
+        context.getMetrics().recordBoardsCreated(1);
+        ArrayList<Location> openLocations = sortBoard.getOpenLocations();
+        context.getOptions().getHeuristic().sortLocations(openLocations, sortBoard);
+
+        int count = openLocations.size();
+        Move[][] results = new Move[count][];                   // Outcome for each location that decided the result; NO_VALID_COMBOS if it had none
+        AtomicInteger firstDecided = new AtomicInteger(count);  // Lowest position in the order known to decide the result
+
+        // Submit in order so the most promising locations tend to get picked up first
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int order = i;
+            final int index = openLocations.get(i).getIndex();
+            // Stop as soon as a location earlier in the order decides the result
+            SearchContext locationContext = iterationContext.withCancellation(() -> firstDecided.get() < order);
+            tasks.add(pool.submit(() -> evaluateLocation(board, index, depthLimit, order, results, firstDecided, locationContext)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        int decided = firstDecided.get();
+        if (decided == count) {
+            return null;
+        }
+        return results[decided];
+    }
+
+    /**
+     * Evaluate a single location for findForcedMovesParallel, recording the outcome if it decides the result
+     * @param board The board being analyzed; only read, never modified
+     * @param index Index of the location to evaluate
+     * @param depthLimit The maximum depth to search for forced moves
+     * @param order Position of the location in the sorted order
+     * @param results Where to record the outcome for each position
+     * @param firstDecided Lowest position known to decide the result so far
+     * @param context The state of the search this is part of; cancelled once a location earlier in the order decides the result
+     */
+    private static void evaluateLocation(Board board, int index, int depthLimit, int order, Move[][] results, AtomicInteger firstDecided, SearchContext context) {
+        if (context.isCancelled()) {
+            return;
+        }
+
+        Board testBoard = new Board(board);
+        context.getMetrics().recordBoardsCreated(1);
+        testBoard.setTrailing(true);
+        testBoard.setDiagnostics(false);
+        Location loc = testBoard.getLocation(index);
+        SolverMetrics.Depth depthMetrics = context.getDepthMetrics();
+
+        Move[] validCombo = null;
+        int validCombos = 0;
+        for (Move[] combo : loc.getValidMoveCombinations(testBoard, context.getOptions().getHeuristic())) {
+            int mark = testBoard.mark();
+            // Deeper searches get the reachability check from isDeadly
+            if (!testBoard.tryApplyMoves(combo) || (depthLimit == 0 && context.getOptions().isReachabilityPruning() && !testBoard.tryCheckReachability())) {
+                // Leads to an invalid board; eliminate this one
+                testBoard.undoTo(mark);
+                depthMetrics.recordInvalidCombo();
+                continue;
             }
 
-            if (validCombos.size() == 0) {
-                // If there are no valid combinations left, we shouldn't be here
-                System.err.println("Location " + loc.getCoordinate() + " has no valid move combinations");
-                return null;
-            } else if (validCombos.size() == 1) {
-                // If there's only one combination left, return it
-                return validCombos.get(0);
+            boolean deadly = depthLimit > 0 && isDeadly(testBoard, depthLimit, combo[0].getStart(), context);
+            testBoard.undoTo(mark);
+            if (context.isCancelled()) {
+                depthMetrics.recordPropagationSteps(testBoard.getPropagationSteps());
+                return;
+            }
+            if (deadly) {
+                // Leads to a dead-end; eliminate this one
+                depthMetrics.recordDeadlyCombo();
+                continue;
             }
-            // Otherwise, if there's more than one valid combination, we can't make a forced move here, so we've found nothing
 
+            validCombos++;
+            validCombo = combo;
+            if (validCombos > 1) {
+                depthMetrics.recordPropagationSteps(testBoard.getPropagationSteps());
+                return;     // More than one valid combination, so there's no forced move here
+            }
         }
-        return null;
+        depthMetrics.recordPropagationSteps(testBoard.getPropagationSteps());
+
+        results[order] = validCombos == 0 ? NO_VALID_COMBOS : validCombo;
+        firstDecided.accumulateAndGet(order, Math::min);
     }
 
     /**
      * Check if the given board is "deadly", meaning that it inevitably leads to a dead end where at least one location has no valid moves left.
      * Note that a deadly location will still have valid moves available, but searching down any of those paths will eventually lead to a dead end before the puzzle is solved.
-     * This is done using a recursive, depth-limited search.
+     * This is done using a recursive, depth-limited search, backtracking through the board's undo log; the board must have trailing enabled, and is left in the state it was passed in.
      * @param board The board to check
      * @param depthLimit The depth limit for the search
      * @param target The coordinate to prioritize when sorting locations; if null, locations are sorted by number of connections instead
      * @return True if the board is deadly, false otherwise
      */
     public static boolean isDeadly(Board board, int depthLimit, Coordinate target) {
-        if (depthLimit == 0) {
-            // Too deep; give up
+        return isDeadly(board, depthLimit, target, new SolverOptions().setTranspositionTableSize(0));
+    }
+
+    /**
+     * Check if the given board is "deadly" with the given settings, e.g. with a pool to split deep searches over; see isDeadly(Board, int, Coordinate)
+     * @param board The board to check; must have trailing enabled
+     * @param depthLimit The depth limit for the search
+     * @param target The coordinate to prioritize when sorting locations; if null, locations are sorted by the options' heuristic instead
+     * @param options Settings for the search
+     * @return True if the board is deadly, false otherwise
+     */
+    public static boolean isDeadly(Board board, int depthLimit, Coordinate target, SolverOptions options) {
+        return isDeadly(board, depthLimit, target, new SearchContext(options).atDepth(depthLimit));
+    }
+
+    /**
+     * Check if the given board is "deadly", as part of a larger search; see isDeadly(Board, int, Coordinate)
+     * Verdicts are looked up in and recorded to the search's transposition table, if it has one, so that a board state reached again by a different order of moves doesn't need to be searched again.
+     * @param board The board to check
+     * @param depthLimit The depth limit for the search
+     * @param target The coordinate to prioritize when sorting locations; if null, locations are sorted by number of connections instead
+     * @param context The state of the search this is part of; once it's cancelled, the result is meaningless
+     * @return True if the board is deadly, false otherwise
+     */
+    static boolean isDeadly(Board board, int depthLimit, Coordinate target, SearchContext context) {
+        if (depthLimit == 0 || context.isCancelled()) {
+            // Too deep, or nobody wants the answer anymore; give up
             return false;
         }
 
+        TranspositionTable table = context.getTable();
+        if (table != null) {
+            Boolean cached = table.lookup(board.getHash(), depthLimit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        boolean deadly = searchDeadly(board, depthLimit, target, context);
+
+        // A cancelled search may have given up partway, so its answer can't be trusted
+        if (table != null && !context.isCancelled()) {
+            table.store(board.getHash(), depthLimit, deadly);
+        }
+        return deadly;
+    }
+
+    /**
+     * The search behind isDeadly, without the transposition table
+     * @param board The board to check
+     * @param depthLimit The depth limit for the search
+     * @param target The coordinate to prioritize when sorting locations; if null, locations are sorted by number of connections instead
+     * @param context The state of the search this is part of
+     * @return True if the board is deadly, false otherwise
+     */
+    private static boolean searchDeadly(Board board, int depthLimit, Coordinate target, SearchContext context) {
+        SolverMetrics.Depth depthMetrics = context.getDepthMetrics();
+        depthMetrics.recordNodeExpanded();
+
+        if (context.getOptions().isReachabilityPruning() && !board.tryCheckReachability()) {
+            return true; // A color has been cut off, so there's no need to search any further
+        }
+
         // Get all open locations on the board and sort to put the most promising ones first
+        Heuristic heuristic = context.getOptions().getHeuristic();
         ArrayList<Location> openLocations = board.getOpenLocations();
         if (target == null) {
-            // Sort by the number of connections available to find a promising location, wherever it is
-            sortLocationsByConnections(openLocations, board);
+            // Sort by how constrained each location is to find a promising location, wherever it is
+            heuristic.sortLocations(openLocations, board);
         } else {
             // Sort by the distance to the target to quickly evaluate a move at a particular location
-            sortLocationsByDistance(openLocations, target);
+            heuristic.sortLocationsNear(openLocations, board, target);
+        }
+
+        // Near the top of a deep search, split the rest of it over the pool
+        int splitDepth = context.getOptions().getParallelRefutationDepth();
+        if (splitDepth > 0 && depthLimit >= splitDepth && context.getOptions().getPool() != null) {
+            return ParallelRefutation.searchLocations(board, openLocations, depthLimit, context);
         }
 
         // Check all open locations for forced moves
         for (Location loc : openLocations) {
-            ArrayList<Move[]> moveCombos = loc.getValidMoveCombinations(board);
+            ArrayList<Move[]> moveCombos = loc.getValidMoveCombinations(board, heuristic);
             if (moveCombos.isEmpty()) {
                 return true; // No valid move combinations from this location, so this move is deadly
             }
@@ -174,19 +850,22 @@ public class Solver {
             // Check to see if there is at least one valid, non-deadly move
             boolean hasValidCombo = false;
             for (Move[] combo : moveCombos) {
-                Board newBoard = new Board(board);
-                try {
-                    newBoard.applyMoves(combo);
-                } catch (InvalidMoveException e) {
+                int mark = board.mark();
+                if (!board.tryApplyMoves(combo)) {
                     // Invalid move; skip this one
+                    board.undoTo(mark);
+                    depthMetrics.recordInvalidCombo();
                     continue;
                 }
 
                 // Deepen the search to see if this move leads to a dead end
-                if (depthLimit == 0 || !isDeadly(newBoard, depthLimit - 1, combo[0].getStart())) {      // Since all moves in the combo start from the same location, we can just pick the first one
+                boolean deadly = depthLimit != 0 && isDeadly(board, depthLimit - 1, combo[0].getStart(), context);      // Since all moves in the combo start from the same location, we can just pick the first one
+                board.undoTo(mark);
+                if (!deadly) {
                     hasValidCombo = true;
-                    continue; // Don't bother checking the rest of the combos, all we need is one that's valid
+                    break; // Don't bother checking the rest of the combos, all we need is one that's valid
                 }
+                depthMetrics.recordDeadlyCombo();
             }
 
             if (!hasValidCombo) {
@@ -200,27 +879,37 @@ public class Solver {
      * Sort the given list of locations by the number of connections available, then by their coordinates.
      * It's important for performance to pick good locations first - we choose the ones with the most restricted connections first
      * This is a total ordering so the search is deterministic
+     * There are only a handful of possible counts, so rather than comparing, this counts each location once and drops it into a bucket for its count, in row-major order
      * @param locations The list of locations to sort
      * @param board The board containing the locations
      */
     public static void sortLocationsByConnections(List<Location> locations, Board board) {
-        locations.sort((a, b) -> {
-            // Sort by the number of move combinations available at each location
-            int aCount = a.countMoveCombinations(board);
-            int bCount = b.countMoveCombinations(board);
-
-            // If the counts are not equal, sort by that
-            if (aCount != bCount) {
-                return Integer.compare(aCount, bCount);
+        // Open locations come off the board in row-major order already; anything else needs putting into it first
+        for (int i = 1; i < locations.size(); i++) {
+            if (locations.get(i - 1).getIndex() > locations.get(i).getIndex()) {
+                locations.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+                break;
             }
+        }
 
-            // If the counts are equal, sort by the xcoordinate, then by the ycoordinate
-            if (a.getCoordinate().getRow() != b.getCoordinate().getRow()) {
-                return Integer.compare(a.getCoordinate().getRow(), b.getCoordinate().getRow());
-            } else {
-                return Integer.compare(a.getCoordinate().getCol(), b.getCoordinate().getCol());
-            }
-        });
+        // Counts go up to 4 choose 2; anything past that means something has gone wrong, and goes last
+        int[] bucketStarts = new int[MAX_MOVE_COMBINATIONS + 3];
+        int[] counts = new int[locations.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = Math.min(board.countMoveCombinations(locations.get(i).getIndex()), MAX_MOVE_COMBINATIONS + 1);
+            bucketStarts[counts[i] + 1]++;
+        }
+        for (int bucket = 1; bucket < bucketStarts.length; bucket++) {
+            bucketStarts[bucket] += bucketStarts[bucket - 1];
+        }
+
+        Location[] sorted = new Location[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            sorted[bucketStarts[counts[i]]++] = locations.get(i);
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            locations.set(i, sorted[i]);
+        }
     }
 
     /**
@@ -0,0 +1,303 @@
+package src;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Counters describing the work done by a solve, for performance monitoring and debugging.
+ * The counters are safe to update from every thread of a parallel search at once, and cheap enough to leave on all the time; each update is a single LongAdder increment, and the hot loops batch theirs up where they can.
+ * Pass a fresh one to each solve through SolverOptions.setMetrics and read it once the solve has returned.
+ *
+ * Most of the counters are kept separately for each depth limit the iterative deepening search runs at (see Depth), since that's where the time goes on hard boards.
+ */
+
+public class SolverMetrics {
+    // Deepest depth limit with its own counters; anything deeper is lumped in with it
+    public static final int MAX_TRACKED_DEPTH = 15;
+
+    /**
+     * Counters for the iterations of the search run at a single depth limit
+     */
+    public static class Depth {
+        private final int depthLimit;
+
+        // Number of times a search for forced moves was run at this depth limit, and the total time they took
+        private final LongAdder iterations = new LongAdder();
+        private final LongAdder iterationNanos = new LongAdder();
+
+        // Number of times one of those searches found a forced move
+        private final LongAdder forcedMovesFound = new LongAdder();
+
+        // Number of board states searched by isDeadly, not counting ones answered by the transposition table
+        private final LongAdder nodesExpanded = new LongAdder();
+
+        // Number of move combinations eliminated because applying them threw an InvalidMoveException, and because they were found to be deadly
+        private final LongAdder invalidCombos = new LongAdder();
+        private final LongAdder deadlyCombos = new LongAdder();
+
+        // Number of cells checked by Board.updateAll on the boards searched at this depth limit
+        private final LongAdder propagationSteps = new LongAdder();
+
+        private Depth(int depthLimit) {
+            this.depthLimit = depthLimit;
+        }
+
+        void recordIteration(long nanos) {
+            iterations.increment();
+            iterationNanos.add(nanos);
+        }
+
+        void recordForcedMove() {
+            forcedMovesFound.increment();
+        }
+
+        void recordNodeExpanded() {
+            nodesExpanded.increment();
+        }
+
+        void recordInvalidCombo() {
+            invalidCombos.increment();
+        }
+
+        void recordDeadlyCombo() {
+            deadlyCombos.increment();
+        }
+
+        void recordPropagationSteps(long steps) {
+            propagationSteps.add(steps);
+        }
+
+        public int getDepthLimit() {
+            return depthLimit;
+        }
+
+        public long getIterations() {
+            return iterations.sum();
+        }
+
+        public long getIterationNanos() {
+            return iterationNanos.sum();
+        }
+
+        public long getForcedMovesFound() {
+            return forcedMovesFound.sum();
+        }
+
+        public long getNodesExpanded() {
+            return nodesExpanded.sum();
+        }
+
+        public long getInvalidCombos() {
+            return invalidCombos.sum();
+        }
+
+        public long getDeadlyCombos() {
+            return deadlyCombos.sum();
+        }
+
+        public long getPropagationSteps() {
+            return propagationSteps.sum();
+        }
+
+        /**
+         * Export these counters as a JSON object
+         * @return The counters, keyed by name
+         */
+        public JSONObject toJSON() {
+            JSONObject obj = new JSONObject();
+            obj.put("depthLimit", depthLimit);
+            obj.put("iterations", getIterations());
+            obj.put("iterationMillis", getIterationNanos() / 1_000_000);
+            obj.put("forcedMovesFound", getForcedMovesFound());
+            obj.put("nodesExpanded", getNodesExpanded());
+            obj.put("invalidCombos", getInvalidCombos());
+            obj.put("deadlyCombos", getDeadlyCombos());
+            obj.put("propagationSteps", getPropagationSteps());
+            return obj;
+        }
+    }
+
+    // Count of boards created during the solving process
+    private final LongAdder boardsCreated = new LongAdder();
+
+    // Number of cells checked by Board.updateAll while applying the forced moves to the solution, outside of any search
+    private final LongAdder solutionPropagationSteps = new LongAdder();
+
+    // Number of guesses made once no forced move could be found, counting the ones that were backtracked out of
+    private final LongAdder branches = new LongAdder();
+
+    // Number of conflicts and decisions made by the SAT backend
+    private final LongAdder satConflicts = new LongAdder();
+    private final LongAdder satDecisions = new LongAdder();
+
+    // Number of solves answered from a SolutionCache rather than searched
+    private final LongAdder cacheHits = new LongAdder();
+
+    // Total time spent in Solver.solveBoard and Solver.findSolutions
+    private final LongAdder solveNanos = new LongAdder();
+
+    // Counters for each depth limit, indexed by depth limit
+    private final Depth[] depths = new Depth[MAX_TRACKED_DEPTH + 1];
+
+    public SolverMetrics() {
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = new Depth(i);
+        }
+    }
+
+    /**
+     * Record that some boards were created
+     * @param count The number of boards created
+     */
+    void recordBoardsCreated(int count) {
+        boardsCreated.add(count);
+    }
+
+    /**
+     * Record cells checked while applying forced moves to the solution
+     * @param steps The number of cells checked
+     */
+    void recordSolutionPropagationSteps(long steps) {
+        solutionPropagationSteps.add(steps);
+    }
+
+    /**
+     * Record that a guess was made
+     */
+    void recordBranch() {
+        branches.increment();
+    }
+
+    /**
+     * Record the work done by a SAT solve
+     * @param conflicts The number of conflicts
+     * @param decisions The number of decisions
+     */
+    void recordSat(long conflicts, long decisions) {
+        satConflicts.add(conflicts);
+        satDecisions.add(decisions);
+    }
+
+    /**
+     * Record that a solve was answered from a SolutionCache
+     */
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Record the time taken by a whole solve
+     * @param nanos The time taken
+     */
+    void recordSolve(long nanos) {
+        solveNanos.add(nanos);
+    }
+
+    /**
+     * Get the number of boards created so far
+     * @return The number of boards created
+     */
+    public long getBoardsCreated() {
+        return boardsCreated.sum();
+    }
+
+    /**
+     * Get the number of guesses made so far
+     * @return The number of guesses
+     */
+    public long getBranches() {
+        return branches.sum();
+    }
+
+    /**
+     * Get the number of solves answered from a SolutionCache so far
+     * @return The number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Get the number of conflicts the SAT backend has run into so far
+     * @return The number of conflicts
+     */
+    public long getSatConflicts() {
+        return satConflicts.sum();
+    }
+
+    /**
+     * Get the number of decisions the SAT backend has made so far
+     * @return The number of decisions
+     */
+    public long getSatDecisions() {
+        return satDecisions.sum();
+    }
+
+    /**
+     * Get the total time spent solving so far
+     * @return The time taken, in nanoseconds
+     */
+    public long getSolveNanos() {
+        return solveNanos.sum();
+    }
+
+    /**
+     * Get the counters for the searches run at a given depth limit
+     * @param depthLimit The depth limit; anything above MAX_TRACKED_DEPTH shares the counters for MAX_TRACKED_DEPTH
+     * @return The counters for that depth limit
+     */
+    public Depth getDepth(int depthLimit) {
+        return depths[Math.min(Math.max(depthLimit, 0), MAX_TRACKED_DEPTH)];
+    }
+
+    /**
+     * Get the number of board states searched by isDeadly, over every depth limit
+     * @return The number of nodes expanded
+     */
+    public long getNodesExpanded() {
+        long total = 0;
+        for (Depth depth : depths) {
+            total += depth.getNodesExpanded();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of cells checked by Board.updateAll, over every search and the solution itself
+     * @return The number of propagation steps
+     */
+    public long getPropagationSteps() {
+        long total = solutionPropagationSteps.sum();
+        for (Depth depth : depths) {
+            total += depth.getPropagationSteps();
+        }
+        return total;
+    }
+
+    /**
+     * Export every counter as a JSON object, leaving out depth limits that were never searched at
+     * @return The counters, keyed by name, with the per-depth counters in an array under "depths"
+     */
+    public JSONObject toJSON() {
+        JSONObject obj = new JSONObject();
+        obj.put("boardsCreated", getBoardsCreated());
+        obj.put("branches", getBranches());
+        obj.put("cacheHits", getCacheHits());
+        obj.put("satConflicts", getSatConflicts());
+        obj.put("satDecisions", getSatDecisions());
+        obj.put("solveMillis", getSolveNanos() / 1_000_000);
+        obj.put("nodesExpanded", getNodesExpanded());
+        obj.put("propagationSteps", getPropagationSteps());
+
+        JSONArray array = new JSONArray();
+        for (Depth depth : depths) {
+            if (depth.getIterations() > 0) {
+                array.put(depth.toJSON());
+            }
+        }
+        obj.put("depths", array);
+        return obj;
+    }
+}
@@ -0,0 +1,405 @@
+package src;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+
+/**
+ * Settings for a single call to Solver.solveBoard, with chained setters so callers only need to set the things they want to change.
+ *
+ * The defaults are the settings the solver runs best with on the archive, not the original solver's: the native backend on the calling thread, ordered by ConstraintHeuristic, with a transposition table, reachability pruning, adaptive starting depths, and guessing once no forced move can be found, up to a depth limit of 4, with no time limit or budgets and progress printed as it goes.
+ * Setting a pool spreads the search over it, and then refutations at a depth limit of 3 or more are also split into subtasks; see setParallelRefutationDepth.
+ * To get the original ordering, set a CombinationCountHeuristic; the other features each have a setter to turn them off.
+ */
+
+public class SolverOptions {
+    /**
+     * The ways a board can be solved
+     */
+    public enum Backend {
+        NATIVE,     // The forced-move search in Solver
+        SAT,        // A CNF encoding handed to a SAT solver; see SatSolver
+        PORTFOLIO   // Both at once on separate threads, taking whichever finishes first
+    }
+
+    // How the board is solved
+    private Backend backend = Backend.NATIVE;
+
+    // Pool to spread the forced-move search over; null to run everything on the calling thread
+    private ForkJoinPool pool = null;
+
+    // Number of slots in the transposition table caching isDeadly results for the solve; zero to disable it
+    private int transpositionTableSize = 1 << 18;
+
+    // Table to use for the solve instead of creating a new one; null to create one of the size above
+    private TranspositionTable transpositionTable = null;
+
+    // Whether the search runs Board.checkReachability at every node, throwing out moves that cut a color off
+    private boolean reachabilityPruning = true;
+
+    // Whether each round of the search at depth 0 collects every forced move it can find and applies them all at once, rather than stopping at the first
+    private boolean batchForcedMoves = false;
+
+    // Whether to guess and backtrack once no forced move can be found, rather than returning the partial solution
+    private boolean branching = true;
+
+    // Smallest remaining depth limit at which isDeadly splits its search into subtasks on the pool; zero to never split
+    private int parallelRefutationDepth = 3;
+
+    // Deepest depth limit the search for forced moves goes to before giving up on the board (or guessing)
+    private int maxDepth = 4;
+
+    // Whether each round of the search starts at the depth the last forced move was found at, rather than at 0; see DepthScheduler
+    private boolean adaptiveDepth = true;
+
+    // Most isDeadly nodes, and most milliseconds, a single round of the search at one depth limit can take before it's abandoned; zero for no limit
+    private long iterationNodeBudget = 0;
+    private long iterationTimeBudget = 0;
+
+    // Most milliseconds the whole solve can take before it stops and returns what it has so far; zero for no limit
+    private long timeLimit = 0;
+
+    // Source of the current time in nanoseconds that the time limit and budgets are measured with
+    private LongSupplier clock = System::nanoTime;
+
+    // Where to look up puzzles before solving them, and store them after; null to always solve
+    private SolutionCache solutionCache = null;
+
+    // How to order the locations and moves the search looks at
+    private Heuristic heuristic = new ConstraintHeuristic();
+
+    // Where to record counters for the solve; null to create a new one that's thrown away afterwards
+    private SolverMetrics metrics = null;
+
+    // Whether to print progress to the console as the solve goes; this is slow on big boards, so anything that cares about timing should turn it off and read the metrics instead
+    private boolean verbose = true;
+
+    /**
+     * Set how the board is solved; every backend returns the solution in the same form
+     * @param backend The backend to solve with
+     * @return These options, for chaining
+     */
+    public SolverOptions setBackend(Backend backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    /**
+     * Get how the board is solved
+     * @return The backend to solve with
+     */
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Set the pool used to evaluate open locations concurrently when searching for forced moves
+     * @param pool The pool to use, or null to search on the calling thread
+     * @return These options, for chaining
+     */
+    public SolverOptions setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Get the pool used to evaluate open locations concurrently
+     * @return The pool, or null if the search runs on the calling thread
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Set the number of slots in the transposition table caching isDeadly results for each solve
+     * @param transpositionTableSize The number of slots, rounded up to a power of two, or zero to disable the table
+     * @return These options, for chaining
+     */
+    public SolverOptions setTranspositionTableSize(int transpositionTableSize) {
+        this.transpositionTableSize = transpositionTableSize;
+        return this;
+    }
+
+    /**
+     * Get the number of slots in the transposition table
+     * @return The number of slots, or zero if the table is disabled
+     */
+    public int getTranspositionTableSize() {
+        return transpositionTableSize;
+    }
+
+    /**
+     * Set a transposition table for the solve to use instead of creating a new one, so that something solving many boards doesn't allocate a table for each of them
+     * The table is used as it is; since the hash doesn't cover which cells are starts, verdicts left over from a different puzzle can be wrong, so it should be cleared between puzzles
+     * @param transpositionTable The table to use, or null to create a new one of the configured size
+     * @return These options, for chaining
+     */
+    public SolverOptions setTranspositionTable(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+        return this;
+    }
+
+    /**
+     * Get the transposition table the solve uses instead of creating a new one
+     * @return The table, or null if each solve creates its own
+     */
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Set how deep a search isDeadly has to have left before it splits its locations and combinations into subtasks on the pool, rather than searching them one at a time on the calling thread
+     * Splitting only happens when there's a pool; each subtask copies the board, so splitting the shallow levels costs more than it saves
+     * @param parallelRefutationDepth The smallest remaining depth limit to split at, or zero to never split
+     * @return These options, for chaining
+     */
+    public SolverOptions setParallelRefutationDepth(int parallelRefutationDepth) {
+        this.parallelRefutationDepth = parallelRefutationDepth;
+        return this;
+    }
+
+    /**
+     * Get how deep a search isDeadly has to have left before it splits into subtasks
+     * @return The smallest remaining depth limit to split at, or zero if it never splits
+     */
+    public int getParallelRefutationDepth() {
+        return parallelRefutationDepth;
+    }
+
+    /**
+     * Set whether the search throws out moves that leave a color unable to join up or a region no color can reach
+     * @param reachabilityPruning True to run the reachability check at every node of the search
+     * @return These options, for chaining
+     */
+    public SolverOptions setReachabilityPruning(boolean reachabilityPruning) {
+        this.reachabilityPruning = reachabilityPruning;
+        return this;
+    }
+
+    /**
+     * Check whether the search runs the reachability check at every node
+     * @return True if reachability pruning is enabled
+     */
+    public boolean isReachabilityPruning() {
+        return reachabilityPruning;
+    }
+
+    /**
+     * Set whether each round of the search at depth 0 sweeps the whole board for forced moves and applies all of them together, instead of applying the first one it finds and starting over; deeper rounds still stop at the first one
+     * After a batch, the next sweep checks the cells around the moves that were just made first, and only goes over the rest of the board if that finds nothing
+     * The solution path has fewer, bigger steps this way, and takes a different route to the same solution
+     * @param batchForcedMoves True to apply forced moves in batches
+     * @return These options, for chaining
+     */
+    public SolverOptions setBatchForcedMoves(boolean batchForcedMoves) {
+        this.batchForcedMoves = batchForcedMoves;
+        return this;
+    }
+
+    /**
+     * Check whether forced moves are applied in batches
+     * @return True if each round applies every forced move it finds
+     */
+    public boolean isBatchForcedMoves() {
+        return batchForcedMoves;
+    }
+
+    /**
+     * Set whether the solve guesses once no forced move can be found within the depth limit, backtracking out of guesses that lead to a dead end
+     * Without it, boards with more than one solution, or that need deeper searches than the depth limit allows, come back partially solved
+     * @param branching True to guess until the board is solved
+     * @return These options, for chaining
+     */
+    public SolverOptions setBranching(boolean branching) {
+        this.branching = branching;
+        return this;
+    }
+
+    /**
+     * Check whether the solve guesses once no forced move can be found
+     * @return True if branching is enabled
+     */
+    public boolean isBranching() {
+        return branching;
+    }
+
+    /**
+     * Set the deepest depth limit the search for forced moves goes to; past 4, the rounds get expensive enough that they usually want a budget as well
+     * @param maxDepth The depth limit
+     * @return These options, for chaining
+     */
+    public SolverOptions setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Get the deepest depth limit the search for forced moves goes to
+     * @return The depth limit
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Set whether each round of the search starts at the depth the last forced move was found at, skipping the shallower depths that are likely to find nothing
+     * @param adaptiveDepth True to start where the last forced move was found, false to always start at 0
+     * @return These options, for chaining
+     */
+    public SolverOptions setAdaptiveDepth(boolean adaptiveDepth) {
+        this.adaptiveDepth = adaptiveDepth;
+        return this;
+    }
+
+    /**
+     * Check whether each round of the search starts at the depth the last forced move was found at
+     * @return True if the starting depth adapts
+     */
+    public boolean isAdaptiveDepth() {
+        return adaptiveDepth;
+    }
+
+    /**
+     * Set the most isDeadly nodes a single round of the search at one depth limit can expand; a round that runs out stops without going any deeper
+     * @param iterationNodeBudget The number of nodes, or zero for no limit
+     * @return These options, for chaining
+     */
+    public SolverOptions setIterationNodeBudget(long iterationNodeBudget) {
+        this.iterationNodeBudget = iterationNodeBudget;
+        return this;
+    }
+
+    /**
+     * Get the most isDeadly nodes a single round of the search can expand
+     * @return The number of nodes, or zero for no limit
+     */
+    public long getIterationNodeBudget() {
+        return iterationNodeBudget;
+    }
+
+    /**
+     * Set the most time a single round of the search at one depth limit can take; a round that runs out stops without going any deeper
+     * @param iterationTimeBudget The time in milliseconds, or zero for no limit
+     * @return These options, for chaining
+     */
+    public SolverOptions setIterationTimeBudget(long iterationTimeBudget) {
+        this.iterationTimeBudget = iterationTimeBudget;
+        return this;
+    }
+
+    /**
+     * Get the most time a single round of the search can take
+     * @return The time in milliseconds, or zero for no limit
+     */
+    public long getIterationTimeBudget() {
+        return iterationTimeBudget;
+    }
+
+    /**
+     * Set the most time the whole solve can take; once it's up, the solve stops and returns the solution path as far as it got
+     * @param timeLimit The time in milliseconds, or zero for no limit
+     * @return These options, for chaining
+     */
+    public SolverOptions setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+        return this;
+    }
+
+    /**
+     * Get the most time the whole solve can take
+     * @return The time in milliseconds, or zero for no limit
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Set where the time limit and iteration time budget read the time from, e.g. a clock a test can move along deterministically; only the differences between readings matter, as with System.nanoTime
+     * @param clock Returns the current time in nanoseconds
+     * @return These options, for chaining
+     */
+    public SolverOptions setClock(LongSupplier clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Get where the time limit and iteration time budget read the time from
+     * @return The clock, which is System.nanoTime unless set otherwise
+     */
+    public LongSupplier getClock() {
+        return clock;
+    }
+
+    /**
+     * Set a cache to look the puzzle up in before solving it, and to store its solution in afterwards
+     * A puzzle found in the cache, in any rotation, reflection or coloring, is returned without any search, so the backend and search settings don't apply to it
+     * @param solutionCache The cache to use, or null to always solve
+     * @return These options, for chaining
+     */
+    public SolverOptions setSolutionCache(SolutionCache solutionCache) {
+        this.solutionCache = solutionCache;
+        return this;
+    }
+
+    /**
+     * Get the cache puzzles are looked up in before solving them
+     * @return The cache, or null if puzzles are always solved
+     */
+    public SolutionCache getSolutionCache() {
+        return solutionCache;
+    }
+
+    /**
+     * Set how the search orders the locations and moves it looks at; this changes how quickly the solve goes and which forced move is found first, but not whether one is found
+     * @param heuristic The heuristic to order the search with
+     * @return These options, for chaining
+     */
+    public SolverOptions setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+        return this;
+    }
+
+    /**
+     * Get how the search orders the locations and moves it looks at
+     * @return The heuristic the search is ordered with
+     */
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * Set where to record counters describing the work done by the solve
+     * @param metrics The metrics to record to, or null to not keep them
+     * @return These options, for chaining
+     */
+    public SolverOptions setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Get where counters for the solve are recorded
+     * @return The metrics to record to, or null if they aren't kept
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set whether to print progress to the console as the solve goes
+     * @param verbose True to print progress
+     * @return These options, for chaining
+     */
+    public SolverOptions setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        return this;
+    }
+
+    /**
+     * Check whether progress is printed to the console as the solve goes
+     * @return True if progress is printed
+     */
+    public boolean isVerbose() {
+        return verbose;
+    }
+}
@@ -0,0 +1,448 @@
+package src;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP server that solves puzzles sent to it as JSON, for running the solver behind a service rather than in the GUI.
+ *
+ * POST /solve takes a puzzle in the body, either as rows of text in the same format as the archive (one row per line, '.' for an empty cell and a letter for each end of a color), as a JSON object {"rows": [...]} holding the same rows, or as a JSON object in the same format as the files in boards/.
+ * The query string can set "timeout" (milliseconds, capped at the server's limit), "backend" and "heuristic", named the same as BatchSolver's options.
+ * The response is a JSON object with whether the puzzle was solved, whether it ran out of time, the final grid as rows in the same text format, the moves made at each step of the solve, and the solve's metrics.
+ * GET /health reports how busy the server is.
+ *
+ * Solves run on a fixed pool of worker threads, one solve per thread, with a bounded queue in front of it; a request that finds the queue full is turned away straight away with a 503 rather than waiting.
+ * A request's timeout counts from when it's accepted, so time spent in the queue comes out of it, and a request whose time runs out before a worker gets to it isn't solved at all.
+ * Connections are handled on a separate, unbounded pool, since they spend almost all their time waiting for a worker; on a newer JDK that would be a virtual thread per request, but this project targets Java 17.
+ * Each worker keeps its own transposition table and clears it between solves rather than allocating a new one for every request.
+ * Solved puzzles go into a SolutionCache shared by the workers, so a puzzle sent again, even rotated, reflected or recolored, is answered without solving it; with --cache, the cache is also kept on disk between runs.
+ *
+ * Usage: SolverServer [--host address] [--port port] [--threads count] [--queue capacity] [--timeout millis] [--cache directory]
+ * The server listens on the loopback address by default, so it can be tried locally with e.g. curl --data-binary @puzzle.txt localhost:8080/solve.
+ */
+
+public class SolverServer {
+    // Largest request body that will be read, in bytes
+    private static final int MAX_BODY_BYTES = 1 << 16;
+
+    // Largest board that will be solved, in cells
+    private static final int MAX_CELLS = 1 << 12;
+
+    // Number of solved puzzles kept in memory
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+    // How long a request waits past its timeout for its solve to wind down before giving up on it
+    private static final long GRACE_MILLIS = 1000;
+
+    // Names of the directions a move can go in, indexed the same as Coordinate.DIRECTIONS
+    private static final String[] DIRECTION_NAMES = {"up", "down", "left", "right"};
+
+    private final HttpServer server;
+
+    // Worker threads that run the solves, and the threads that handle connections
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService handlers;
+
+    // Number of solves that can wait for a worker before requests are turned away
+    private final int queueCapacity;
+
+    // Longest a single request can take, in milliseconds; also the timeout for requests that don't ask for one
+    private final long maxTimeLimit;
+
+    // Transposition table for each worker thread, reused by every solve that thread runs
+    private final ThreadLocal<TranspositionTable> tables;
+
+    // Puzzles solved so far, shared by every worker
+    private final SolutionCache cache;
+
+    /**
+     * Create a server that keeps the solutions to recent puzzles in memory; it doesn't accept connections until started
+     * @param address The address to listen on; port 0 picks a free port
+     * @param threads The number of solves to run at once
+     * @param queueCapacity The number of solves that can wait for a worker before requests are turned away
+     * @param maxTimeLimit The longest a single request can take, in milliseconds
+     * @throws IOException If the address can't be bound
+     */
+    public SolverServer(InetSocketAddress address, int threads, int queueCapacity, long maxTimeLimit) throws IOException {
+        this(address, threads, queueCapacity, maxTimeLimit, new SolutionCache(DEFAULT_CACHE_CAPACITY, null));
+    }
+
+    /**
+     * Create a server that answers puzzles it's seen before, in any rotation, reflection or coloring, from the given cache; it doesn't accept connections until started
+     * @param address The address to listen on; port 0 picks a free port
+     * @param threads The number of solves to run at once
+     * @param queueCapacity The number of solves that can wait for a worker before requests are turned away
+     * @param maxTimeLimit The longest a single request can take, in milliseconds
+     * @param cache The cache to look puzzles up in and store their solutions in, or null to solve every request
+     * @throws IOException If the address can't be bound
+     */
+    public SolverServer(InetSocketAddress address, int threads, int queueCapacity, long maxTimeLimit, SolutionCache cache) throws IOException {
+        this.cache = cache;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxTimeLimit = maxTimeLimit;
+
+        int tableSize = new SolverOptions().getTranspositionTableSize();
+        this.tables = ThreadLocal.withInitial(() -> new TranspositionTable(tableSize));
+
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(this.queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "solver-worker-" + workerCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.handlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "solver-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(handlers);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = 4 * threads;
+        long timeout = 30_000;
+        String cacheDirectory = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--host" -> host = args[i + 1];
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--queue" -> queueCapacity = Integer.parseInt(args[i + 1]);
+                case "--timeout" -> timeout = Long.parseLong(args[i + 1]);
+                case "--cache" -> cacheDirectory = args[i + 1];
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: SolverServer [--host address] [--port port] [--threads count] [--queue capacity] [--timeout millis] [--cache directory]");
+                    return;
+                }
+            }
+        }
+
+        SolutionCache cache = new SolutionCache(DEFAULT_CACHE_CAPACITY, cacheDirectory != null ? Path.of(cacheDirectory) : null);
+        SolverServer server = new SolverServer(new InetSocketAddress(host, port), threads, queueCapacity, timeout, cache);
+        server.start();
+        System.out.println("Listening on " + host + ":" + server.getPort() + " with " + threads + " workers");
+    }
+
+    /**
+     * Start accepting connections, and start the worker threads so the first requests don't pay for it
+     */
+    public void start() {
+        workers.prestartAllCoreThreads();
+        server.start();
+    }
+
+    /**
+     * Stop accepting connections and abandon any solves still running
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * Get the port the server is listening on, e.g. after binding to port 0
+     * @return The port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Solve the puzzle in a request's body and send back the result
+     * @param exchange The request
+     */
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            sendError(exchange, 405, "Use POST");
+            return;
+        }
+
+        Map<String, String> params = getQueryParams(exchange.getRequestURI().getRawQuery());
+        long timeLimit;
+        SolverOptions options = new SolverOptions().setVerbose(false);
+        Board board;
+        try {
+            timeLimit = Math.min(Long.parseLong(params.getOrDefault("timeout", String.valueOf(maxTimeLimit))), maxTimeLimit);
+            if (timeLimit <= 0) {
+                throw new IllegalArgumentException("Timeout must be positive");
+            }
+
+            SolverOptions.Backend backend = BatchSolver.getBackend(params.getOrDefault("backend", "native"));
+            if (backend == null) {
+                throw new IllegalArgumentException("Unknown backend: " + params.get("backend"));
+            }
+            Heuristic heuristic = BatchSolver.getHeuristic(params.getOrDefault("heuristic", "constraint"));
+            if (heuristic == null) {
+                throw new IllegalArgumentException("Unknown heuristic: " + params.get("heuristic"));
+            }
+            options.setBackend(backend).setHeuristic(heuristic);
+
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                sendError(exchange, 413, "Request body is over " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            board = parseBoard(new String(body, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            // Covers bad numbers, malformed JSON and boards the Board constructors reject
+            sendError(exchange, 400, e.getMessage() != null ? e.getMessage() : e.toString());
+            return;
+        }
+
+        long deadline = System.nanoTime() + timeLimit * 1_000_000;
+        Future<JSONObject> result;
+        try {
+            result = workers.submit(() -> solve(board, options, deadline));
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Too many puzzles waiting to be solved");
+            return;
+        }
+
+        try {
+            send(exchange, 200, result.get(timeLimit + GRACE_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            // The solve checks its own deadline, so this only happens if it gets stuck somewhere that doesn't
+            result.cancel(true);
+            sendError(exchange, 504, "Solve did not stop at its deadline");
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            sendError(exchange, 500, e.getCause().toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Server is shutting down");
+        }
+    }
+
+    /**
+     * Report how busy the server is
+     * @param exchange The request
+     */
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        JSONObject obj = new JSONObject();
+        obj.put("status", "ok");
+        obj.put("workers", workers.getCorePoolSize());
+        obj.put("active", workers.getActiveCount());
+        obj.put("queued", workers.getQueue().size());
+        obj.put("queueCapacity", queueCapacity);
+        send(exchange, 200, obj);
+    }
+
+    /**
+     * Solve a board on the calling worker thread and describe the result
+     * @param board The board to solve
+     * @param options Settings for the solve, apart from its time limit and transposition table
+     * @param deadline The System.nanoTime at which the request runs out of time
+     * @return The response to send back
+     */
+    private JSONObject solve(Board board, SolverOptions options, long deadline) {
+        ArrayList<Move[]> moveHistory = new ArrayList<>();
+        ArrayList<Board> solution;
+        SolverMetrics metrics = new SolverMetrics();
+
+        long remaining = (deadline - System.nanoTime()) / 1_000_000;
+        if (remaining > 0) {
+            // The portfolio backend leaves its loser running in the background, where it could write into the table after the next solve has cleared it
+            if (options.getBackend() == SolverOptions.Backend.NATIVE) {
+                TranspositionTable table = tables.get();
+                table.clear();
+                options.setTranspositionTable(table);
+            }
+            options.setTimeLimit(remaining).setMetrics(metrics).setSolutionCache(cache);
+            solution = Solver.solveBoard(board, moveHistory, options);
+        } else {
+            // Ran out of time waiting in the queue
+            solution = new ArrayList<>();
+            solution.add(board);
+            moveHistory.add(new Move[]{});
+        }
+
+        Board last = solution.get(solution.size() - 1);
+        JSONObject obj = new JSONObject();
+        obj.put("solved", last.isSolved());
+        obj.put("timedOut", !last.isSolved() && System.nanoTime() - deadline >= 0);
+        obj.put("width", last.getWidth());
+        obj.put("height", last.getHeight());
+        obj.put("grid", new JSONArray(Arrays.asList(last.toRows())));
+
+        // The first entry of the history is the empty step that produced the starting board
+        JSONArray steps = new JSONArray();
+        for (int i = 1; i < moveHistory.size(); i++) {
+            JSONArray step = new JSONArray();
+            for (Move move : moveHistory.get(i)) {
+                JSONObject moveObj = new JSONObject();
+                moveObj.put("row", move.getStart().getRow());
+                moveObj.put("col", move.getStart().getCol());
+                moveObj.put("direction", DIRECTION_NAMES[Coordinate.toIndex(move.getDirection())]);
+                step.put(moveObj);
+            }
+            steps.put(step);
+        }
+        obj.put("moves", steps);
+        obj.put("metrics", metrics.toJSON());
+        return obj;
+    }
+
+    /**
+     * Read a puzzle in any of the formats /solve accepts, and make the moves its starting position forces, as every other caller of the solver does before solving
+     * @param body The body of the request
+     * @return The board, ready to solve
+     * @throws IllegalArgumentException If the puzzle isn't in a format that can be read, is too big to solve, or contradicts itself before any search
+     */
+    static Board parseBoard(String body) {
+        Board board = readBoard(body);
+        try {
+            board.updateAll();
+        } catch (InvalidMoveException e) {
+            throw new IllegalArgumentException("Puzzle has no solution: " + e.getMessage(), e);
+        }
+        return board;
+    }
+
+    /**
+     * Read a puzzle in any of the formats /solve accepts, without propagating anything
+     * @param body The body of the request
+     * @return The board
+     * @throws IllegalArgumentException If the puzzle isn't in a format that can be read, or is too big to solve
+     */
+    private static Board readBoard(String body) {
+        String trimmed = body.trim();
+        if (!trimmed.startsWith("{")) {
+            return parseRows(trimmed.split("\\R+"));
+        }
+
+        JSONObject obj = new JSONObject(trimmed);
+        if (obj.has("rows")) {
+            JSONArray array = obj.getJSONArray("rows");
+            String[] rows = new String[array.length()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = array.getString(i).trim();
+            }
+            return parseRows(rows);
+        }
+
+        int size = obj.getInt("size");
+        if (size <= 0 || (long) size * size > MAX_CELLS) {
+            throw new IllegalArgumentException("Board must have between 1 and " + MAX_CELLS + " cells");
+        }
+        return new Board(obj);
+    }
+
+    /**
+     * Check that rows of text describe a board the solver can take, and read it
+     * @param rows The rows of the board
+     * @return The board
+     * @throws IllegalArgumentException If the rows aren't all the same length, a cell isn't '.' or a color, or a color doesn't have exactly two ends
+     */
+    private static Board parseRows(String[] rows) {
+        if (rows.length == 0 || rows[0].isEmpty()) {
+            throw new IllegalArgumentException("Board is empty");
+        }
+        if ((long) rows.length * rows[0].length() > MAX_CELLS) {
+            throw new IllegalArgumentException("Board must have at most " + MAX_CELLS + " cells");
+        }
+
+        int[] ends = new int[Board.MAX_COLOR_INDEX + 1];
+        for (String row : rows) {
+            if (row.length() != rows[0].length()) {
+                throw new IllegalArgumentException("Rows must all be the same length");
+            }
+            for (int i = 0; i < row.length(); i++) {
+                char c = row.charAt(i);
+                if (c == '.') {
+                    continue;
+                }
+                if (c < 'A' || c - 'A' > Board.MAX_COLOR_INDEX) {
+                    throw new IllegalArgumentException("Not a color: " + c);
+                }
+                ends[c - 'A']++;
+            }
+        }
+        for (int color = 0; color < ends.length; color++) {
+            if (ends[color] != 0 && ends[color] != 2) {
+                throw new IllegalArgumentException("Color " + (char) ('A' + color) + " has " + ends[color] + " ends");
+            }
+        }
+        return new Board(rows);
+    }
+
+    /**
+     * Read a request body, up to the size limit
+     * @param in The body
+     * @return The bytes of the body, or null if it's over the limit
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        try (in) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            return body.length > MAX_BODY_BYTES ? null : body;
+        }
+    }
+
+    /**
+     * Split a query string into its parameters
+     * @param query The raw query string, or null if there isn't one
+     * @return The decoded parameters by name
+     */
+    private static Map<String, String> getQueryParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, new JSONObject().put("error", message));
+    }
+
+    private static void send(HttpExchange exchange, int status, JSONObject obj) throws IOException {
+        byte[] bytes = obj.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package src;
+
+import java.util.Arrays;
+
+/**
+ * A bounded cache of isDeadly verdicts, keyed by the Zobrist hash of the board they were computed on.
+ * 
+ * Deadliness is monotonic in the depth limit: a board that's deadly within some depth is deadly within any greater depth, and a board that isn't deadly within some depth isn't deadly within any smaller depth.
+ * So each entry keeps the smallest depth the board is known to be deadly at and the largest depth it's known to be safe at, and a lookup can answer for any depth outside that range.
+ * 
+ * The table is a fixed-size array of slots with no chaining; a new board simply replaces whatever was in its slot.
+ * It's shared between the threads of a parallel search without locking: each slot stores its key XORed with its data, so a slot that's torn by two simultaneous writes fails the key check and reads as a miss rather than a wrong answer.
+ */
+
+public class TranspositionTable {
+    // Depth stored when nothing is known in that direction
+    private static final int UNKNOWN_DEADLY = 0xFF;
+    private static final int UNKNOWN_SAFE = 0;
+    private static final int MAX_DEPTH = 0xFE;
+
+    // Set in the data of every slot that's been stored to, so that an empty slot, whose key and data are both zero, doesn't pass the key check for a board whose hash is zero
+    private static final long OCCUPIED = 1L << 16;
+
+    // Each slot is a pair of the key XORed with the data, and the data itself; the data packs the deadly depth into bits 0-7, the safe depth into bits 8-15 and the OCCUPIED flag into bit 16
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * @param capacity The number of slots; rounded up to a power of two
+     */
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Look up whether a board is known to be deadly within the given depth
+     * @param hash The Zobrist hash of the board
+     * @param depthLimit The depth limit of the search being asked about
+     * @return True if the board is known to be deadly, false if it's known not to be, or null if the table doesn't know
+     */
+    public Boolean lookup(long hash, int depthLimit) {
+        int slot = (int) hash & mask;
+        long entry = data[slot];
+        if ((entry & OCCUPIED) == 0 || (keys[slot] ^ entry) != hash) {
+            return null;
+        }
+
+        if (depthLimit >= getDeadlyDepth(entry)) {
+            return true;
+        } else if (depthLimit <= getSafeDepth(entry)) {
+            return false;
+        }
+        return null;
+    }
+
+    /**
+     * Record the result of a search, merging it with anything already known about the same board
+     * @param hash The Zobrist hash of the board
+     * @param depthLimit The depth limit the search was run with
+     * @param deadly Whether the board was found to be deadly
+     */
+    public void store(long hash, int depthLimit, boolean deadly) {
+        int depth = Math.min(depthLimit, MAX_DEPTH);
+        int slot = (int) hash & mask;
+        long entry = data[slot];
+
+        int deadlyDepth = UNKNOWN_DEADLY;
+        int safeDepth = UNKNOWN_SAFE;
+        if ((entry & OCCUPIED) != 0 && (keys[slot] ^ entry) == hash) {
+            // Same board; keep what was already known
+            deadlyDepth = getDeadlyDepth(entry);
+            safeDepth = getSafeDepth(entry);
+        }
+
+        if (deadly) {
+            deadlyDepth = Math.min(deadlyDepth, depth);
+        } else {
+            safeDepth = Math.max(safeDepth, depth);
+        }
+
+        long newEntry = deadlyDepth | (safeDepth << 8) | OCCUPIED;
+        data[slot] = newEntry;
+        keys[slot] = hash ^ newEntry;
+    }
+
+    /**
+     * Forget everything the table knows, so it can be reused for a different puzzle
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Get the number of slots in the table
+     * @return The capacity of the table
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    private static int getDeadlyDepth(long entry) {
+        return (int) (entry & 0xFF);
+    }
+
+    private static int getSafeDepth(long entry) {
+        return (int) ((entry >>> 8) & 0xFF);
+    }
+}
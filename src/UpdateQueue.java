@@ -0,0 +1,117 @@
+package src;
+import java.util.Arrays;
+
+/**
+ * First-in first-out work list of the cells on a board that are waiting to have their connections checked.
+ *
+ * Cells are held by index in a ring buffer, alongside a bitset of which cells are currently queued, so adding a cell, skipping one that's already queued, and taking the next one off are all constant time.
+ * A cell can only be queued once at a time, so the buffer never needs to hold more than one entry per cell and never has to grow.
+ *
+ * The buffer and bitset aren't allocated until something is first added, since most board copies (e.g. the boards kept in a solve history) are never updated, and clear() only touches what's actually queued, so a search can keep reusing one queue.
+ */
+
+public class UpdateQueue {
+
+    // The number of cells on the board, and so the most that can ever be queued at once
+    private final int capacity;
+
+    // Ring buffer of queued cell indices; the next one to be polled is at head
+    private int[] buffer;
+    private int head = 0;
+    private int size = 0;
+
+    // Bit per cell, set while that cell is in the buffer
+    private long[] queued;
+
+    /**
+     * @param capacity The number of cells on the board
+     */
+    UpdateQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a location to the end of the queue, if it isn't already queued
+     * @param location The location to schedule an update for
+     */
+    public void add(Location location) {
+        add(location.getIndex());
+    }
+
+    /**
+     * Add a cell to the end of the queue, if it isn't already queued
+     * @param index Index of the cell
+     */
+    void add(int index) {
+        if (buffer == null) {
+            buffer = new int[capacity];
+            queued = new long[(capacity + 63) >>> 6];
+        }
+
+        long bit = 1L << index;
+        if ((queued[index >>> 6] & bit) != 0) {
+            return;
+        }
+        queued[index >>> 6] |= bit;
+
+        int tail = head + size;
+        buffer[tail >= capacity ? tail - capacity : tail] = index;
+        size++;
+    }
+
+    /**
+     * Take the next cell off the front of the queue
+     * @return Index of the cell, or -1 if the queue is empty
+     */
+    int poll() {
+        if (size == 0) {
+            return -1;
+        }
+
+        int index = buffer[head];
+        queued[index >>> 6] &= ~(1L << index);
+        head = head + 1 == capacity ? 0 : head + 1;
+        size--;
+        return index;
+    }
+
+    /**
+     * Check whether a cell is currently queued
+     * @param index Index of the cell
+     * @return True if the cell is waiting for an update
+     */
+    boolean contains(int index) {
+        return queued != null && (queued[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return The number of cells currently queued
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if no cells are queued
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove every cell from the queue, keeping the storage for reuse
+     */
+    public void clear() {
+        if (size > capacity / 64) {
+            // Cheaper to wipe the whole bitset than to clear the bits one at a time
+            Arrays.fill(queued, 0);
+        } else {
+            for (int i = 0; i < size; i++) {
+                int index = buffer[head + i >= capacity ? head + i - capacity : head + i];
+                queued[index >>> 6] &= ~(1L << index);
+            }
+        }
+        head = 0;
+        size = 0;
+    }
+}